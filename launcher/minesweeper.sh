@@ -0,0 +1,105 @@
+#!/bin/sh
+#
+# Launches Minesweeper with an application class-data-sharing (AppCDS) archive.
+#
+# The first launch builds a jar from src into the cache directory, and again
+# whenever src is newer than it, then does a training run that opens the
+# window once and exits, dumping every class it loaded into a CDS archive.
+# Later launches map that archive instead of loading and verifying the
+# classes again. The archive is rebuilt whenever the jar changes. On a JDK
+# older than 13 the game is started without CDS, and on JDK 8 the jar is
+# built with -source/-target instead of --release.
+#
+# usage: launcher/minesweeper.sh                 play the game
+#        launcher/minesweeper.sh --benchmark [n] time n startups with and without CDS
+#
+# JAVA, JAVAC, MINESWEEPER_JAR and MINESWEEPER_CDS override the java and javac
+# commands, the jar, and the archive location; both default to files in
+# ${XDG_CACHE_HOME:-~/.cache}/minesweeper.
+
+set -e
+
+PROJECT_DIR=$(cd "$(dirname "$0")/.." && pwd)
+CACHE_DIR=${XDG_CACHE_HOME:-$HOME/.cache}/minesweeper
+JAVA=${JAVA:-java}
+JAVAC=${JAVAC:-javac}
+JAR=${MINESWEEPER_JAR:-$CACHE_DIR/Minesweeper.jar}
+ARCHIVE=${MINESWEEPER_CDS:-$CACHE_DIR/minesweeper.jsa}
+
+# prints the options compiling for Java 8: --release needs JDK 9 or later,
+# whose javac -version no longer starts with "1."
+release_options() {
+    case $("$JAVAC" -version 2>&1) in
+        *" 1."*) echo "-source 8 -target 8" ;;
+        *) echo "--release 8" ;;
+    esac
+}
+
+# builds the jar from the sources
+build_jar() {
+    echo "Building $JAR" >&2
+    classes=$(mktemp -d)
+    # release_options prints plain words, so splitting them is intended
+    "$JAVAC" $(release_options) -nowarn -d "$classes" "$PROJECT_DIR"/src/*.java
+    cp -R "$PROJECT_DIR/src/resources" "$classes/"
+    mkdir -p "$(dirname "$JAR")"
+    jar cfm "$JAR" "$PROJECT_DIR/src/META-INF/MANIFEST.MF" -C "$classes" .
+    rm -rf "$classes"
+}
+
+# checks if this JDK can dump a dynamic CDS archive
+supports_cds() {
+    "$JAVA" -XX:+PrintFlagsFinal -version 2>/dev/null | grep -q ArchiveClassesAtExit
+}
+
+# does a training run that dumps the archive
+build_archive() {
+    echo "Creating class-data-sharing archive $ARCHIVE" >&2
+    mkdir -p "$(dirname "$ARCHIVE")"
+    rm -f "$ARCHIVE"
+    "$JAVA" -XX:ArchiveClassesAtExit="$ARCHIVE" -Dminesweeper.exitAfterPaint=true -jar "$JAR"
+}
+
+# runs the game with class-data sharing off, with the JDK's default
+# archive, or with the game's archive; the remaining arguments go to java
+run_java() {
+    mode=$1
+    shift
+    case $mode in
+        off) "$JAVA" -Xshare:off "$@" ;;
+        auto) "$JAVA" -Xshare:auto "$@" ;;
+        archive) "$JAVA" -XX:SharedArchiveFile="$ARCHIVE" "$@" ;;
+    esac
+}
+
+if [ ! -f "$JAR" ] || [ -n "$(find "$PROJECT_DIR/src" -newer "$JAR" -type f | head -n 1)" ]; then
+    build_jar
+fi
+
+MODES="off auto"
+DEFAULT_MODE=auto
+if supports_cds; then
+    if [ ! -f "$ARCHIVE" ] || [ "$JAR" -nt "$ARCHIVE" ]; then
+        build_archive
+    fi
+    MODES="off auto archive"
+    DEFAULT_MODE=archive
+fi
+
+if [ "$1" = "--benchmark" ]; then
+    runs=${2:-5}
+    for mode in $MODES; do
+        echo "$mode:"
+        i=0
+        while [ $i -lt "$runs" ]; do
+            run_java "$mode" -Dminesweeper.startupTiming=true -Dminesweeper.exitAfterPaint=true -jar "$JAR"
+            i=$((i + 1))
+        done
+    done
+    exit 0
+fi
+
+if [ "$DEFAULT_MODE" = archive ]; then
+    exec "$JAVA" -XX:SharedArchiveFile="$ARCHIVE" -jar "$JAR" "$@"
+fi
+exec "$JAVA" -jar "$JAR" "$@"
@@ -1,5 +1,7 @@
 import javax.swing.*;
 import java.awt.event.ActionListener;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
 
 /*
  * The menu bar for minesweeper.
@@ -11,6 +13,7 @@ public class MineSweeperMenu extends JMenuBar {
     public MineSweeperMenu(ActionListener menuListener) {
         // Main Menus
         JMenu gameMenu = new JMenu("Game");
+        JMenu editMenu = new JMenu("Edit");
         JMenu helpMenu = new JMenu("Help");
 
         // Sub Menus
@@ -20,9 +23,33 @@ public class MineSweeperMenu extends JMenuBar {
         JMenuItem newGameMenuItem = new JMenuItem("New Game");
         newGameMenuItem.setActionCommand("New Game");
 
+        JMenuItem largeBoardMenuItem = new JMenuItem("Large Board...");
+        largeBoardMenuItem.setActionCommand("Large Board");
+
+        JMenuItem loadMenuItem = new JMenuItem("Load Board...");
+        loadMenuItem.setActionCommand("Load Board");
+
+        JMenuItem saveMenuItem = new JMenuItem("Save Board...");
+        saveMenuItem.setActionCommand("Save Board");
+
+        JCheckBoxMenuItem probabilitiesMenuItem = new JCheckBoxMenuItem("Show Probabilities");
+        probabilitiesMenuItem.setActionCommand("Probabilities");
+
+        JMenuItem bestTimesMenuItem = new JMenuItem("Best Times");
+        bestTimesMenuItem.setActionCommand("Best Times");
+
         JMenuItem quitMenuItem = new JMenuItem("Quit");
         quitMenuItem.setActionCommand("Quit");
 
+        // "Edit" menu items
+        JMenuItem undoMenuItem = new JMenuItem("Undo");
+        undoMenuItem.setActionCommand("Undo");
+        undoMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK));
+
+        JMenuItem redoMenuItem = new JMenuItem("Redo");
+        redoMenuItem.setActionCommand("Redo");
+        redoMenuItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK));
+
         // "Help" menu items
         JMenuItem helpMenuItem = new JMenuItem("Help");
         helpMenuItem.setActionCommand("Help");
@@ -42,7 +69,14 @@ public class MineSweeperMenu extends JMenuBar {
 
         // Set action listener on all menu items
         newGameMenuItem.addActionListener(menuListener);
+        largeBoardMenuItem.addActionListener(menuListener);
+        loadMenuItem.addActionListener(menuListener);
+        saveMenuItem.addActionListener(menuListener);
+        probabilitiesMenuItem.addActionListener(menuListener);
+        bestTimesMenuItem.addActionListener(menuListener);
         quitMenuItem.addActionListener(menuListener);
+        undoMenuItem.addActionListener(menuListener);
+        redoMenuItem.addActionListener(menuListener);
         helpMenuItem.addActionListener(menuListener);
         beginnerMenuItem.addActionListener(menuListener);
         intermediateMenuItem.addActionListener(menuListener);
@@ -59,14 +93,24 @@ public class MineSweeperMenu extends JMenuBar {
         // Populate "Game" menu
         gameMenu.add(newGameMenuItem);
         gameMenu.add(settingsMenu);
+        gameMenu.add(largeBoardMenuItem);
+        gameMenu.add(loadMenuItem);
+        gameMenu.add(saveMenuItem);
+        gameMenu.add(probabilitiesMenuItem);
+        gameMenu.add(bestTimesMenuItem);
         gameMenu.addSeparator();
         gameMenu.add(quitMenuItem);
 
+        // Populate "Edit" menu
+        editMenu.add(undoMenuItem);
+        editMenu.add(redoMenuItem);
+
         // Populate "Help" menu
         helpMenu.add(helpMenuItem);
 
         // Populate MinesweeperMenu
         this.add(gameMenu);
+        this.add(editMenu);
         this.add(helpMenu);
     }
 }
@@ -3,6 +3,13 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import java.awt.*;
 import java.awt.event.*;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 /*
  * Main controlling class for the Minesweeper game.
@@ -19,12 +26,33 @@ public class Minesweeper extends JFrame implements ActionListener, MouseListener
     private JPanel labelPanel;
     private JLabel timerLabel, bombLabel;
     private JButton smileyButton;
-    // icons for the smiley button; boomIcon for initial bomb in a game over
-    private Icon smileyIcon, worriedIcon, gameOverIcon, victoryIcon, boomIcon;
+    // icon for the smiley button; the others are loaded by MinesweeperIcons
+    // the first time they are shown
+    private Icon smileyIcon;
 
-    // game timer and an int tracking elapsed seconds
+    // the help window, created the first time it is asked for
+    private MineSweeperHelpWindow helpWindow;
+
+    // System.nanoTime at the start of main, for measuring startup time
+    private static long mainStartTime;
+    private boolean painted;
+
+    // the stopwatch measuring the game, the Swing Timer redrawing the timer
+    // label, and the number of seconds the label is showing
+    private MinesweeperStopwatch stopwatch;
     private Timer gameTimer;
-    private int gameTime;
+    private int displayedSeconds;
+
+    // how often the timer label is checked, in milliseconds
+    private static final int TIMER_TICK = 100;
+
+    // "000" to "999" for the timer and bomb labels, so updating a label
+    // never builds a new String
+    private static final String[] COUNTER_TEXT = new String[1000];
+    static {
+        for (int i = 0; i < COUNTER_TEXT.length; i++)
+            COUNTER_TEXT[i] = String.format("%03d", i);
+    }
 
     // the grid of tiles
     private MinesweeperGrid grid;
@@ -38,22 +66,49 @@ public class Minesweeper extends JFrame implements ActionListener, MouseListener
     // and the number of bombs on the grid
     private int width, height, rows, columns, bombs;
 
-    // bombCount is for the bomb label, tiles to clear is for
-    // checking victory conditions
-    private int bombCount, tilesToClear;
+    // bombCount is for the bomb label
+    private int bombCount;
+
+    // whether the tiles show their chance of being a bomb
+    private boolean showProbabilities;
+
+    // whether a move was undone this game, or the game was loaded from a
+    // file; such games aren't best times
+    private boolean undoUsed, boardLoaded;
+
+    // plays games in the background to estimate the difficulty of the custom
+    // settings; null when none is running
+    private MinesweeperDifficultyEstimator difficultyEstimator;
+
+    // best times of every game won; null if the leaderboard file can't be used
+    private MinesweeperLeaderboard leaderboard;
+
+    // every move made, with the position it was made in, when run with
+    // -Dminesweeper.dataset=file; null otherwise or if the file can't be written
+    private MinesweeperDatasetWriter dataset;
+    private boolean datasetOpened;
+
+    // the game the dataset's last move was from, and the id it was recorded
+    // under: the layout's seed, or a time stamp for boards without one, such
+    // as loaded ones, which would otherwise all be game 0
+    private MinesweeperLayout datasetLayout;
+    private long datasetGameId;
+
+    // sends the game to spectators connecting to -Dminesweeper.watchPort=port;
+    // null otherwise or if the port can't be used
+    private MinesweeperBroadcast broadcast;
+
+    // the journal of the game being played, so it can be recovered if the
+    // program dies; null if it can't be used or -Dminesweeper.journal=false
+    private MinesweeperGameLog journal;
 
     // constructor for Minesweeper
     public Minesweeper() {
         // sets window name
         super("Minesweeper Redux");
 
-        // load in all of the icons this class will use
-        ClassLoader loader = getClass().getClassLoader();
-        smileyIcon = new ImageIcon(loader.getResource("resources/smiley.jpeg"));
-        worriedIcon = new ImageIcon(loader.getResource("resources/worried.jpg"));
-        gameOverIcon = new ImageIcon(loader.getResource("resources/frowny.jpeg"));
-        victoryIcon = new ImageIcon(loader.getResource("resources/victory.jpeg"));
-        boomIcon = new ImageIcon(loader.getResource("resources/boom.jpg"));
+        // only the smiley is needed to show the window
+        smileyIcon = MinesweeperIcons.get(MinesweeperIcons.SMILEY);
 
         container = getContentPane();
 
@@ -65,28 +120,18 @@ public class Minesweeper extends JFrame implements ActionListener, MouseListener
         difficultyChanged = false;
 
         // initializes the bombCount for the bomb label
-        // and the number of tiles that need to be cleared to win
         bombCount = bombs;
-        setTilesToClear();
 
         // sets the width and height of the game window based on rows & columns
         setWidthAndHeight();
 
-        // initialize game timer
-        gameTime = 0;
-        gameTimer = new Timer(1000, new ActionListener() {
+        // initialize game timer; the label is computed from the stopwatch on
+        // every tick, so late or coalesced ticks never make the time drift
+        stopwatch = new MinesweeperStopwatch();
+        displayedSeconds = 0;
+        gameTimer = new Timer(TIMER_TICK, new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                String timeText = "";
-                gameTime++;
-                timeText += gameTime;
-                while (timeText.length() < 3) {
-                    timeText = "0"+timeText;
-                }
-                // gameTimer stays at 999 if 999 seconds is exceeded
-                if (timeText.length() > 3)
-                    timeText = "999";
-
-                timerLabel.setText(timeText);
+                setTimerText();
             }
         });
 
@@ -106,6 +151,11 @@ public class Minesweeper extends JFrame implements ActionListener, MouseListener
         this.setSize(width, height);
         this.setResizable(false);
         this.setVisible(true);
+
+        // lets spectators connect, and carries on with the game the journal
+        // holds, if it wasn't finished, once the window is showing
+        openBroadcast();
+        openJournal();
     }
 
     // sets up the label panel for the game window
@@ -144,6 +194,35 @@ public class Minesweeper extends JFrame implements ActionListener, MouseListener
         return panel;
     }
 
+    /* ************************************************************************
+     *                   DISPLAY FUNCTIONS
+     * ************************************************************************
+     */
+    // reports the time from the start of main to the first paint of the window
+    // when run with -Dminesweeper.startupTiming=true; with
+    // -Dminesweeper.exitAfterPaint=true the program exits right after, so
+    // the launcher can measure startup repeatedly
+    public void paint(Graphics g) {
+        super.paint(g);
+        if (!painted) {
+            painted = true;
+            if (Boolean.getBoolean("minesweeper.startupTiming")) {
+                long now = System.currentTimeMillis();
+                long jvmStart = java.lang.management.ManagementFactory.getRuntimeMXBean().getStartTime();
+                System.out.printf("startup: %.1f ms from main to first paint, %d ms from JVM start%n",
+                        (System.nanoTime() - mainStartTime) / 1e6, now - jvmStart);
+            }
+            if (Boolean.getBoolean("minesweeper.exitAfterPaint")) {
+                // let the paint finish before exiting
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        System.exit(0);
+                    }
+                });
+            }
+        }
+    }
+
     /* ************************************************************************
      *            MENU CONTROLLING FUNCTIONS
      * ************************************************************************
@@ -160,6 +239,28 @@ public class Minesweeper extends JFrame implements ActionListener, MouseListener
             case "Quit":
                 quitGame();
                 break;
+            case "Large Board":
+                openLargeBoard();
+                break;
+            case "Load Board":
+                loadBoard();
+                break;
+            case "Save Board":
+                saveBoard();
+                break;
+            case "Probabilities":
+                showProbabilities = !showProbabilities;
+                grid.setShowProbabilities(showProbabilities);
+                break;
+            case "Undo":
+                undoMove();
+                break;
+            case "Redo":
+                redoMove();
+                break;
+            case "Best Times":
+                displayBestTimes();
+                break;
             case "Help":
                 displayHelp();
                 break;
@@ -185,14 +286,7 @@ public class Minesweeper extends JFrame implements ActionListener, MouseListener
     // starts a new game
     private void newGame() {
         // resets variables and labels
-        gameTime = 0;
-        timerLabel.setForeground(Color.RED);
-        timerLabel.setText("000");
-        bombCount = bombs;
-        setBombText();
-        setTilesToClear();
-        smileyButton.setIcon(smileyIcon);
-        gameTimer.stop();
+        resetGameState();
 
         // creates a new grid if the difficulty (and therefore grid size)
         // has changed, otherwise resets the current grid
@@ -201,11 +295,49 @@ public class Minesweeper extends JFrame implements ActionListener, MouseListener
             setWidthAndHeight();
             this.setSize(width, height);
             grid = new MinesweeperGrid(rows, columns, bombs, this);
+            grid.setShowProbabilities(showProbabilities);
             this.add(grid, BorderLayout.CENTER);
         } else {
             grid.resetGrid();
         }
         container.add(grid, BorderLayout.CENTER);
+        broadcastNewGame();
+        journalSnapshot();
+    }
+
+    // resets the timer, labels and smiley for a new game
+    private void resetGameState() {
+        stopwatch.reset();
+        displayedSeconds = 0;
+        timerLabel.setForeground(Color.RED);
+        timerLabel.setText(COUNTER_TEXT[0]);
+        bombCount = bombs;
+        setBombText();
+        smileyButton.setIcon(smileyIcon);
+        gameTimer.stop();
+        undoUsed = false;
+        boardLoaded = false;
+    }
+
+    // takes back the last move
+    private void undoMove() {
+        MinesweeperBoard board = grid.getBoard();
+        int oldStatus = board.getStatus();
+        if (board.undo()) {
+            undoUsed = true;
+            showMoveResult(oldStatus);
+            journalSnapshot();
+        }
+    }
+
+    // makes the last undone move again
+    private void redoMove() {
+        MinesweeperBoard board = grid.getBoard();
+        int oldStatus = board.getStatus();
+        if (board.redo()) {
+            showMoveResult(oldStatus);
+            journalSnapshot();
+        }
     }
 
     // terminates the program
@@ -213,9 +345,172 @@ public class Minesweeper extends JFrame implements ActionListener, MouseListener
         System.exit(0);
     }
 
-    // displays a help window
+    // displays the help window, building it the first time
     private void displayHelp() {
-        new MineSweeperHelpWindow();
+        if (helpWindow == null) {
+            helpWindow = new MineSweeperHelpWindow();
+        } else {
+            helpWindow.setVisible(true);
+            helpWindow.toFront();
+        }
+    }
+
+    // asks for the size of a large board and opens it in its own window
+    private void openLargeBoard() {
+        JTextField rowField = new JTextField("1000");
+        JTextField columnField = new JTextField("1000");
+        JTextField bombField = new JTextField("160000");
+        JComboBox<String> shapeBox = new JComboBox<>(new String[] {
+                MinesweeperTopology.kindName(MinesweeperTopology.SQUARE),
+                MinesweeperTopology.kindName(MinesweeperTopology.TORUS),
+                MinesweeperTopology.kindName(MinesweeperTopology.HEX) });
+        JPanel panel = new JPanel(new GridLayout(4, 2, 5, 5));
+        panel.add(new JLabel("Rows:"));
+        panel.add(rowField);
+        panel.add(new JLabel("Columns:"));
+        panel.add(columnField);
+        panel.add(new JLabel("Bombs:"));
+        panel.add(bombField);
+        panel.add(new JLabel("Shape:"));
+        panel.add(shapeBox);
+
+        int choice = JOptionPane.showConfirmDialog(this, panel, "Large Board", JOptionPane.OK_CANCEL_OPTION,
+                JOptionPane.PLAIN_MESSAGE);
+        if (choice != JOptionPane.OK_OPTION)
+            return;
+
+        try {
+            int largeRows = Integer.parseInt(rowField.getText().trim());
+            int largeColumns = Integer.parseInt(columnField.getText().trim());
+            int largeBombs = Integer.parseInt(bombField.getText().trim());
+            MinesweeperLayout.checkDimensions(largeRows, largeColumns, largeBombs);
+            MinesweeperFootprint.checkBudget(MinesweeperFootprint.LARGE_WINDOW, largeRows, largeColumns);
+            int kind = MinesweeperTopology.parseKind((String) shapeBox.getSelectedItem());
+            new MinesweeperLargeBoardWindow(kind, largeRows, largeColumns, largeBombs).setVisible(true);
+        } catch (IllegalArgumentException e) {
+            // NumberFormatException is an IllegalArgumentException
+            JOptionPane.showMessageDialog(this, "Invalid board: " + e.getMessage(), "Large Board",
+                    JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    // loads a board saved by Save Board or taken from a puzzle collection; boards
+    // too large for the tiles, or not square, open in a large board window
+    private void loadBoard() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+
+        // a large board can take a while to read, so it is read in the
+        // background and shown once it is ready
+        final File file = chooser.getSelectedFile();
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        new SwingWorker<MinesweeperBoard, Void>() {
+            protected MinesweeperBoard doInBackground() throws IOException {
+                return MinesweeperBoardIO.read(file);
+            }
+
+            protected void done() {
+                setCursor(Cursor.getDefaultCursor());
+                MinesweeperBoard board;
+                try {
+                    board = get();
+                } catch (ExecutionException e) {
+                    JOptionPane.showMessageDialog(Minesweeper.this, "Unable to load board: "
+                            + e.getCause().getMessage(), "Load Board", JOptionPane.ERROR_MESSAGE);
+                    return;
+                } catch (InterruptedException e) {
+                    return;
+                }
+                showLoadedBoard(board);
+            }
+        }.execute();
+    }
+
+    // shows a board read by loadBoard in this window, or in a large board
+    // window if it doesn't fit the tiles
+    private void showLoadedBoard(MinesweeperBoard board) {
+        // the tile grid takes boards as large as the custom settings allow
+        int representation = MinesweeperFootprint.choose(board.getLayout().getTopology().getKind(), board.getRows(),
+                board.getColumns());
+        if (representation == MinesweeperFootprint.NONE) {
+            JOptionPane.showMessageDialog(this, "Unable to load board: "
+                    + MinesweeperFootprint.describeBudget(board.getRows(), board.getColumns()), "Load Board",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (representation == MinesweeperFootprint.LARGE_WINDOW) {
+            new MinesweeperLargeBoardWindow(board).setVisible(true);
+            return;
+        }
+
+        showBoard(board, "Custom");
+        boardLoaded = true;
+        showMoveResult(MinesweeperBoard.PLAYING);
+        journalSnapshot();
+    }
+
+    // replaces the grid with one showing a board part way through, for the
+    // given difficulty; a new game of this size will follow it
+    private void showBoard(MinesweeperBoard board, String boardDifficulty) {
+        rows = board.getRows();
+        columns = board.getColumns();
+        bombs = board.getLayout().getBombs();
+        difficulty = boardDifficulty;
+        difficultyChanged = false;
+        resetGameState();
+
+        this.remove(grid);
+        setWidthAndHeight();
+        this.setSize(width, height);
+        grid = new MinesweeperGrid(board, this);
+        grid.setShowProbabilities(showProbabilities);
+        container.add(grid, BorderLayout.CENTER);
+        container.revalidate();
+        broadcastNewGame();
+    }
+
+    // saves the current game; the file's extension picks the format, see MinesweeperBoardIO
+    private void saveBoard() {
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION)
+            return;
+        try {
+            MinesweeperBoardIO.write(grid.getBoard(), chooser.getSelectedFile());
+        } catch (IOException | IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, "Unable to save board: " + e.getMessage(), "Save Board",
+                    JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    // displays the ten best times for the current difficulty
+    private void displayBestTimes() {
+        String key = MinesweeperLeaderboard.key(difficulty, rows, columns, bombs);
+        String text;
+        if (getLeaderboard() == null) {
+            text = "Best times are not available.";
+        } else {
+            List<MinesweeperLeaderboard.Entry> best = leaderboard.top(key, 10);
+            if (best.isEmpty()) {
+                text = "No games won yet.";
+            } else {
+                StringBuilder builder = new StringBuilder();
+                SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+                for (int i = 0; i < best.size(); i++) {
+                    MinesweeperLeaderboard.Entry entry = best.get(i);
+                    builder.append(String.format("%2d.  %8.3f s   %5.2f 3BV/s   %s%n", i + 1,
+                            entry.getTimeMillis() / 1000.0, entry.get3BVPerSecond(),
+                            dateFormat.format(new Date(entry.getDate()))));
+                }
+                builder.append(String.format("%nGames won: %d", leaderboard.size(key)));
+                text = builder.toString();
+            }
+        }
+
+        JTextArea textArea = new JTextArea(text);
+        textArea.setFont(new Font("Courier", Font.PLAIN, 12));
+        textArea.setEditable(false);
+        JOptionPane.showMessageDialog(this, textArea, "Best Times: " + key, JOptionPane.PLAIN_MESSAGE);
     }
 
     // sets settings for beginner mode
@@ -305,10 +600,16 @@ public class Minesweeper extends JFrame implements ActionListener, MouseListener
         JLabel colLabel = new JLabel("Columns: " + columns);
         JLabel bombLabel = new JLabel("Bombs: " + bombs);
 
+        // label for how hard the settings are, worked out in the background
+        JLabel estimateLabel = new JLabel(" ");
+
         // handle the slider events
         ChangeListener sliderListener = new ChangeListener() {
             public void stateChanged(ChangeEvent e) {
                 JSlider source = (JSlider)e.getSource();
+
+                // the estimate for the old settings is no longer wanted
+                cancelDifficultyEstimate();
                 if (!source.getValueIsAdjusting()) {
                     if (source == rowSlider) {
                         rows = source.getValue();
@@ -322,6 +623,7 @@ public class Minesweeper extends JFrame implements ActionListener, MouseListener
                         bombs = source.getValue();
                         bombLabel.setText("Bombs: " + bombs);
                     }
+                    estimateDifficulty(estimateLabel);
                 }
             }
         };
@@ -330,6 +632,7 @@ public class Minesweeper extends JFrame implements ActionListener, MouseListener
         ActionListener buttonListener = new ActionListener() {
             public void actionPerformed(ActionEvent e) {
                 JButton source = (JButton)e.getSource();
+                cancelDifficultyEstimate();
                 if (source.getText().equals("OK")) {
                     difficulty = "Custom";
                     difficultyChanged = true;
@@ -375,13 +678,14 @@ public class Minesweeper extends JFrame implements ActionListener, MouseListener
 
         // add the sliders to the slider panel
         sliderPanel = new JPanel();
-        sliderPanel.setLayout(new GridLayout(6, 1, 0, 5));
+        sliderPanel.setLayout(new GridLayout(7, 1, 0, 5));
         sliderPanel.add(rowLabel);
         sliderPanel.add(rowSlider);
         sliderPanel.add(colLabel);
         sliderPanel.add(columnSlider);
         sliderPanel.add(bombLabel);
         sliderPanel.add(bombSlider);
+        sliderPanel.add(estimateLabel);
 
         // and the buttons to the button panel
         buttonPanel = new JPanel();
@@ -395,6 +699,7 @@ public class Minesweeper extends JFrame implements ActionListener, MouseListener
         // handle a window closing event
         customSettingsFrame.addWindowListener(new WindowAdapter() {
             public void windowClosing(WindowEvent e) {
+                cancelDifficultyEstimate();
                 if (difficultyChanged) {
                     newGame();
                 } else {
@@ -409,6 +714,24 @@ public class Minesweeper extends JFrame implements ActionListener, MouseListener
         customSettingsFrame.setSize(400, 400);
         customSettingsFrame.setVisible(true);
         customSettingsFrame.setResizable(false);
+        estimateDifficulty(estimateLabel);
+    }
+
+    // starts estimating the difficulty of the current settings on the
+    // label, stopping any estimate already running
+    private void estimateDifficulty(JLabel label) {
+        cancelDifficultyEstimate();
+        label.setText("Estimating difficulty...");
+        difficultyEstimator = new MinesweeperDifficultyEstimator(rows, columns, bombs, label);
+        difficultyEstimator.execute();
+    }
+
+    // stops the difficulty estimate, if one is running
+    private void cancelDifficultyEstimate() {
+        if (difficultyEstimator != null) {
+            difficultyEstimator.cancel(true);
+            difficultyEstimator = null;
+        }
     }
 
     /* ********************************************************************
@@ -423,26 +746,249 @@ public class Minesweeper extends JFrame implements ActionListener, MouseListener
 
     // sets the text on the bomb label
     private void setBombText() {
-        String bombText = "";
-        bombText += bombCount;
-        while (bombText.length() < 3)
-            bombText = "0"+bombText;
-        bombLabel.setText(bombText);
+        bombLabel.setText(COUNTER_TEXT[Math.max(Math.min(bombCount, 999), 0)]);
     }
 
-    // sets the number of tiles that need to be cleared to win the game
-    private void setTilesToClear() {
-        tilesToClear = rows*columns - bombs;
+    // sets the text on the timer label if the number of whole seconds changed;
+    // the timer label stays at 999 if 999 seconds is exceeded
+    private void setTimerText() {
+        int seconds = (int) Math.min(stopwatch.getElapsedMillis() / 1000, 999);
+        if (seconds != displayedSeconds) {
+            displayedSeconds = seconds;
+            timerLabel.setText(COUNTER_TEXT[seconds]);
+        }
     }
 
-    // called when tilesToClear reaches zero, i.e. the player wins
-    private void victory() {
-        grid.allCleared();
-        smileyButton.setIcon(victoryIcon);
+    // starts the game timer on the first click of a game
+    private void startTimer() {
+        if (!stopwatch.isRunning() && grid.getBoard().getStatus() == MinesweeperBoard.PLAYING) {
+            stopwatch.start();
+            gameTimer.start();
+        }
+    }
+
+    // stops the game timer and shows the final time
+    private void stopTimer() {
+        stopwatch.stop();
         gameTimer.stop();
+        setTimerText();
+    }
+
+    // updates the labels, smiley, and timer after a move, undo, or redo
+    // that may have changed the game's status from oldStatus
+    private void showMoveResult(int oldStatus) {
+        MinesweeperBoard board = grid.getBoard();
+        bombCount = board.getFlagsRemaining();
+        setBombText();
+        int status = board.getStatus();
+        if (status != oldStatus) {
+            if (status == MinesweeperBoard.LOST) {
+                // the user lost in this case
+                smileyButton.setIcon(MinesweeperIcons.get(MinesweeperIcons.GAME_OVER));
+                stopTimer();
+            } else if (status == MinesweeperBoard.WON) {
+                // the player won!
+                victory();
+            } else {
+                // the move that ended the game was undone: play on
+                smileyButton.setIcon(smileyIcon);
+                timerLabel.setForeground(Color.RED);
+                startTimer();
+            }
+        }
+        grid.updateProbabilities();
+        broadcastMove();
+    }
+
+    // called when the board has no tiles left to clear, i.e. the player wins
+    private void victory() {
+        smileyButton.setIcon(MinesweeperIcons.get(MinesweeperIcons.VICTORY));
+        stopTimer();
         timerLabel.setForeground(Color.GREEN);
         bombCount = 0;
         setBombText();
+        recordBestTime();
+    }
+
+    // adds the game just won to the leaderboard
+    private void recordBestTime() {
+        if (undoUsed || boardLoaded || getLeaderboard() == null)
+            return;
+
+        MinesweeperLayout layout = grid.getBoard().getLayout();
+        long timeMillis = stopwatch.getElapsedMillis();
+        float bbbvPerSecond = layout.get3BV() / (Math.max(timeMillis, 1) / 1000f);
+        try {
+            leaderboard.record(MinesweeperLeaderboard.key(difficulty, rows, columns, bombs),
+                    timeMillis, bbbvPerSecond, layout.getSeed());
+        } catch (IOException e) {
+            System.err.println("Unable to record best time: " + e.getMessage());
+        }
+    }
+
+    // opens the leaderboard the first time it is needed
+    private MinesweeperLeaderboard getLeaderboard() {
+        if (leaderboard == null) {
+            File logFile = new File(System.getProperty("user.home"), ".minesweeper/leaderboard.log");
+            try {
+                leaderboard = new MinesweeperLeaderboard(logFile);
+            } catch (IOException e) {
+                System.err.println("Unable to open leaderboard: " + e.getMessage());
+            }
+        }
+        return leaderboard;
+    }
+
+    // adds a move about to be made to the dataset, if one is being written
+    private void recordMove(MinesweeperBoard board, MinesweeperMove move) {
+        if (board.getStatus() != MinesweeperBoard.PLAYING || getDataset() == null)
+            return;
+        try {
+            MinesweeperLayout layout = board.getLayout();
+            if (layout != datasetLayout) {
+                datasetLayout = layout;
+                datasetGameId = layout.isSeeded() ? layout.getSeed() : System.nanoTime();
+            }
+            dataset.write(datasetGameId, board.getVisibleBoard(), move);
+        } catch (IOException e) {
+            System.err.println("Unable to record move: " + e.getMessage());
+        }
+    }
+
+    // opens the dataset the first time it is needed; it is closed, and its
+    // last chunk written, when the program exits
+    private MinesweeperDatasetWriter getDataset() {
+        String path = System.getProperty("minesweeper.dataset");
+        if (!datasetOpened && path != null) {
+            datasetOpened = true;
+            try {
+                final MinesweeperDatasetWriter writer = new MinesweeperDatasetWriter(new File(path), true);
+                Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            writer.close();
+                        } catch (IOException e) {
+                            System.err.println("Unable to finish dataset: " + e.getMessage());
+                        }
+                    }
+                }));
+                dataset = writer;
+            } catch (IOException e) {
+                System.err.println("Unable to open dataset: " + e.getMessage());
+            }
+        }
+        return dataset;
+    }
+
+    // sends the last move to spectators, if there are any; the broadcast
+    // does the work on its own thread
+    private void broadcastMove() {
+        if (broadcast != null)
+            broadcast.publish();
+    }
+
+    // sends the grid's new game to spectators, if there are any
+    private void broadcastNewGame() {
+        if (broadcast != null)
+            broadcast.reset(grid.getBoard());
+    }
+
+    // starts the broadcast, and accepting spectators, if
+    // -Dminesweeper.watchPort is set
+    private void openBroadcast() {
+        Integer port = Integer.getInteger("minesweeper.watchPort");
+        if (port == null)
+            return;
+        try {
+            ServerSocket serverSocket = new ServerSocket(port);
+            broadcast = new MinesweeperBroadcast(grid.getBoard());
+            MinesweeperSocketSpectator.acceptSpectators(serverSocket, broadcast);
+        } catch (IOException e) {
+            System.err.println("Unable to accept spectators: " + e.getMessage());
+        }
+    }
+
+    // opens the journal in the background, then carries on with the game it
+    // holds if that is still being played, fits the tile grid, and no move
+    // has been made in the window meanwhile; the timer starts again from the
+    // time of the last move on the next click. There is no journal if
+    // another Minesweeper holds it. The journal is closed, and everything
+    // logged written, when the program exits
+    private void openJournal() {
+        if (!Boolean.parseBoolean(System.getProperty("minesweeper.journal", "true")))
+            return;
+        new SwingWorker<MinesweeperGameLog, Void>() {
+            protected MinesweeperGameLog doInBackground() throws IOException {
+                return new MinesweeperGameLog(new File(System.getProperty("user.home"), ".minesweeper/journal"));
+            }
+
+            protected void done() {
+                try {
+                    showJournal(get());
+                } catch (ExecutionException e) {
+                    System.err.println("Unable to open journal: " + e.getCause().getMessage());
+                } catch (InterruptedException e) {
+                    // the window is going away
+                }
+            }
+        }.execute();
+    }
+
+    // starts journaling to a journal opened by openJournal, and shows the
+    // game it recovered if the window's game hasn't been touched
+    private void showJournal(final MinesweeperGameLog opened) {
+        journal = opened;
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            public void run() {
+                try {
+                    opened.close();
+                } catch (IOException e) {
+                    System.err.println("Unable to finish journal: " + e.getMessage());
+                }
+            }
+        }));
+
+        MinesweeperGameLog.Recovery recovery = journal.getRecovery();
+        MinesweeperBoard board = recovery == null ? null : recovery.getBoard();
+        if (board != null && board.getStatus() == MinesweeperBoard.PLAYING
+                && grid.getBoard().getMoveCount() == 0 && !boardLoaded
+                && MinesweeperFootprint.choose(board.getLayout().getTopology().getKind(), board.getRows(),
+                        board.getColumns()) == MinesweeperFootprint.TILE_GRID) {
+            showBoard(board, recovery.getDifficulty());
+            undoUsed = (recovery.getFlags() & MinesweeperGameLog.UNDO_USED) != 0;
+            boardLoaded = (recovery.getFlags() & MinesweeperGameLog.BOARD_LOADED) != 0;
+            stopwatch.setElapsedMillis(recovery.getElapsedMillis());
+            setTimerText();
+            showMoveResult(MinesweeperBoard.PLAYING);
+        }
+        journalSnapshot();
+    }
+
+    // replaces the journal with the game as it stands, after a change a
+    // move can't describe: a new game, a loaded board, an undo or a redo
+    private void journalSnapshot() {
+        if (journal == null)
+            return;
+        int flags = (undoUsed ? MinesweeperGameLog.UNDO_USED : 0)
+                | (boardLoaded ? MinesweeperGameLog.BOARD_LOADED : 0);
+        try {
+            journal.snapshot(grid.getBoard(), stopwatch.getElapsedMillis(), difficulty, flags);
+        } catch (IOException e) {
+            System.err.println("Unable to write journal: " + e.getMessage());
+            journal = null;
+        }
+    }
+
+    // adds a move just made to the journal; it is written in the background
+    private void journalMove(MinesweeperBoard board, MinesweeperMove move) {
+        if (journal == null)
+            return;
+        try {
+            journal.logMove(board, move, stopwatch.getElapsedMillis());
+        } catch (IOException e) {
+            System.err.println("Unable to write journal: " + e.getMessage());
+            journal = null;
+        }
     }
 
     /* *************************************************************************
@@ -456,31 +1002,36 @@ public class Minesweeper extends JFrame implements ActionListener, MouseListener
 
     // mouse clicked event
     public void mouseClicked(MouseEvent e) {
-        // start the game timer
-        gameTimer.start();
-
-        if (e.getSource() instanceof MinesweeperTile) {
-            MinesweeperTile pressedButton = (MinesweeperTile) e.getSource();
-
-            // plant a flag if the user right clicks and update bomb label text
+        if (e.getSource() == grid) {
+            // revealed tiles and finished games don't respond to clicks
+            int index = grid.getIndexAt(e.getPoint());
+            if (index < 0 || !grid.isPlayable(index))
+                return;
+
+            // start the game timer
+            startTimer();
+
+            // plant a flag if the user right clicks and update bomb label text;
+            // the board refuses a flag once the bomb count reaches zero
+            MinesweeperBoard board = grid.getBoard();
+            int oldStatus = board.getStatus();
+            MinesweeperMove move = null;
             if (SwingUtilities.isRightMouseButton(e)) {
-                pressedButton.setFlag();
-                if (pressedButton.isFlag()) {
-                    bombCount--;
-                    if (bombCount < 0) {
-                        pressedButton.setFlag();
-                        bombCount++;
-                    }
-                    setBombText();
-                } else {
-                    bombCount++;
-                    setBombText();
-                }
+                move = MinesweeperMove.flag(index);
+                recordMove(board, move);
+                board.toggleFlag(index);
             } else {
-                // process results of clicking on given tile
-                if (!pressedButton.isFlag())
-                    handleClick(pressedButton);
+                // the board reveals the tile, or every blank tile
+                // surrounding it, and the grid shows the result
+                if (!isFlag(index)) {
+                    move = MinesweeperMove.reveal(index);
+                    recordMove(board, move);
+                    board.reveal(index);
+                }
             }
+            showMoveResult(oldStatus);
+            if (move != null && oldStatus == MinesweeperBoard.PLAYING)
+                journalMove(board, move);
         } else {
             // calls new game when smileyButton is pressed
             difficultyChanged = false;
@@ -490,45 +1041,25 @@ public class Minesweeper extends JFrame implements ActionListener, MouseListener
 
     // sets smiley icon to worried icon while mouse is pressed
     public void mousePressed(MouseEvent e) {
-        if (e.getSource() != smileyButton && !SwingUtilities.isRightMouseButton(e)) {
-            MinesweeperTile pressedButton = (MinesweeperTile) e.getSource();
-            if (!pressedButton.isFlag())
-                smileyButton.setIcon(worriedIcon);
+        if (e.getSource() == grid && !SwingUtilities.isRightMouseButton(e)) {
+            int index = grid.getIndexAt(e.getPoint());
+            if (index >= 0 && grid.isPlayable(index) && !isFlag(index))
+                smileyButton.setIcon(MinesweeperIcons.get(MinesweeperIcons.WORRIED));
         }
     }
 
     // returns smiley icon to normal after mouse is released
     public void mouseReleased(MouseEvent e) {
-        if (e.getSource() != smileyButton && !SwingUtilities.isRightMouseButton(e))
+        if (e.getSource() == grid && !SwingUtilities.isRightMouseButton(e)
+                && grid.getBoard().getStatus() == MinesweeperBoard.PLAYING)
             smileyButton.setIcon(smileyIcon);
     }
     public void mouseEntered(MouseEvent e) {}
     public void mouseExited(MouseEvent e) {}
 
-    // calls function based on what the tile clicked is
-    private void handleClick(MinesweeperTile button) {
-        if (button.isBomb()) {
-            // the user lost in this case
-            grid.revealBombs();
-            smileyButton.setIcon(gameOverIcon);
-            button.setIcon(boomIcon);
-            gameTimer.stop();
-        } else if (button.getNumAdjacentBombs() == 0) {
-            // this is a blank space, clear all the blank
-            // spaces surrounding
-            int tilesFlipped = grid.floodfill(button);
-            tilesToClear -= tilesFlipped;
-        } else {
-            // this tile has a number on it
-            button.reveal();
-            button.removeMouseListener(this);
-            tilesToClear--;
-        }
-
-        if (tilesToClear == 0) {
-            // the player won!
-            victory();
-        }
+    // checks if the user has planted a flag on the tile at index
+    private boolean isFlag(int index) {
+        return grid.getBoard().getState(index) == MinesweeperBoard.FLAGGED;
     }
 
 
@@ -537,10 +1068,17 @@ public class Minesweeper extends JFrame implements ActionListener, MouseListener
      * *************************************************************************
      */
     public static void main(String[] args) {
-        Minesweeper minesweeper = new Minesweeper();
-        minesweeper.addWindowListener(new WindowAdapter() {
-            public void windowClosing(WindowEvent e) {
-                System.exit(0);
+        mainStartTime = System.nanoTime();
+
+        // build the window on the event dispatch thread, as Swing requires
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                Minesweeper minesweeper = new Minesweeper();
+                minesweeper.addWindowListener(new WindowAdapter() {
+                    public void windowClosing(WindowEvent e) {
+                        System.exit(0);
+                    }
+                });
             }
         });
     }
@@ -0,0 +1,64 @@
+import javax.swing.SwingUtilities;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * Keeps Monte Carlo estimates off the event dispatch thread for the
+ * probability overlays of the game windows.
+ *
+ * The frontiers made by newFrontier() only enumerate components, which the
+ * solver's step limit keeps to about a frame of work, and defer the rest.
+ * After each update, estimate() runs the deferred components one update at
+ * a time on a background thread shared by every window, then applies them
+ * back on the event dispatch thread, skipping any a later move has
+ * replaced. Until then those cells show the density of the rest of the board.
+ */
+public class MinesweeperBackgroundEstimates {
+    // enumerates components without estimating any; the solver keeps no
+    // state between components, so every window can share it
+    private static final MinesweeperSolver EXACT_SOLVER =
+            new MinesweeperSolver(MinesweeperSolver.DEFAULT_STEP_LIMIT, null);
+
+    // the estimator shared by every window, and the thread running it
+    private static final MinesweeperMonteCarlo ESTIMATOR = new MinesweeperMonteCarlo();
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "minesweeper-estimates");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private MinesweeperBackgroundEstimates() {
+    }
+
+    // returns a frontier following the board whose estimates are left for estimate()
+    public static MinesweeperFrontier newFrontier(MinesweeperBoard board) {
+        MinesweeperFrontier frontier = new MinesweeperFrontier(board, EXACT_SOLVER);
+        frontier.setDeferEstimates(true);
+        return frontier;
+    }
+
+    // estimates the components the frontier's updates have deferred, in the
+    // background, and runs done on the event dispatch thread if any of them
+    // changed the probabilities; call on the event dispatch thread after update()
+    public static void estimate(final MinesweeperFrontier frontier, final Runnable done) {
+        final List<MinesweeperFrontier.Estimate> estimates = frontier.takeEstimates();
+        if (estimates.isEmpty())
+            return;
+        EXECUTOR.execute(new Runnable() {
+            public void run() {
+                for (MinesweeperFrontier.Estimate estimate : estimates)
+                    estimate.run(ESTIMATOR);
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        if (frontier.applyEstimates(estimates))
+                            done.run();
+                    }
+                });
+            }
+        });
+    }
+}
@@ -0,0 +1,597 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * Class representing one game of Minesweeper without any user interface.
+ *
+ * Holds the state of every cell in a byte per cell on top of a shared
+ * MinesweeperLayout, and implements the rules the game window uses:
+ * revealing, flood filling blank areas, and planting flags.
+ *
+ * With setUndoDepth, the last moves are logged as the cells they changed,
+ * so they can be undone and redone in time proportional to the cells they
+ * changed. Boards keep no history by default: only the game window asks for
+ * it, and server, race and simulated games don't pay for it. The states are kept
+ * in chunks that are shared copy-on-write, so fork() can make a what-if
+ * copy of even a huge board without copying its cells: each copy only
+ * copies the chunks it changes.
+ */
+public class MinesweeperBoard {
+    // states a cell can be in
+    public static final byte HIDDEN = 0;
+    public static final byte FLAGGED = 1;
+    public static final byte REVEALED = 2;
+
+    // version of the format written by writeTo; version 1 had no topology
+    // and was always square, and version 3 is written for layouts without a
+    // seed, with a bit per cell for the bombs in place of the seed
+    private static final byte FORMAT_VERSION = 2;
+    private static final byte UNSEEDED_FORMAT_VERSION = 3;
+
+    // states the game can be in
+    public static final int PLAYING = 0;
+    public static final int WON = 1;
+    public static final int LOST = 2;
+
+    // where the bombs are, and which cells are neighbors
+    private final MinesweeperLayout layout;
+    private final MinesweeperTopology topology;
+
+    // number of rows and columns, copied from the layout
+    private final int rows, columns;
+
+    // cells per chunk of states, as a shift
+    private static final int CHUNK_SHIFT = 12;
+    private static final int CHUNK_MASK = (1 << CHUNK_SHIFT) - 1;
+
+    // the state of each cell in row-major order, in chunks; a chunk may be
+    // shared with forks of this board, and is copied before it is changed
+    // unless this board owns it
+    private final int cellCount;
+    private final byte[][] chunks;
+    private final boolean[] owned;
+
+    // how many moves can be undone; nothing is logged if it is 0
+    private int undoDepth;
+
+    // the cells changed by the moves that can be undone, each packed by
+    // logEntry; moves[i] is the part of the log for move i, and the moves
+    // from movesDone on have been undone and can be redone. The log is
+    // created by the first move logged
+    private long[] log;
+    private final List<Move> moves = new ArrayList<>();
+    private int movesDone;
+
+    // moves made, less those undone
+    private int moveCount;
+
+    // the move being made, while reveal or toggleFlag is running
+    private Move currentMove;
+
+    // tilesToClear is for checking victory conditions, flagsRemaining
+    // is the number of flags the player may still plant
+    private int tilesToClear, flagsRemaining;
+
+    // current status of the game and the index of the bomb that was
+    // clicked if the game was lost
+    private int status;
+    private int explodedIndex;
+
+    // queue used by floodfill; created the first time it is needed and reused
+    private int[] queue;
+
+    // objects notified when the board changes
+    private MinesweeperBoardListener[] listeners = new MinesweeperBoardListener[0];
+
+    // what a player can see of the board; created the first time it is asked for
+    private MinesweeperVisibleBoard visibleBoard;
+
+    /*
+     * One move: the part of the log holding its changes, and the counters
+     * and status before and after it.
+     */
+    private static class Move {
+        int logStart, logEnd;
+        int tilesBefore, flagsBefore;
+        int tilesAfter, flagsAfter, statusAfter, explodedAfter;
+    }
+
+    // constructor for MinesweeperBoard
+    public MinesweeperBoard(MinesweeperLayout layout) {
+        this.layout = layout;
+        topology = layout.getTopology();
+        rows = layout.getRows();
+        columns = layout.getColumns();
+        cellCount = layout.getCellCount();
+        int chunkCount = (int) (((long) cellCount + CHUNK_MASK) >>> CHUNK_SHIFT);
+        chunks = new byte[chunkCount][];
+        owned = new boolean[chunkCount];
+        for (int i = 0; i < chunkCount; i++) {
+            chunks[i] = new byte[Math.min(cellCount - (i << CHUNK_SHIFT), 1 << CHUNK_SHIFT)];
+            owned[i] = true;
+        }
+
+        tilesToClear = cellCount - layout.getBombs();
+        flagsRemaining = layout.getBombs();
+        status = PLAYING;
+        explodedIndex = -1;
+    }
+
+    // copy constructor for fork; shares every chunk with the original
+    private MinesweeperBoard(MinesweeperBoard original) {
+        layout = original.layout;
+        topology = original.topology;
+        rows = original.rows;
+        columns = original.columns;
+        cellCount = original.cellCount;
+        chunks = original.chunks.clone();
+        owned = new boolean[chunks.length];
+        Arrays.fill(original.owned, false);
+
+        tilesToClear = original.tilesToClear;
+        flagsRemaining = original.flagsRemaining;
+        status = original.status;
+        explodedIndex = original.explodedIndex;
+    }
+
+    // returns a copy of this board as it is now, to play a "what if" on
+    // without changing this one; the copy has no listeners and no moves to
+    // undo, and costs memory only for the cells either board changes later
+    public MinesweeperBoard fork() {
+        return new MinesweeperBoard(this);
+    }
+
+    // public accessors for the board and its layout
+    public MinesweeperLayout getLayout() { return layout; }
+    public int getRows() { return rows; }
+    public int getColumns() { return columns; }
+    public int getCellCount() { return cellCount; }
+
+    // public accessors for the game state
+    public int getStatus() { return status; }
+    public int getTilesToClear() { return tilesToClear; }
+    public int getFlagsRemaining() { return flagsRemaining; }
+    public int getExplodedIndex() { return explodedIndex; }
+
+    // returns the name of a game status: PLAYING, WON, or LOST
+    public static String statusName(int status) {
+        return status == PLAYING ? "PLAYING" : status == WON ? "WON" : "LOST";
+    }
+
+    // public accessor for the state of a single cell
+    public byte getState(int index) { return chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK]; }
+
+    // returns a read-only view of what a player can see of this board
+    public MinesweeperVisibleBoard getVisibleBoard() {
+        if (visibleBoard == null)
+            visibleBoard = new MinesweeperVisibleBoard(this);
+        return visibleBoard;
+    }
+
+    // public accessors for the moves that can be undone and redone
+    public boolean canUndo() { return movesDone > 0; }
+    public boolean canRedo() { return movesDone < moves.size(); }
+    public int getMoveCount() { return moveCount; }
+    public int getUndoDepth() { return undoDepth; }
+
+    // keeps the last depth moves so they can be undone, forgetting older
+    // ones; 0, the default, keeps no history at all
+    public void setUndoDepth(int depth) {
+        if (depth < 0)
+            throw new IllegalArgumentException("Undo depth can't be negative: " + depth);
+        undoDepth = depth;
+        if (depth == 0) {
+            moves.clear();
+            movesDone = 0;
+            log = null;
+        } else if (moves.size() > depth) {
+            // moves undone are forgotten first
+            while (moves.size() > Math.max(movesDone, depth))
+                moves.remove(moves.size() - 1);
+            forgetOldMoves();
+        }
+    }
+
+    // adds a listener that is told about every change to the board
+    public void addListener(MinesweeperBoardListener listener) {
+        MinesweeperBoardListener[] newListeners = new MinesweeperBoardListener[listeners.length + 1];
+        System.arraycopy(listeners, 0, newListeners, 0, listeners.length);
+        newListeners[listeners.length] = listener;
+        listeners = newListeners;
+    }
+
+    // stops telling a listener added with addListener about changes
+    public void removeListener(MinesweeperBoardListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                MinesweeperBoardListener[] newListeners = new MinesweeperBoardListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, newListeners, 0, i);
+                System.arraycopy(listeners, i + 1, newListeners, i, listeners.length - i - 1);
+                listeners = newListeners;
+                return;
+            }
+        }
+    }
+
+    // reveals the cell at row and col; see reveal(int)
+    public int reveal(int row, int col) {
+        return reveal(row * columns + col);
+    }
+
+    // reveals the cell at index, the way a left click does in the game window
+    // returns the number of tiles flipped for bookkeeping
+    public int reveal(int index) {
+        // clicks on finished games, flags, and revealed cells do nothing
+        if (status != PLAYING || getState(index) != HIDDEN)
+            return 0;
+
+        beginMove();
+        int tilesFlipped;
+        if (layout.isBomb(index)) {
+            // the player lost in this case
+            explodedIndex = index;
+            setStatus(LOST);
+            endMove();
+            return 0;
+        } else if (layout.getNumAdjacentBombs(index) == 0) {
+            // this is a blank space, clear all the blank spaces surrounding
+            tilesFlipped = floodfill(index);
+        } else {
+            // this cell has a number on it
+            setState(index, REVEALED);
+            tilesFlipped = 1;
+        }
+
+        tilesToClear -= tilesFlipped;
+        if (tilesToClear == 0) {
+            // the player won!
+            allCleared();
+        }
+        endMove();
+        return tilesFlipped;
+    }
+
+    // takes back the last move, restoring every cell it changed; returns
+    // false if there is no move to undo
+    public boolean undo() {
+        if (movesDone == 0)
+            return false;
+        Move move = moves.get(--movesDone);
+        moveCount--;
+        for (int i = move.logEnd - 1; i >= move.logStart; i--)
+            setState(logIndex(log[i]), logOldState(log[i]));
+        tilesToClear = move.tilesBefore;
+        flagsRemaining = move.flagsBefore;
+        explodedIndex = -1;
+        if (status != PLAYING)
+            setStatus(PLAYING);
+        return true;
+    }
+
+    // makes the last move undone again; returns false if there is none
+    public boolean redo() {
+        if (movesDone == moves.size())
+            return false;
+        Move move = moves.get(movesDone++);
+        moveCount++;
+        for (int i = move.logStart; i < move.logEnd; i++)
+            setState(logIndex(log[i]), logNewState(log[i]));
+        tilesToClear = move.tilesAfter;
+        flagsRemaining = move.flagsAfter;
+        explodedIndex = move.explodedAfter;
+        if (move.statusAfter != status)
+            setStatus(move.statusAfter);
+        return true;
+    }
+
+    // rough number of heap bytes held by this board and its layout
+    public long estimateBytes() {
+        long bytes = cellCount + 48L * moves.size() + 16L * chunks.length + 128;
+        for (int i = 0; i < chunks.length; i++) {
+            if (owned[i])
+                bytes += chunks[i].length;
+        }
+        if (log != null)
+            bytes += 8L * log.length;
+        if (queue != null)
+            bytes += 4L * queue.length;
+        return bytes;
+    }
+
+    // writes the board in a compact form: the layout's shape, dimensions and
+    // seed, then the state of every cell packed into 2 bits
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeByte(layout.isSeeded() ? FORMAT_VERSION : UNSEEDED_FORMAT_VERSION);
+        out.writeByte(topology.getKind());
+        out.writeInt(rows);
+        out.writeInt(columns);
+        out.writeInt(layout.getBombs());
+        if (layout.isSeeded()) {
+            out.writeLong(layout.getSeed());
+        } else {
+            // eight cells per byte
+            for (int index = 0; index < cellCount; index += 8) {
+                int packed = 0;
+                for (int i = 0; i < 8 && index + i < cellCount; i++) {
+                    if (layout.isBomb(index + i))
+                        packed |= 1 << i;
+                }
+                out.writeByte(packed);
+            }
+        }
+        out.writeByte(status);
+        out.writeInt(explodedIndex);
+
+        // four cells per byte
+        for (int index = 0; index < cellCount; index += 4) {
+            int packed = 0;
+            for (int i = 0; i < 4 && index + i < cellCount; i++)
+                packed |= getState(index + i) << (2 * i);
+            out.writeByte(packed);
+        }
+    }
+
+    // reads a board written by writeTo; the layout is rebuilt from its seed,
+    // or from its bombs for version 3. The cells are checked as restore()
+    // checks them, and the status must agree with them, so a corrupt file
+    // throws an IOException here rather than breaking the game later
+    public static MinesweeperBoard readFrom(DataInput in) throws IOException {
+        byte version = in.readByte();
+        if (version != 1 && version != FORMAT_VERSION && version != UNSEEDED_FORMAT_VERSION)
+            throw new IOException("Unknown board format version: " + version);
+
+        int kind = version == 1 ? MinesweeperTopology.SQUARE : in.readByte();
+        int rows = in.readInt();
+        int columns = in.readInt();
+        int bombs = in.readInt();
+        MinesweeperLayout layout;
+        try {
+            MinesweeperLayout.checkDimensions(rows, columns, bombs);
+            MinesweeperTopology topology = new MinesweeperTopology(kind, rows, columns);
+            if (version == UNSEEDED_FORMAT_VERSION) {
+                byte[] cells = new byte[rows * columns];
+                for (int index = 0; index < cells.length; index += 8) {
+                    int packed = in.readUnsignedByte();
+                    for (int i = 0; i < 8 && index + i < cells.length; i++) {
+                        if ((packed & 1 << i) != 0)
+                            cells[index + i] = -1;
+                    }
+                }
+                layout = new MinesweeperLayout(topology, cells);
+                if (layout.getBombs() != bombs)
+                    throw new IOException("Invalid board: expected " + bombs + " bombs, found " + layout.getBombs());
+            } else {
+                layout = new MinesweeperLayout(topology, bombs, in.readLong());
+            }
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid board: " + e.getMessage());
+        }
+        int status = in.readByte();
+        int explodedIndex = in.readInt();
+
+        // unpack the cell states; restore recounts the tiles left to clear and flags left
+        int cellCount = layout.getCellCount();
+        byte[] states = new byte[cellCount];
+        for (int index = 0; index < cellCount; index += 4) {
+            int packed = in.readUnsignedByte();
+            for (int i = 0; i < 4 && index + i < cellCount; i++)
+                states[index + i] = (byte) ((packed >>> (2 * i)) & 3);
+        }
+        MinesweeperBoard board;
+        try {
+            board = restore(layout, states, explodedIndex);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid board: " + e.getMessage());
+        }
+        if (board.status != status)
+            throw new IOException("Invalid board: status " + status + " doesn't match its cells");
+        return board;
+    }
+
+    // builds a board in the given cell states, e.g. one loaded by
+    // MinesweeperBoardIO; states may be null for a board nothing has been
+    // done to. The game is lost if explodedIndex is a bomb's index rather
+    // than -1, and won if every other cell is revealed. Throws an
+    // IllegalArgumentException for an unknown state, a revealed bomb, more
+    // flags than bombs, or an explodedIndex that isn't a bomb
+    static MinesweeperBoard restore(MinesweeperLayout layout, byte[] states, int explodedIndex) {
+        MinesweeperBoard board = new MinesweeperBoard(layout);
+        for (int index = 0; states != null && index < board.cellCount; index++) {
+            byte cellState = states[index];
+            if (cellState == HIDDEN)
+                continue;
+            if (cellState != FLAGGED && cellState != REVEALED)
+                throw new IllegalArgumentException("Unknown state " + cellState + " at " + index);
+            if (cellState == REVEALED && layout.isBomb(index))
+                throw new IllegalArgumentException("Bomb revealed at " + index);
+            board.writeState(index, cellState);
+            if (cellState == FLAGGED)
+                board.flagsRemaining--;
+            else
+                board.tilesToClear--;
+        }
+        if (board.flagsRemaining < 0)
+            throw new IllegalArgumentException("More flags than bombs");
+        if (explodedIndex != -1) {
+            if (explodedIndex < 0 || explodedIndex >= board.cellCount || !layout.isBomb(explodedIndex))
+                throw new IllegalArgumentException("No bomb exploded at " + explodedIndex);
+            board.explodedIndex = explodedIndex;
+            board.status = LOST;
+        } else if (board.tilesToClear == 0) {
+            board.status = WON;
+        }
+        return board;
+    }
+
+    // plants or removes a flag on the cell at row and col; see toggleFlag(int)
+    public boolean toggleFlag(int row, int col) {
+        return toggleFlag(row * columns + col);
+    }
+
+    // plants or removes a flag on the cell at index, the way a right click does
+    // in the game window; returns true if the cell changed
+    public boolean toggleFlag(int index) {
+        if (status != PLAYING)
+            return false;
+
+        if (getState(index) == FLAGGED) {
+            beginMove();
+            flagsRemaining++;
+            setState(index, HIDDEN);
+            endMove();
+            return true;
+        } else if (getState(index) == HIDDEN && flagsRemaining > 0) {
+            // a flag can't be planted once the bomb count reaches zero
+            beginMove();
+            flagsRemaining--;
+            setState(index, FLAGGED);
+            endMove();
+            return true;
+        }
+        return false;
+    }
+
+    // reveals the blank cell at index and all the cells surrounding it, moving
+    // on to surrounding blank cells until the blank area is surrounded by numbers
+    // returns the number of cells revealed
+    private int floodfill(int start) {
+        if (queue == null)
+            queue = new int[cellCount];
+
+        // cells are revealed as they are added to the queue, so each cell
+        // is added at most once and no separate "checked" array is needed
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        setState(start, REVEALED);
+        int tilesFlipped = 1;
+
+        while (head < tail) {
+            int index = queue[head++];
+
+            // check all the cells surrounding the current cell
+            for (int i = topology.neighborStart(index), end = topology.neighborEnd(index); i < end; i++) {
+                int neighbor = index + topology.neighborOffset(i);
+
+                // flagged and already revealed cells are left alone
+                if (getState(neighbor) != HIDDEN)
+                    continue;
+
+                setState(neighbor, REVEALED);
+                tilesFlipped++;
+
+                // blank cells go on the queue so their surroundings are revealed too
+                if (layout.getNumAdjacentBombs(neighbor) == 0)
+                    queue[tail++] = neighbor;
+            }
+        }
+
+        return tilesFlipped;
+    }
+
+    // the board is cleared: any bomb that has not been marked
+    // with a flag will have a flag set
+    private void allCleared() {
+        for (int index = 0; index < cellCount; index++) {
+            if (layout.isBomb(index) && getState(index) != FLAGGED)
+                setState(index, FLAGGED);
+        }
+        flagsRemaining = 0;
+        setStatus(WON);
+    }
+
+    // starts logging a move, if moves are kept; any moves undone are forgotten
+    private void beginMove() {
+        if (undoDepth == 0)
+            return;
+        if (log == null)
+            log = new long[64];
+        while (moves.size() > movesDone)
+            moves.remove(moves.size() - 1);
+        currentMove = new Move();
+        currentMove.logStart = movesDone == 0 ? 0 : moves.get(movesDone - 1).logEnd;
+        currentMove.logEnd = currentMove.logStart;
+        currentMove.tilesBefore = tilesToClear;
+        currentMove.flagsBefore = flagsRemaining;
+    }
+
+    // finishes a move, and logging it if moves are kept
+    private void endMove() {
+        moveCount++;
+        Move move = currentMove;
+        if (move == null)
+            return;
+        currentMove = null;
+        move.tilesAfter = tilesToClear;
+        move.flagsAfter = flagsRemaining;
+        move.statusAfter = status;
+        move.explodedAfter = explodedIndex;
+        moves.add(move);
+        movesDone++;
+        forgetOldMoves();
+    }
+
+    // forgets the oldest moves beyond the undo depth; their part of the log
+    // is reclaimed once it is larger than the part still in use, so each
+    // entry is moved at most once on average
+    private void forgetOldMoves() {
+        if (moves.size() <= undoDepth)
+            return;
+        int forgotten = moves.size() - undoDepth;
+        moves.subList(0, forgotten).clear();
+        movesDone -= forgotten;
+        int start = moves.get(0).logStart;
+        int end = moves.get(moves.size() - 1).logEnd;
+        if (start > end - start) {
+            System.arraycopy(log, start, log, 0, end - start);
+            for (Move move : moves) {
+                move.logStart -= start;
+                move.logEnd -= start;
+            }
+        }
+    }
+
+    // a log entry: the cell's index, and its states before and after the change
+    private static long logEntry(int index, byte oldState, byte newState) {
+        return (long) index << 4 | oldState << 2 | newState;
+    }
+
+    private static int logIndex(long entry) { return (int) (entry >>> 4); }
+    private static byte logOldState(long entry) { return (byte) ((entry >>> 2) & 3); }
+    private static byte logNewState(long entry) { return (byte) (entry & 3); }
+
+    // changes the state of a cell, logs it if a move is being made, and
+    // notifies the listeners
+    private void setState(int index, byte newState) {
+        byte oldState = getState(index);
+        writeState(index, newState);
+        if (currentMove != null) {
+            if (currentMove.logEnd == log.length)
+                log = Arrays.copyOf(log, log.length * 2);
+            log[currentMove.logEnd++] = logEntry(index, oldState, newState);
+        }
+        for (MinesweeperBoardListener listener : listeners)
+            listener.cellChanged(index, oldState);
+    }
+
+    // stores the state of a cell, first copying its chunk if it is shared
+    private void writeState(int index, byte newState) {
+        int chunk = index >>> CHUNK_SHIFT;
+        if (!owned[chunk]) {
+            chunks[chunk] = chunks[chunk].clone();
+            owned[chunk] = true;
+        }
+        chunks[chunk][index & CHUNK_MASK] = newState;
+    }
+
+    // changes the status of the game and notifies the listeners
+    private void setStatus(int newStatus) {
+        status = newStatus;
+        for (MinesweeperBoardListener listener : listeners)
+            listener.gameStatusChanged(newStatus);
+    }
+}
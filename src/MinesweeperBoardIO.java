@@ -0,0 +1,400 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * Loads and saves boards, with where their bombs are, in three formats:
+ *
+ * TEXT, the usual format of puzzle collections: one line per row, one
+ * character per cell, lines starting with '#' ignored. A plain mine map
+ * uses only '.' and '*'; the other characters save a game in progress:
+ *
+ *     .  hidden cell            *  hidden bomb
+ *     f  flag on a cell         F  flag on a bomb
+ *     0-8 revealed cell         X  the bomb that ended the game
+ *
+ * The number on a revealed cell is only for people reading the file; it is
+ * worked out again from the bombs when the file is loaded. A first line of
+ * "# minesweeper rows columns shape" gives the shape, and lets huge boards
+ * be read without growing any buffers; without it the board is square.
+ *
+ * MBF, the binary format of Minesweeper Arbiter and other clones: bytes
+ * columns and rows, a big-endian short bomb count, then a byte column and
+ * row for every bomb. Square boards up to 255x255 only, and bombs only.
+ *
+ * BINARY, our own: "MSBD" and then MinesweeperBoard.writeTo, cell states
+ * included.
+ *
+ * Files are read through memory-mapped windows of MAP_WINDOW bytes, so a
+ * multi-gigabyte text board is parsed byte by byte without ever building a
+ * String; the parsed cells go straight into the layout's own array.
+ */
+public final class MinesweeperBoardIO {
+    // formats, chosen by the file's extension: .mbf, .msb, anything else is text
+    public static final int TEXT = 0;
+    public static final int MBF = 1;
+    public static final int BINARY = 2;
+
+    // identifies the binary format
+    private static final int BINARY_MAGIC = 0x4d534244; // "MSBD"
+
+    // how much of a file is mapped at a time
+    private static final int MAP_WINDOW = 1 << 28;
+
+    // starts the header line written to text files
+    private static final String TEXT_HEADER = "# minesweeper ";
+
+    // cells allocated for a text board without a header before any are read
+    private static final int INITIAL_CELLS = 1 << 16;
+
+    private MinesweeperBoardIO() {}
+
+    // returns the format a file is saved in, by its extension
+    public static int formatOf(File file) {
+        String name = file.getName().toLowerCase();
+        if (name.endsWith(".mbf"))
+            return MBF;
+        if (name.endsWith(".msb"))
+            return BINARY;
+        return TEXT;
+    }
+
+    // loads a board; binary files are recognized by their contents, others by extension
+    public static MinesweeperBoard read(File file) throws IOException {
+        if (hasBinaryMagic(file)) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                in.readInt();
+                return MinesweeperBoard.readFrom(in);
+            }
+        }
+        if (formatOf(file) == MBF) {
+            try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+                return new MinesweeperBoard(readMbf(in));
+            }
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return readText(new ByteSource(channel));
+        }
+    }
+
+    // saves a board in the format its file's extension names; throws an
+    // IllegalArgumentException, before touching the file, if the format can't hold it
+    public static void write(MinesweeperBoard board, File file) throws IOException {
+        if (formatOf(file) == MBF)
+            checkMbf(board.getLayout());
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+            switch (formatOf(file)) {
+                case MBF:
+                    writeMbf(board.getLayout(), out);
+                    break;
+                case BINARY:
+                    DataOutputStream data = new DataOutputStream(out);
+                    data.writeInt(BINARY_MAGIC);
+                    board.writeTo(data);
+                    data.flush();
+                    break;
+                default:
+                    writeText(board, out);
+                    break;
+            }
+        }
+    }
+
+    // reads a board in the text format
+    public static MinesweeperBoard readText(InputStream in) throws IOException {
+        return readText(new ByteSource(in));
+    }
+
+    // writes a board in the text format, header included
+    public static void writeText(MinesweeperBoard board, OutputStream out) throws IOException {
+        MinesweeperLayout layout = board.getLayout();
+        int rows = board.getRows();
+        int columns = board.getColumns();
+        String header = TEXT_HEADER + rows + " " + columns + " "
+                + MinesweeperTopology.kindName(layout.getTopology().getKind()) + "\n";
+        out.write(header.getBytes("US-ASCII"));
+
+        byte[] line = new byte[columns + 1];
+        line[columns] = '\n';
+        for (int row = 0, index = 0; row < rows; row++) {
+            for (int col = 0; col < columns; col++, index++) {
+                boolean bomb = layout.isBomb(index);
+                switch (board.getState(index)) {
+                    case MinesweeperBoard.REVEALED:
+                        line[col] = (byte) ('0' + layout.getNumAdjacentBombs(index));
+                        break;
+                    case MinesweeperBoard.FLAGGED:
+                        line[col] = (byte) (bomb ? 'F' : 'f');
+                        break;
+                    default:
+                        line[col] = (byte) (index == board.getExplodedIndex() ? 'X' : bomb ? '*' : '.');
+                        break;
+                }
+            }
+            out.write(line);
+        }
+    }
+
+    // reads a layout in the MBF format
+    public static MinesweeperLayout readMbf(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        int columns = data.readUnsignedByte();
+        int rows = data.readUnsignedByte();
+        int bombs = data.readUnsignedShort();
+        try {
+            MinesweeperLayout.checkDimensions(rows, columns, bombs);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid MBF board: " + e.getMessage());
+        }
+        byte[] cells = new byte[rows * columns];
+        for (int i = 0; i < bombs; i++) {
+            int col = data.readUnsignedByte();
+            int row = data.readUnsignedByte();
+            if (row >= rows || col >= columns)
+                throw new IOException("MBF bomb outside the board: " + col + "," + row);
+            if (cells[row * columns + col] < 0)
+                throw new IOException("MBF bomb placed twice: " + col + "," + row);
+            cells[row * columns + col] = -1;
+        }
+        return new MinesweeperLayout(new MinesweeperTopology(MinesweeperTopology.SQUARE, rows, columns), cells);
+    }
+
+    // writes a layout in the MBF format; throws an IllegalArgumentException
+    // for layouts the format can't hold
+    public static void writeMbf(MinesweeperLayout layout, OutputStream out) throws IOException {
+        checkMbf(layout);
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeByte(layout.getColumns());
+        data.writeByte(layout.getRows());
+        data.writeShort(layout.getBombs());
+        for (int index = 0; index < layout.getCellCount(); index++) {
+            if (layout.isBomb(index)) {
+                data.writeByte(index % layout.getColumns());
+                data.writeByte(index / layout.getColumns());
+            }
+        }
+        data.flush();
+    }
+
+    // throws an IllegalArgumentException if the MBF format can't hold a layout
+    private static void checkMbf(MinesweeperLayout layout) {
+        if (layout.getTopology().getKind() != MinesweeperTopology.SQUARE)
+            throw new IllegalArgumentException("MBF holds only square boards");
+        if (layout.getRows() > 255 || layout.getColumns() > 255 || layout.getBombs() > 0xffff)
+            throw new IllegalArgumentException("MBF holds at most 255x255 cells and 65535 bombs");
+    }
+
+    // parses the text format; the cells are marked in an array the layout
+    // then takes over, and states are only kept once a cell isn't hidden
+    private static MinesweeperBoard readText(ByteSource in) throws IOException {
+        int kind = MinesweeperTopology.SQUARE;
+        int rows = -1;
+        int columns = -1;
+        byte[] cells = null;
+        byte[] states = null;
+        int explodedIndex = -1;
+
+        int count = 0;
+        int rowsRead = 0;
+        int lineNumber = 1;
+        int c = in.read();
+        while (c >= 0) {
+            if (c == '#') {
+                // a comment, or the header if it is the first line
+                String comment = in.readLine(lineNumber == 1 ? 200 : 0);
+                if (lineNumber == 1 && comment.startsWith(TEXT_HEADER.substring(1))) {
+                    String[] fields = comment.substring(TEXT_HEADER.length() - 1).trim().split("\\s+");
+                    try {
+                        rows = Integer.parseInt(fields[0]);
+                        columns = Integer.parseInt(fields[1]);
+                        if (fields.length > 2)
+                            kind = MinesweeperTopology.parseKind(fields[2]);
+                        MinesweeperLayout.checkDimensions(rows, columns, 0);
+                    } catch (RuntimeException e) {
+                        throw new IOException("Invalid header on line 1: #" + comment);
+                    }
+                    cells = new byte[rows * columns];
+                }
+                c = in.read();
+                if (c == '\r')
+                    c = in.read();
+                if (c == '\n')
+                    c = in.read();
+                lineNumber++;
+                continue;
+            }
+
+            if (cells == null)
+                cells = new byte[INITIAL_CELLS];
+            int lineStart = count;
+            while (c >= 0 && c != '\n' && c != '\r') {
+                if (count == cells.length) {
+                    if (rows >= 0)
+                        throw new IOException("More than " + rows + " rows, at line " + lineNumber);
+                    if (cells.length == Integer.MAX_VALUE)
+                        throw new IOException("Board is too large, at line " + lineNumber);
+                    int newLength = (int) Math.min(2L * cells.length, Integer.MAX_VALUE);
+                    cells = Arrays.copyOf(cells, newLength);
+                    if (states != null)
+                        states = Arrays.copyOf(states, newLength);
+                }
+
+                byte cellState = MinesweeperBoard.HIDDEN;
+                switch (c) {
+                    case '.':
+                        break;
+                    case '*':
+                        cells[count] = -1;
+                        break;
+                    case 'f':
+                        cellState = MinesweeperBoard.FLAGGED;
+                        break;
+                    case 'F':
+                        cells[count] = -1;
+                        cellState = MinesweeperBoard.FLAGGED;
+                        break;
+                    case 'X':
+                        if (explodedIndex >= 0)
+                            throw new IOException("More than one exploded bomb, at line " + lineNumber);
+                        cells[count] = -1;
+                        explodedIndex = count;
+                        break;
+                    default:
+                        if (c < '0' || c > '8')
+                            throw new IOException("Unexpected '" + (char) c + "' at line " + lineNumber);
+                        cellState = MinesweeperBoard.REVEALED;
+                        break;
+                }
+                if (cellState != MinesweeperBoard.HIDDEN) {
+                    if (states == null)
+                        states = new byte[cells.length];
+                    states[count] = cellState;
+                }
+                count++;
+                c = in.read();
+            }
+
+            // the end of a line; blank lines are skipped
+            int length = count - lineStart;
+            if (length > 0) {
+                if (columns < 0)
+                    columns = length;
+                else if (length != columns)
+                    throw new IOException("Expected " + columns + " cells on line " + lineNumber + ", found " + length);
+                rowsRead++;
+            }
+            if (c == '\r')
+                c = in.read();
+            if (c == '\n') {
+                lineNumber++;
+                c = in.read();
+            }
+        }
+
+        if (rowsRead == 0)
+            throw new IOException("No cells found");
+        if (rows < 0)
+            rows = rowsRead;
+        else if (rowsRead != rows)
+            throw new IOException("Expected " + rows + " rows, found " + rowsRead);
+        if (cells.length != count) {
+            cells = Arrays.copyOf(cells, count);
+            if (states != null)
+                states = Arrays.copyOf(states, count);
+        }
+
+        try {
+            MinesweeperLayout layout = new MinesweeperLayout(new MinesweeperTopology(kind, rows, columns), cells);
+            return MinesweeperBoard.restore(layout, states, explodedIndex);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid board: " + e.getMessage());
+        }
+    }
+
+    // returns true if a file starts with the binary format's magic number
+    private static boolean hasBinaryMagic(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return file.length() >= 4 && in.readInt() == BINARY_MAGIC;
+        }
+    }
+
+    /*
+     * Hands out the bytes of a file, mapped a window at a time, or of a
+     * stream. Bytes are copied out in blocks, since a plain array is much
+     * quicker to read a byte at a time than a mapped buffer.
+     */
+    private static final class ByteSource {
+        private final FileChannel channel;
+        private final InputStream in;
+        private final byte[] block = new byte[1 << 16];
+        private int position, limit;
+
+        // the window of the file mapped, and how much of the file has been mapped
+        private ByteBuffer window = ByteBuffer.allocate(0);
+        private long mapped;
+
+        ByteSource(FileChannel channel) {
+            this.channel = channel;
+            in = null;
+        }
+
+        ByteSource(InputStream in) {
+            channel = null;
+            this.in = in;
+        }
+
+        // returns the next byte, or -1 at the end
+        int read() throws IOException {
+            if (position == limit && !fill())
+                return -1;
+            return block[position++] & 0xff;
+        }
+
+        // returns the rest of the line, keeping at most keep characters of it;
+        // the line break is left unread
+        String readLine(int keep) throws IOException {
+            StringBuilder line = new StringBuilder();
+            while (position < limit || fill()) {
+                int c = block[position] & 0xff;
+                if (c == '\n' || c == '\r')
+                    break;
+                position++;
+                if (line.length() < keep)
+                    line.append((char) c);
+            }
+            return line.toString();
+        }
+
+        // copies out the next block; returns false at the end
+        private boolean fill() throws IOException {
+            position = 0;
+            limit = 0;
+            if (channel == null) {
+                limit = Math.max(in.read(block), 0);
+                return limit > 0;
+            }
+            if (!window.hasRemaining()) {
+                long size = channel.size();
+                if (mapped >= size)
+                    return false;
+                long length = Math.min(MAP_WINDOW, size - mapped);
+                window = channel.map(FileChannel.MapMode.READ_ONLY, mapped, length);
+                mapped += length;
+            }
+            limit = Math.min(block.length, window.remaining());
+            window.get(block, 0, limit);
+            return true;
+        }
+    }
+}
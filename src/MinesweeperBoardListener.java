@@ -0,0 +1,12 @@
+/*
+ * Interface for anything that needs to know when a MinesweeperBoard changes,
+ * e.g. the MinesweeperGrid that displays it.
+ */
+public interface MinesweeperBoardListener {
+    // called after the state of the cell at index changes from oldState
+    void cellChanged(int index, byte oldState);
+
+    // called after the board's status changes to MinesweeperBoard.WON or
+    // LOST, or back to PLAYING when the move that ended the game is undone
+    void gameStatusChanged(int status);
+}
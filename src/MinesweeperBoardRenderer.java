@@ -0,0 +1,508 @@
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/*
+ * Draws a MinesweeperBoard cell by cell into offscreen images, and copies
+ * them to the screen.
+ *
+ * The board is drawn at a whole number of pixels per cell and cut into
+ * tiles of TILE_PIXELS square, each with an image of its own that is drawn
+ * in full the first time it is shown. After that the renderer listens to the
+ * board and only redraws the cells that changed, so a frame costs the cells
+ * changed by the move plus a copy of the visible tiles, however large the
+ * board. Only the tiles most recently shown are kept, up to a memory budget,
+ * so a 1000x1000 board needs no more memory than a small one.
+ *
+ * Cells are flat squares of color, which still read at a few pixels per
+ * cell. With setIcons(true), as in the main window's MinesweeperGrid, large
+ * cells are drawn as the game's classic tiles instead: raised buttons, and
+ * the flag, bomb and concave images.
+ *
+ * Benchmark at bottom of class.
+ */
+public class MinesweeperBoardRenderer implements MinesweeperBoardListener {
+    // width and height of a tile, in pixels
+    public static final int TILE_PIXELS = 256;
+
+    // memory kept for tile images by default
+    public static final long DEFAULT_BUDGET_BYTES = 64L << 20;
+
+    // cell sizes at which borders and numbers are drawn
+    static final int BORDER_CELL_SIZE = 6;
+    static final int NUMBER_CELL_SIZE = 12;
+
+    // smallest cell drawn with icons, and the space left around an icon
+    static final int ICON_CELL_SIZE = 16;
+    private static final int ICON_MARGIN = 3;
+
+    // colors of cells
+    static final Color HIDDEN_COLOR = new Color(0x8c8c8c);
+    static final Color REVEALED_COLOR = Color.LIGHT_GRAY;
+    static final Color FLAG_COLOR = new Color(0xd03020);
+    static final Color BOMB_COLOR = Color.BLACK;
+    static final Color BORDER_COLOR = new Color(0x606060);
+    static final Color BUTTON_COLOR = new Color(0xdde1e8);
+
+    // text for the numbers, and their colors as in the original Minesweeper
+    private static final String[] NUMBER_TEXT = { "", "1", "2", "3", "4", "5", "6", "7", "8" };
+    private static final Color[] NUMBER_COLORS = { null, Color.BLUE, Color.GREEN, Color.RED, Color.CYAN,
+            Color.ORANGE, Color.PINK, Color.MAGENTA, Color.YELLOW };
+
+    // translucent colors from green for safe to red for a bomb, by percent,
+    // for drawing the chance of a bomb over a cell
+    private static final Color[] PROBABILITY_COLORS = new Color[101];
+    static {
+        for (int i = 0; i <= 100; i++) {
+            int red = Math.min(255, i * 510 / 100);
+            int green = Math.min(255, (100 - i) * 510 / 100);
+            PROBABILITY_COLORS[i] = new Color(red, green, 0, 110);
+        }
+    }
+
+    // the board drawn, and whether its odd rows are shifted half a cell right
+    private final MinesweeperBoard board;
+    private final boolean hex;
+
+    // pixels per cell; 0 until set
+    private int cellSize;
+
+    // whether large cells are drawn with the game's icons
+    private boolean icons;
+
+    // font for the numbers at the current cell size
+    private Font numberFont;
+
+    // tile images drawn so far, least recently shown first, keyed by tile row and column
+    private final LinkedHashMap<Long, Tile> tiles;
+
+    // most tiles kept
+    private final int maxTiles;
+
+    // cells changed since the last frame, and the pixels they cover; once
+    // more cells change than the kept tiles hold they stop being listed, and
+    // the tiles are all drawn again instead
+    private int[] dirty = new int[64];
+    private int dirtyCount;
+    private boolean dirtyOverflow;
+    private int dirtyLeft, dirtyTop, dirtyRight, dirtyBottom;
+
+    // the game was lost when the tiles were drawn, so bombs are showing
+    private boolean bombsShown;
+
+    // tiles drawn in full and cells redrawn, for the benchmark
+    private long tilesDrawn, cellsDrawn;
+
+    // constructor for MinesweeperBoardRenderer with the default memory budget
+    public MinesweeperBoardRenderer(MinesweeperBoard board) {
+        this(board, DEFAULT_BUDGET_BYTES);
+    }
+
+    // constructor for MinesweeperBoardRenderer keeping at most about budgetBytes of tiles
+    public MinesweeperBoardRenderer(MinesweeperBoard board, long budgetBytes) {
+        this.board = board;
+        hex = board.getLayout().getTopology().getKind() == MinesweeperTopology.HEX;
+        maxTiles = (int) Math.max(budgetBytes / (4L * TILE_PIXELS * TILE_PIXELS), 4);
+        tiles = new LinkedHashMap<Long, Tile>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Long, Tile> eldest) {
+                if (size() <= maxTiles)
+                    return false;
+                eldest.getValue().dispose();
+                return true;
+            }
+        };
+        bombsShown = board.getStatus() == MinesweeperBoard.LOST;
+        board.addListener(this);
+    }
+
+    // public accessors for the size of the board in pixels at the current cell size
+    public int getWidth() { return board.getColumns() * cellSize + (hex ? cellSize / 2 : 0); }
+    public int getHeight() { return board.getRows() * cellSize; }
+    public int getCellSize() { return cellSize; }
+
+    // public accessors for what has been drawn, for measuring
+    public long getTilesDrawn() { return tilesDrawn; }
+    public long getCellsDrawn() { return cellsDrawn; }
+    public int getTileCount() { return tiles.size(); }
+
+    // changes the number of pixels per cell; every tile is drawn again
+    public void setCellSize(int size) {
+        if (size == cellSize)
+            return;
+        cellSize = size;
+        numberFont = new Font(Font.DIALOG, Font.BOLD, Math.max(1, size * 3 / 5));
+        invalidate();
+    }
+
+    // draws cells of at least ICON_CELL_SIZE with the game's icons, or not;
+    // every tile is drawn again
+    public void setIcons(boolean icons) {
+        if (icons == this.icons)
+            return;
+        this.icons = icons;
+        invalidate();
+    }
+
+    // returns the overlay color for a chance of being a bomb
+    static Color probabilityColor(float probability) {
+        return PROBABILITY_COLORS[Math.round(probability * 100)];
+    }
+
+    // throws away every tile, so each is drawn in full when next shown
+    public void invalidate() {
+        for (Tile tile : tiles.values())
+            tile.dispose();
+        tiles.clear();
+        clearDirty();
+    }
+
+    // returns the pixels changed since the last frame, in board coordinates;
+    // empty if nothing changed, e.g. for repainting only that part of a component
+    public Rectangle getDirtyBounds() {
+        return new Rectangle(dirtyLeft, dirtyTop, dirtyRight - dirtyLeft, dirtyBottom - dirtyTop);
+    }
+
+    // draws the part of the board inside g's clip, with the board's top left
+    // corner at (x, y); cells changed since the last frame are brought up to
+    // date first
+    public void paint(Graphics g, int x, int y) {
+        updateTiles();
+
+        Rectangle clip = g.getClipBounds();
+        int left = clip == null ? 0 : Math.max(clip.x - x, 0);
+        int top = clip == null ? 0 : Math.max(clip.y - y, 0);
+        int right = clip == null ? getWidth() : Math.min(clip.x + clip.width - x, getWidth());
+        int bottom = clip == null ? getHeight() : Math.min(clip.y + clip.height - y, getHeight());
+        if (right <= left || bottom <= top)
+            return;
+
+        for (int tileRow = top / TILE_PIXELS; tileRow <= (bottom - 1) / TILE_PIXELS; tileRow++) {
+            for (int tileCol = left / TILE_PIXELS; tileCol <= (right - 1) / TILE_PIXELS; tileCol++) {
+                Tile tile = getTile(tileRow, tileCol);
+                g.drawImage(tile.image, x + tileCol * TILE_PIXELS, y + tileRow * TILE_PIXELS, null);
+            }
+        }
+    }
+
+    public void cellChanged(int index, byte oldState) {
+        if (cellSize == 0)
+            return;
+        int row = index / board.getColumns();
+        int x = cellX(row, index - row * board.getColumns());
+        int y = row * cellSize;
+        if (dirtyRight == 0) {
+            dirtyLeft = x;
+            dirtyTop = y;
+            dirtyRight = x + cellSize;
+            dirtyBottom = y + cellSize;
+        } else {
+            dirtyLeft = Math.min(dirtyLeft, x);
+            dirtyTop = Math.min(dirtyTop, y);
+            dirtyRight = Math.max(dirtyRight, x + cellSize);
+            dirtyBottom = Math.max(dirtyBottom, y + cellSize);
+        }
+
+        if (dirtyOverflow)
+            return;
+        if (dirtyCount == dirty.length) {
+            if ((long) dirtyCount * cellSize * cellSize > (long) maxTiles * TILE_PIXELS * TILE_PIXELS) {
+                dirtyOverflow = true;
+                return;
+            }
+            dirty = Arrays.copyOf(dirty, dirtyCount * 2);
+        }
+        dirty[dirtyCount++] = index;
+    }
+
+    // the bombs show while the game is lost, which changes cells all over the board
+    public void gameStatusChanged(int status) {
+        boolean lost = status == MinesweeperBoard.LOST;
+        if (lost != bombsShown) {
+            bombsShown = lost;
+            invalidate();
+            dirtyLeft = dirtyTop = 0;
+            dirtyRight = getWidth();
+            dirtyBottom = getHeight();
+        }
+    }
+
+    // redraws the changed cells on the tiles that are kept; the others are
+    // drawn in full when next shown. A move changing more cells than the
+    // kept tiles hold, e.g. a flood fill across a huge board, just drops them
+    private void updateTiles() {
+        if (dirtyOverflow) {
+            invalidate();
+            return;
+        }
+        int columns = board.getColumns();
+        for (int i = 0; i < dirtyCount; i++) {
+            int index = dirty[i];
+            int row = index / columns;
+            int col = index - row * columns;
+            int x = cellX(row, col);
+            int y = row * cellSize;
+
+            // a cell can straddle up to four tiles
+            for (int tileRow = y / TILE_PIXELS; tileRow <= (y + cellSize - 1) / TILE_PIXELS; tileRow++) {
+                for (int tileCol = x / TILE_PIXELS; tileCol <= (x + cellSize - 1) / TILE_PIXELS; tileCol++) {
+                    Tile tile = tiles.get(key(tileRow, tileCol));
+                    if (tile != null)
+                        drawCell(tile.graphics, index, x - tileCol * TILE_PIXELS, y - tileRow * TILE_PIXELS);
+                }
+            }
+        }
+        clearDirty();
+    }
+
+    // forgets the cells changed
+    private void clearDirty() {
+        dirtyCount = 0;
+        dirtyOverflow = false;
+        dirtyLeft = dirtyTop = dirtyRight = dirtyBottom = 0;
+    }
+
+    // returns a tile, drawing it in full if it isn't kept
+    private Tile getTile(int tileRow, int tileCol) {
+        Long key = key(tileRow, tileCol);
+        Tile tile = tiles.get(key);
+        if (tile != null)
+            return tile;
+
+        tile = new Tile();
+        Graphics2D g = tile.graphics;
+        int left = tileCol * TILE_PIXELS;
+        int top = tileRow * TILE_PIXELS;
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, TILE_PIXELS, TILE_PIXELS);
+
+        // every cell overlapping the tile, including the half cells at the
+        // ends of odd rows of a hex board
+        int firstRow = top / cellSize;
+        int lastRow = Math.min((top + TILE_PIXELS - 1) / cellSize, board.getRows() - 1);
+        for (int row = firstRow; row <= lastRow; row++) {
+            int shift = hex && (row & 1) == 1 ? cellSize / 2 : 0;
+            int firstCol = Math.max((left - shift) / cellSize - 1, 0);
+            int lastCol = Math.min((left + TILE_PIXELS - 1 - shift) / cellSize, board.getColumns() - 1);
+            for (int col = firstCol; col <= lastCol; col++)
+                drawCell(g, row * board.getColumns() + col, col * cellSize + shift - left, row * cellSize - top);
+        }
+        tilesDrawn++;
+        tiles.put(key, tile);
+        return tile;
+    }
+
+    // draws every cell inside g's clip straight onto g, with the board's top
+    // left corner at (x, y), the way frames were drawn before there were
+    // tiles; the benchmark compares the tiles against it
+    void paintCells(Graphics2D g, int x, int y) {
+        Rectangle clip = g.getClipBounds();
+        int firstRow = Math.max((clip.y - y) / cellSize, 0);
+        int lastRow = Math.min((clip.y + clip.height - y - 1) / cellSize, board.getRows() - 1);
+        for (int row = firstRow; row <= lastRow; row++) {
+            int shift = hex && (row & 1) == 1 ? cellSize / 2 : 0;
+            int firstCol = Math.max((clip.x - x - shift) / cellSize - 1, 0);
+            int lastCol = Math.min((clip.x + clip.width - x - shift - 1) / cellSize, board.getColumns() - 1);
+            for (int col = firstCol; col <= lastCol; col++)
+                drawCell(g, row * board.getColumns() + col, x + col * cellSize + shift, y + row * cellSize);
+        }
+    }
+
+    // draws one cell with its top left corner at (x, y)
+    private void drawCell(Graphics2D g, int index, int x, int y) {
+        MinesweeperLayout layout = board.getLayout();
+        byte state = board.getState(index);
+        if (icons && cellSize >= ICON_CELL_SIZE) {
+            drawClassicCell(g, index, state, x, y);
+            return;
+        }
+
+        // pick the color of the cell; bombs show once the game is lost
+        Color color;
+        if (state == MinesweeperBoard.REVEALED)
+            color = REVEALED_COLOR;
+        else if (state == MinesweeperBoard.FLAGGED)
+            color = FLAG_COLOR;
+        else if (bombsShown && layout.isBomb(index))
+            color = index == board.getExplodedIndex() ? Color.RED : BOMB_COLOR;
+        else
+            color = HIDDEN_COLOR;
+        g.setColor(color);
+        g.fillRect(x, y, cellSize, cellSize);
+
+        if (cellSize >= BORDER_CELL_SIZE) {
+            g.setColor(BORDER_COLOR);
+            g.drawRect(x, y, cellSize - 1, cellSize - 1);
+        }
+
+        int number = layout.getNumAdjacentBombs(index);
+        if (cellSize >= NUMBER_CELL_SIZE && state == MinesweeperBoard.REVEALED && number > 0) {
+            g.setFont(numberFont);
+            FontMetrics metrics = g.getFontMetrics();
+            g.setColor(NUMBER_COLORS[number]);
+            g.drawString(NUMBER_TEXT[number], x + (cellSize - metrics.stringWidth(NUMBER_TEXT[number])) / 2,
+                    y + (cellSize + metrics.getAscent() - metrics.getDescent()) / 2);
+        }
+        cellsDrawn++;
+    }
+
+    // draws one cell as a tile of the main window: a raised button while it
+    // is hidden, with a flag or, once the game is lost, a bomb on it, or the
+    // concave image or the number once it is revealed
+    private void drawClassicCell(Graphics2D g, int index, byte state, int x, int y) {
+        MinesweeperLayout layout = board.getLayout();
+        int number = layout.getNumAdjacentBombs(index);
+        if (state == MinesweeperBoard.REVEALED && number == 0) {
+            g.drawImage(MinesweeperIcons.getImage(MinesweeperIcons.CONCAVE), x, y, cellSize, cellSize, null);
+        } else if (state == MinesweeperBoard.REVEALED) {
+            g.setColor(REVEALED_COLOR);
+            g.fillRect(x, y, cellSize, cellSize);
+            g.setFont(numberFont);
+            FontMetrics metrics = g.getFontMetrics();
+            g.setColor(NUMBER_COLORS[number]);
+            g.drawString(NUMBER_TEXT[number], x + (cellSize - metrics.stringWidth(NUMBER_TEXT[number])) / 2,
+                    y + (cellSize + metrics.getAscent() - metrics.getDescent()) / 2);
+        } else if (bombsShown && layout.isBomb(index) && state != MinesweeperBoard.FLAGGED) {
+            // a bomb the player didn't flag, shown flat once the game is lost
+            g.setColor(REVEALED_COLOR);
+            g.fillRect(x, y, cellSize, cellSize);
+            drawIcon(g, index == board.getExplodedIndex() ? MinesweeperIcons.BOOM : MinesweeperIcons.BOMB, x, y);
+        } else {
+            // a raised button, its edges two pixels wide
+            g.setColor(BUTTON_COLOR);
+            g.fill3DRect(x, y, cellSize, cellSize, true);
+            g.draw3DRect(x + 1, y + 1, cellSize - 3, cellSize - 3, true);
+            if (state == MinesweeperBoard.FLAGGED) {
+                // a flag on a cell that isn't a bomb is shown as wrong once the game is lost
+                boolean wrong = bombsShown && !layout.isBomb(index);
+                drawIcon(g, wrong ? MinesweeperIcons.FALSE_FLAG : MinesweeperIcons.FLAG, x, y);
+            }
+        }
+        cellsDrawn++;
+    }
+
+    // draws an icon centered on the cell at (x, y), shrunk to fit if needed
+    private void drawIcon(Graphics2D g, String name, int x, int y) {
+        Image image = MinesweeperIcons.getImage(name);
+        int size = Math.min(Math.max(image.getWidth(null), 1), cellSize - 2 * ICON_MARGIN);
+        g.drawImage(image, x + (cellSize - size) / 2, y + (cellSize - size) / 2, size, size, null);
+    }
+
+    // returns the x coordinate of a cell's left edge in pixels
+    private int cellX(int row, int col) {
+        return col * cellSize + (hex && (row & 1) == 1 ? cellSize / 2 : 0);
+    }
+
+    // returns the key of a tile in the tile map
+    private static Long key(int tileRow, int tileCol) {
+        return ((long) tileRow << 32) | tileCol;
+    }
+
+    /*
+     * The image of one tile, and the graphics drawing on it.
+     */
+    private static final class Tile {
+        final BufferedImage image = new BufferedImage(TILE_PIXELS, TILE_PIXELS, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D graphics = image.createGraphics();
+
+        void dispose() {
+            graphics.dispose();
+        }
+    }
+
+    /* *************************************************************************
+     *                         BENCHMARK
+     * *************************************************************************
+     */
+    // plays random moves on an Expert board as the main window shows it and
+    // on a 1000x1000 board in a large board window, and reports the time to
+    // bring the window up to date after each move: copying the tiles after
+    // redrawing only the changed cells, and drawing every visible cell
+    // straight onto the window as a frame did before there were tiles.
+    // Runs headless.
+    // usage: MinesweeperBoardRenderer [moves] [windowWidth] [windowHeight]
+    public static void main(String[] args) {
+        int moves = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int windowWidth = args.length > 1 ? Integer.parseInt(args[1]) : 1280;
+        int windowHeight = args.length > 2 ? Integer.parseInt(args[2]) : 800;
+
+        // the main window shows the whole board at about 50 px a cell
+        benchmark("Expert 16x30, 48 px, icons", 16, 30, 99, 48, true, moves,
+                new BufferedImage(30 * 48, 16 * 48, BufferedImage.TYPE_INT_RGB));
+        benchmark("1000x1000, 16 px", 1000, 1000, 160000, 16, false, moves,
+                new BufferedImage(windowWidth, windowHeight, BufferedImage.TYPE_INT_RGB));
+    }
+
+    // plays moves on one board, painting the window's view of it after each
+    private static void benchmark(String name, int rows, int columns, int bombs, int cellSize, boolean icons,
+                                  int moves, BufferedImage window) {
+        Random random = new Random(1);
+        long[] dirtyNanos = new long[moves];
+        long[] fullNanos = new long[moves];
+        long cellsChanged = 0;
+        int played = 0;
+        MinesweeperBoard board = null;
+        MinesweeperBoardRenderer renderer = null;
+        Graphics2D g = window.createGraphics();
+        int viewX = 0, viewY = 0;
+        while (played < moves) {
+            if (board == null || board.getStatus() != MinesweeperBoard.PLAYING) {
+                board = new MinesweeperBoard(new MinesweeperLayout(rows, columns, bombs, random.nextLong()));
+                renderer = new MinesweeperBoardRenderer(board);
+                renderer.setCellSize(cellSize);
+                renderer.setIcons(icons);
+                viewX = Math.max(0, random.nextInt(Math.max(renderer.getWidth() - window.getWidth(), 1)));
+                viewY = Math.max(0, random.nextInt(Math.max(renderer.getHeight() - window.getHeight(), 1)));
+                g.setClip(0, 0, window.getWidth(), window.getHeight());
+                renderer.paint(g, -viewX, -viewY);
+            }
+
+            // a move on a cell in the window, mostly on cells that aren't bombs
+            int row = Math.min((viewY + random.nextInt(window.getHeight())) / cellSize, rows - 1);
+            int col = Math.min((viewX + random.nextInt(window.getWidth())) / cellSize, columns - 1);
+            int index = row * columns + col;
+            if (board.getState(index) == MinesweeperBoard.REVEALED)
+                continue;
+            if (board.getLayout().isBomb(index) && random.nextInt(20) != 0) {
+                board.toggleFlag(index);
+                cellsChanged++;
+            } else {
+                cellsChanged += board.reveal(index);
+            }
+
+            // the frame a component would paint: only the changed part of the window
+            long start = System.nanoTime();
+            Rectangle changed = renderer.getDirtyBounds();
+            changed.translate(-viewX, -viewY);
+            g.setClip(changed.intersection(new Rectangle(0, 0, window.getWidth(), window.getHeight())));
+            renderer.paint(g, -viewX, -viewY);
+            dirtyNanos[played] = System.nanoTime() - start;
+
+            // every visible cell drawn straight onto the window
+            start = System.nanoTime();
+            g.setClip(0, 0, window.getWidth(), window.getHeight());
+            renderer.paintCells(g, -viewX, -viewY);
+            fullNanos[played] = System.nanoTime() - start;
+            played++;
+        }
+        g.dispose();
+
+        System.out.printf("%s, %dx%d window, %d moves, %.1f cells changed per move%n", name, window.getWidth(),
+                window.getHeight(), moves, (double) cellsChanged / moves);
+        report("  changed cells only", dirtyNanos);
+        report("  every visible cell", fullNanos);
+    }
+
+    // prints the mean and percentiles of frame times
+    private static void report(String name, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        long total = 0;
+        for (long n : sorted)
+            total += n;
+        System.out.printf("%-22s mean %8.3f ms   p50 %8.3f ms   p99 %8.3f ms%n", name, total / 1e6 / sorted.length,
+                sorted[sorted.length / 2] / 1e6, sorted[Math.min(sorted.length - 1, sorted.length * 99 / 100)] / 1e6);
+    }
+}
@@ -0,0 +1,402 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * Streams a game to any number of MinesweeperSpectators as it is played.
+ *
+ * The broadcast listens to the board, and publish() is called after every
+ * move. The player's thread only notes which cells changed; everything else
+ * is done on the broadcast's own thread, so spectators never hold up a move.
+ * There each move is encoded once as a delta frame and handed to every
+ * spectator. A spectator joining late gets the latest keyframe and the
+ * deltas since, and a new keyframe is made whenever those deltas outgrow
+ * it, so catching up never costs more than about two keyframes.
+ *
+ * Frames start with
+ *
+ *     byte type (KEYFRAME or DELTA), varint sequence number, byte status,
+ *     varint flags remaining, varint tiles to clear, varint exploded index + 1
+ *
+ * A keyframe follows with varint rows, varint columns, byte topology kind,
+ * and runs of cells, each a varint length and a byte value, covering the
+ * whole board. A delta follows with a varint number of runs, each a varint
+ * gap from the end of the previous run, a varint length, and a byte value.
+ * A cell's value is HIDDEN_VALUE, FLAGGED_VALUE, or REVEALED_VALUE plus the
+ * number on it, so a flood fill costs a few bytes per row it touches. Varints
+ * are unsigned LEB128. See MinesweeperSpectatorBoard for a decoder.
+ *
+ * Once closed, the broadcast ignores further calls, so a move racing the
+ * last spectator leaving does no harm.
+ */
+public class MinesweeperBroadcast implements MinesweeperBoardListener {
+    // kinds of frame
+    public static final int KEYFRAME = 0;
+    public static final int DELTA = 1;
+
+    // values of a cell as spectators see it
+    public static final int HIDDEN_VALUE = 0;
+    public static final int FLAGGED_VALUE = 1;
+    public static final int REVEALED_VALUE = 2;
+
+    // the board followed, and the cells changed since the last publish, in
+    // the order they changed; only used on the player's thread
+    private MinesweeperBoard board;
+    private int[] changedIndexes = new int[64];
+    private byte[] changedStates = new byte[64];
+    private int changedCount;
+    private int publishedStatus, publishedFlags;
+
+    // the rest is only used on the broadcast's thread: the board as
+    // spectators see it, the spectators, the latest keyframe and the deltas since
+    private MinesweeperLayout layout;
+    private byte[] mirror;
+    private final List<MinesweeperSpectator> spectators = new ArrayList<>();
+    private byte[] keyframe;
+    private final List<byte[]> deltas = new ArrayList<>();
+    private long deltaBytes;
+
+    // sequence number of the last frame sent
+    private long sequence;
+
+    // spectators added and not yet removed or dropped, for any thread
+    private final Set<MinesweeperSpectator> members = ConcurrentHashMap.newKeySet();
+
+    // set by close(); nothing is handed to the broadcast's thread after it
+    private boolean closed;
+
+    // encodes and sends the frames
+    private final ExecutorService broadcaster = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "minesweeper-spectator-broadcast");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    // constructor for MinesweeperBroadcast; starts following the board
+    public MinesweeperBroadcast(MinesweeperBoard board) {
+        reset(board);
+    }
+
+    // public accessor for the number of spectators
+    public int getSpectatorCount() { return members.size(); }
+
+    // starts following a new game: every spectator gets a keyframe of it
+    public void reset(MinesweeperBoard newBoard) {
+        if (isClosed())
+            return;
+        leaveBoard();
+        board = newBoard;
+        board.addListener(this);
+        changedCount = 0;
+        publishedStatus = board.getStatus();
+        publishedFlags = board.getFlagsRemaining();
+
+        // the board's cells are copied here, since the broadcast's thread
+        // mustn't read a board that is being played
+        final MinesweeperLayout newLayout = board.getLayout();
+        final byte[] newMirror = new byte[board.getCellCount()];
+        for (int index = 0; index < newMirror.length; index++)
+            newMirror[index] = value(newLayout, index, board.getState(index));
+        final int[] counters = counters();
+        submit(new Runnable() {
+            public void run() {
+                layout = newLayout;
+                mirror = newMirror;
+                deltas.clear();
+                deltaBytes = 0;
+                keyframe = encodeKeyframe(++sequence, counters);
+                send(keyframe);
+            }
+        });
+    }
+
+    // keeps following the same game on another copy of its board, e.g. one
+    // read back after being spilled to disk
+    public void follow(MinesweeperBoard sameGame) {
+        if (sameGame != board && !isClosed()) {
+            leaveBoard();
+            board = sameGame;
+            board.addListener(this);
+        }
+    }
+
+    // sends the cells changed since the last call, and the counters, to
+    // every spectator; call after every move. Costs the caller a copy of the
+    // changed cells and nothing if nothing changed
+    public void publish() {
+        if (changedCount == 0 && board.getStatus() == publishedStatus && board.getFlagsRemaining() == publishedFlags)
+            return;
+        publishedStatus = board.getStatus();
+        publishedFlags = board.getFlagsRemaining();
+
+        final int[] indexes = Arrays.copyOf(changedIndexes, changedCount);
+        final byte[] states = Arrays.copyOf(changedStates, changedCount);
+        final int[] counters = counters();
+        changedCount = 0;
+        submit(new Runnable() {
+            public void run() {
+                byte[] delta = encodeDelta(indexes, states, counters);
+                send(delta);
+
+                // a late joiner should never have to catch up on more than
+                // the keyframe's worth of deltas
+                deltas.add(delta);
+                deltaBytes += delta.length;
+                if (deltaBytes > keyframe.length) {
+                    keyframe = encodeKeyframe(sequence, counters);
+                    deltas.clear();
+                    deltaBytes = 0;
+                }
+            }
+        });
+    }
+
+    // adds a spectator; it gets the latest keyframe and the deltas since
+    // before any new frame
+    public void addSpectator(final MinesweeperSpectator spectator) {
+        members.add(spectator);
+        boolean added = submit(new Runnable() {
+            public void run() {
+                if (!members.contains(spectator))
+                    return;
+                boolean keep = offer(spectator, keyframe);
+                for (int i = 0; keep && i < deltas.size(); i++)
+                    keep = offer(spectator, deltas.get(i));
+                if (keep)
+                    spectators.add(spectator);
+                else
+                    members.remove(spectator);
+            }
+        });
+
+        // a spectator joining an ended broadcast is told so at once
+        if (!added) {
+            members.remove(spectator);
+            spectator.closed();
+        }
+    }
+
+    // removes a spectator added with addSpectator; returns true if no spectators are left
+    public boolean removeSpectator(final MinesweeperSpectator spectator) {
+        members.remove(spectator);
+        submit(new Runnable() {
+            public void run() {
+                spectators.remove(spectator);
+            }
+        });
+        return members.isEmpty();
+    }
+
+    // ends the broadcast once the frames already published have been sent,
+    // and stops listening to the board; does nothing if it has already
+    // ended. Call on the player's thread, or while holding off its moves
+    public synchronized void close() {
+        if (closed)
+            return;
+        leaveBoard();
+        submit(new Runnable() {
+            public void run() {
+                for (MinesweeperSpectator spectator : spectators)
+                    spectator.closed();
+                spectators.clear();
+                members.clear();
+            }
+        });
+        closed = true;
+        broadcaster.shutdown();
+    }
+
+    // returns true once the broadcast has ended
+    private synchronized boolean isClosed() {
+        return closed;
+    }
+
+    // stops listening to the board followed so far, if any
+    private void leaveBoard() {
+        if (board != null)
+            board.removeListener(this);
+    }
+
+    // hands a task to the broadcast's thread; returns false, and drops the
+    // task, if the broadcast has ended
+    private synchronized boolean submit(Runnable task) {
+        if (closed)
+            return false;
+        broadcaster.execute(task);
+        return true;
+    }
+
+    public void cellChanged(int index, byte oldState) {
+        if (changedCount == changedIndexes.length) {
+            changedIndexes = Arrays.copyOf(changedIndexes, changedCount * 2);
+            changedStates = Arrays.copyOf(changedStates, changedCount * 2);
+        }
+        changedIndexes[changedCount] = index;
+        changedStates[changedCount++] = board.getState(index);
+    }
+
+    public void gameStatusChanged(int status) {
+        // sent with the next publish
+    }
+
+    // returns the value a spectator sees for a cell in the given state
+    private static byte value(MinesweeperLayout layout, int index, byte state) {
+        if (state == MinesweeperBoard.REVEALED)
+            return (byte) (REVEALED_VALUE + layout.getNumAdjacentBombs(index));
+        return (byte) (state == MinesweeperBoard.FLAGGED ? FLAGGED_VALUE : HIDDEN_VALUE);
+    }
+
+    // returns the board's status, flags remaining, tiles to clear and exploded index
+    private int[] counters() {
+        return new int[] { board.getStatus(), board.getFlagsRemaining(), board.getTilesToClear(),
+                board.getExplodedIndex() };
+    }
+
+    // hands a frame to every spectator, dropping those that can't take it
+    private void send(byte[] frame) {
+        for (Iterator<MinesweeperSpectator> it = spectators.iterator(); it.hasNext(); ) {
+            MinesweeperSpectator spectator = it.next();
+            if (!offer(spectator, frame)) {
+                it.remove();
+                members.remove(spectator);
+            }
+        }
+    }
+
+    // hands a frame to a spectator; returns false if it should be dropped
+    private static boolean offer(MinesweeperSpectator spectator, byte[] frame) {
+        try {
+            return spectator.frame(frame);
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    // encodes the whole board as seen by spectators; a keyframe made for
+    // late joiners takes the sequence number of the delta it follows, so
+    // the next delta follows on from either
+    private byte[] encodeKeyframe(long frameSequence, int[] counters) {
+        Encoder out = new Encoder(64);
+        writeHeader(out, KEYFRAME, frameSequence, counters);
+        out.writeVarint(layout.getRows());
+        out.writeVarint(layout.getColumns());
+        out.writeByte(layout.getTopology().getKind());
+        int start = 0;
+        for (int index = 1; index <= mirror.length; index++) {
+            if (index == mirror.length || mirror[index] != mirror[start]) {
+                out.writeVarint(index - start);
+                out.writeByte(mirror[start]);
+                start = index;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    // encodes the cells changed by a move as runs of cells in index order,
+    // applying them to the mirror; a cell changed twice counts as it ended up
+    private byte[] encodeDelta(int[] indexes, byte[] states, int[] counters) {
+        // sort by index, and by order of change within an index
+        long[] keys = new long[indexes.length];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = (long) indexes[i] << 32 | i;
+        Arrays.sort(keys);
+
+        // the runs are gathered first, as their number comes before them
+        Encoder runs = new Encoder(16);
+        int runCount = 0;
+        int previousEnd = 0;
+        int runStart = -1, runEnd = -1;
+        byte runValue = 0;
+        for (int k = 0; k < keys.length; k++) {
+            int index = (int) (keys[k] >>> 32);
+            if (k + 1 < keys.length && (int) (keys[k + 1] >>> 32) == index)
+                continue;
+            byte value = value(layout, index, states[(int) keys[k]]);
+            mirror[index] = value;
+            if (index == runEnd && value == runValue) {
+                runEnd++;
+                continue;
+            }
+            if (runStart >= 0) {
+                writeRun(runs, runStart - previousEnd, runEnd - runStart, runValue);
+                previousEnd = runEnd;
+            }
+            runStart = index;
+            runEnd = index + 1;
+            runValue = value;
+            runCount++;
+        }
+        if (runStart >= 0)
+            writeRun(runs, runStart - previousEnd, runEnd - runStart, runValue);
+
+        Encoder out = new Encoder(16 + runs.size());
+        writeHeader(out, DELTA, ++sequence, counters);
+        out.writeVarint(runCount);
+        out.write(runs);
+        return out.toByteArray();
+    }
+
+    // writes one run of a delta
+    private static void writeRun(Encoder out, int gap, int length, byte value) {
+        out.writeVarint(gap);
+        out.writeVarint(length);
+        out.writeByte(value);
+    }
+
+    // writes the part every frame starts with
+    private static void writeHeader(Encoder out, int type, long frameSequence, int[] counters) {
+        out.writeByte(type);
+        out.writeVarint(frameSequence);
+        out.writeByte(counters[0]);
+        out.writeVarint(counters[1]);
+        out.writeVarint(counters[2]);
+        out.writeVarint(counters[3] + 1);
+    }
+
+    /*
+     * A growable byte array with varint writes.
+     */
+    private static final class Encoder {
+        private byte[] bytes;
+        private int size;
+
+        Encoder(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        int size() { return size; }
+
+        void writeByte(int value) {
+            if (size == bytes.length)
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            bytes[size++] = (byte) value;
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7fL) != 0) {
+                writeByte((int) (value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        void write(Encoder other) {
+            if (size + other.size > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + other.size));
+            System.arraycopy(other.bytes, 0, bytes, size, other.size);
+            size += other.size;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/*
+ * Reads back the positions written by a MinesweeperDatasetWriter, one at a
+ * time, holding only one chunk in memory.
+ *
+ *     MinesweeperDatasetReader reader = new MinesweeperDatasetReader(file);
+ *     while (reader.next()) {
+ *         ... reader.getState(index), reader.getMoveIndex(), ...
+ *     }
+ *
+ *     java MinesweeperDatasetReader file
+ */
+public class MinesweeperDatasetReader implements Closeable {
+    // where the chunks come from
+    private final FileChannel channel;
+
+    // inflates the chunks; null if they are stored raw
+    private final Inflater inflater;
+
+    // the shape of the boards in the current chunk
+    private int rows, columns, kind, bombs, cells;
+
+    // the current chunk's raw bytes, where each of its columns starts, and
+    // the number of positions in it
+    private ByteBuffer raw = ByteBuffer.allocate(0);
+    private byte[] stored = new byte[0];
+    private int gameIdsAt, moveNumbersAt, moveIndexesAt, moveTypesAt, revealedAt, flaggedAt, numbersAt;
+    private int planeBytes, numberBytes;
+    private int count;
+
+    // the current position within the chunk; -1 before the first
+    private int position = -1;
+
+    // constructor for MinesweeperDatasetReader
+    public MinesweeperDatasetReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        ByteBuffer header = readFully(12);
+        if (header.getInt() != MinesweeperDatasetWriter.MAGIC)
+            throw new IOException("Not a Minesweeper dataset: " + file);
+        int version = header.getInt();
+        if (version != MinesweeperDatasetWriter.VERSION)
+            throw new IOException("Unknown dataset format version: " + version);
+        inflater = (header.getInt() & MinesweeperDatasetWriter.DEFLATED) != 0 ? new Inflater() : null;
+    }
+
+    // moves to the next position; returns false at the end of the file
+    public boolean next() throws IOException {
+        position++;
+        while (position >= count) {
+            if (!readChunk())
+                return false;
+        }
+        return true;
+    }
+
+    // public accessors for the shape of the board in the current position
+    public int getRows() { return rows; }
+    public int getColumns() { return columns; }
+    public int getCellCount() { return cells; }
+    public int getKind() { return kind; }
+    public int getBombs() { return bombs; }
+
+    // public accessors for the game and the move made in the current position
+    public long getGameId() { return raw.getLong(gameIdsAt + position * 8); }
+    public int getMoveNumber() { return raw.getInt(moveNumbersAt + position * 4); }
+    public int getMoveIndex() { return raw.getInt(moveIndexesAt + position * 4); }
+    public int getMoveType() { return raw.get(moveTypesAt + position); }
+
+    // returns the state of a cell in the current position: MinesweeperBoard.HIDDEN,
+    // FLAGGED, or REVEALED
+    public byte getState(int index) {
+        int offset = position * planeBytes + (index >> 3);
+        int bit = 1 << (index & 7);
+        if ((raw.get(revealedAt + offset) & bit) != 0)
+            return MinesweeperBoard.REVEALED;
+        if ((raw.get(flaggedAt + offset) & bit) != 0)
+            return MinesweeperBoard.FLAGGED;
+        return MinesweeperBoard.HIDDEN;
+    }
+
+    // returns the number shown on a cell in the current position, or -1 if
+    // the cell isn't revealed
+    public int getNumber(int index) {
+        if (getState(index) != MinesweeperBoard.REVEALED)
+            return -1;
+        int packed = raw.get(numbersAt + position * numberBytes + (index >> 1));
+        return (index & 1) == 0 ? packed & 0xf : packed >> 4 & 0xf;
+    }
+
+    public void close() throws IOException {
+        channel.close();
+        if (inflater != null)
+            inflater.end();
+    }
+
+    // reads the next chunk; returns false at the end of the file
+    private boolean readChunk() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(MinesweeperDatasetWriter.CHUNK_HEADER_BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header) < 0) {
+                if (header.position() == 0)
+                    return false;
+                throw new IOException("Truncated dataset chunk header");
+            }
+        }
+        header.flip();
+        rows = header.getInt();
+        columns = header.getInt();
+        kind = header.getInt();
+        bombs = header.getInt();
+        count = header.getInt();
+        int rawLength = header.getInt();
+        int storedLength = header.getInt();
+        cells = rows * columns;
+        planeBytes = (cells + 7) / 8;
+        numberBytes = (cells + 1) / 2;
+        if (count <= 0 || rawLength != count * (MinesweeperDatasetWriter.FIXED_BYTES + 2 * planeBytes + numberBytes))
+            throw new IOException("Invalid dataset chunk");
+
+        if (raw.capacity() < rawLength)
+            raw = ByteBuffer.allocate(rawLength).order(ByteOrder.LITTLE_ENDIAN);
+        if (inflater == null) {
+            raw.clear().limit(rawLength);
+            while (raw.hasRemaining()) {
+                if (channel.read(raw) < 0)
+                    throw new IOException("Truncated dataset chunk");
+            }
+        } else {
+            if (stored.length < storedLength)
+                stored = new byte[storedLength];
+            ByteBuffer in = ByteBuffer.wrap(stored, 0, storedLength);
+            while (in.hasRemaining()) {
+                if (channel.read(in) < 0)
+                    throw new IOException("Truncated dataset chunk");
+            }
+            inflater.reset();
+            inflater.setInput(stored, 0, storedLength);
+            try {
+                if (inflater.inflate(raw.array(), 0, rawLength) != rawLength)
+                    throw new IOException("Invalid dataset chunk");
+            } catch (DataFormatException e) {
+                throw new IOException("Invalid dataset chunk: " + e.getMessage());
+            }
+        }
+
+        gameIdsAt = 0;
+        moveNumbersAt = gameIdsAt + count * 8;
+        moveIndexesAt = moveNumbersAt + count * 4;
+        moveTypesAt = moveIndexesAt + count * 4;
+        revealedAt = moveTypesAt + count;
+        flaggedAt = revealedAt + count * planeBytes;
+        numbersAt = flaggedAt + count * planeBytes;
+        position = 0;
+        return true;
+    }
+
+    // reads the given number of bytes from the channel
+    private ByteBuffer readFully(int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0)
+                throw new IOException("Truncated dataset");
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    // prints a summary of a dataset
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: java MinesweeperDatasetReader file");
+            System.exit(1);
+        }
+        long positions = 0;
+        long games = 0;
+        long flags = 0;
+        try (MinesweeperDatasetReader reader = new MinesweeperDatasetReader(new File(args[0]))) {
+            while (reader.next()) {
+                positions++;
+                if (reader.getMoveType() == MinesweeperMove.FLAG)
+                    flags++;
+                if (reader.getMoveNumber() == 0)
+                    games++;
+            }
+        }
+        System.out.printf("%d positions from %d games, %d flag moves%n", positions, games, flags);
+    }
+}
@@ -0,0 +1,232 @@
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/*
+ * Writes positions from games, and the move made in each, to a compact
+ * binary file for training move-prediction models.
+ *
+ * The file starts with a header:
+ *
+ *     magic "MSDS", int version, int flags (1 = chunks are deflated)
+ *
+ * followed by chunks, each holding positions from boards of one shape:
+ *
+ *     int rows, int columns, int kind (MinesweeperTopology), int bombs,
+ *     int positions, int raw length, int stored length, stored bytes
+ *
+ * The stored bytes are the raw bytes, deflated if the file says so. The raw
+ * bytes hold one column after another, each with one entry per position:
+ *
+ *     long   game id        e.g. the layout's seed
+ *     int    move number    moves made in the game before this one
+ *     int    move index     the cell the move was made on
+ *     byte   move type      MinesweeperMove.REVEAL or FLAG
+ *     bits   revealed       one bit per cell, in row-major order
+ *     bits   flagged        one bit per cell
+ *     nibbles numbers       four bits per cell: the number on a revealed
+ *                           cell, 0 on any other cell
+ *
+ * Bit planes are packed low bit first and padded to a whole byte per
+ * position; numbers hold the even cell in the low nibble. Everything is
+ * little-endian, so a column can be read straight into a numpy array.
+ *
+ * Positions are packed into a chunk buffer as they are written, and the
+ * buffer goes to the file through a FileChannel once it holds about
+ * CHUNK_BYTES, so memory use doesn't grow with the number of positions.
+ * Safe to share between threads. See MinesweeperDatasetReader.
+ */
+public class MinesweeperDatasetWriter implements Closeable {
+    // identifies the format and its version
+    static final int MAGIC = 0x5344534d; // "MSDS" read as a little-endian int
+    static final int VERSION = 1;
+    static final int DEFLATED = 1;
+
+    // about the most raw bytes in one chunk
+    public static final int CHUNK_BYTES = 1 << 20;
+
+    // bytes per position in the fixed-width columns: game id, move number,
+    // move index, and move type
+    static final int FIXED_BYTES = 8 + 4 + 4 + 1;
+
+    // bytes in a chunk header
+    static final int CHUNK_HEADER_BYTES = 7 * 4;
+
+    // where the chunks go
+    private final FileChannel channel;
+
+    // compresses the chunks; null if they are stored raw
+    private final Deflater deflater;
+
+    // the shape of the boards in the current chunk
+    private int rows, columns, kind, bombs, cells;
+
+    // bytes per position in a bit plane and in the numbers column
+    private int planeBytes, numberBytes;
+
+    // the columns of the current chunk, each with room for capacity positions
+    private int capacity, count;
+    private ByteBuffer gameIds, moveNumbers, moveIndexes;
+    private byte[] moveTypes, revealed, flagged, numbers;
+
+    // the chunk being written, header included, and space to deflate it into
+    private byte[] raw = new byte[0];
+    private byte[] stored = new byte[0];
+
+    // positions and bytes written so far
+    private long positions, bytesWritten;
+
+    // constructor for MinesweeperDatasetWriter; replaces the file if it exists
+    public MinesweeperDatasetWriter(File file, boolean compress) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        deflater = compress ? new Deflater(Deflater.BEST_SPEED) : null;
+
+        ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(compress ? DEFLATED : 0);
+        header.flip();
+        writeFully(header);
+    }
+
+    // public accessors for the positions and bytes written so far
+    public synchronized long getPositionCount() { return positions; }
+    public synchronized long getBytesWritten() { return bytesWritten; }
+
+    // adds the position a board is in and the move about to be made on it
+    public synchronized void write(long gameId, MinesweeperVisibleBoard board, MinesweeperMove move)
+            throws IOException {
+        if (capacity == 0 || board.getRows() != rows || board.getColumns() != columns
+                || board.getTopology().getKind() != kind || board.getBombs() != bombs) {
+            flush();
+            startChunk(board);
+        }
+
+        gameIds.putLong(count * 8, gameId);
+        moveNumbers.putInt(count * 4, board.getMoveCount());
+        moveIndexes.putInt(count * 4, move.getIndex());
+        moveTypes[count] = (byte) move.getType();
+
+        // pack the planes a byte at a time; every byte is written, so the
+        // buffers need no clearing between positions
+        int planeAt = count * planeBytes;
+        for (int first = 0; first < cells; first += 8) {
+            int revealedBits = 0;
+            int flaggedBits = 0;
+            for (int bit = 0, end = Math.min(8, cells - first); bit < end; bit++) {
+                byte state = board.getState(first + bit);
+                if (state == MinesweeperBoard.REVEALED)
+                    revealedBits |= 1 << bit;
+                else if (state == MinesweeperBoard.FLAGGED)
+                    flaggedBits |= 1 << bit;
+            }
+            revealed[planeAt] = (byte) revealedBits;
+            flagged[planeAt++] = (byte) flaggedBits;
+        }
+        int numberAt = count * numberBytes;
+        for (int index = 0; index < cells; index += 2) {
+            int low = Math.max(board.getNumber(index), 0);
+            int high = index + 1 < cells ? Math.max(board.getNumber(index + 1), 0) : 0;
+            numbers[numberAt++] = (byte) (low | high << 4);
+        }
+
+        count++;
+        positions++;
+        if (count == capacity)
+            flush();
+    }
+
+    // writes the positions not yet written; the file is complete after every flush
+    public synchronized void flush() throws IOException {
+        if (count == 0)
+            return;
+
+        // the columns one after another, after the header
+        int rawLength = count * (FIXED_BYTES + 2 * planeBytes + numberBytes);
+        int at = CHUNK_HEADER_BYTES;
+        System.arraycopy(gameIds.array(), 0, raw, at, count * 8);
+        at += count * 8;
+        System.arraycopy(moveNumbers.array(), 0, raw, at, count * 4);
+        at += count * 4;
+        System.arraycopy(moveIndexes.array(), 0, raw, at, count * 4);
+        at += count * 4;
+        System.arraycopy(moveTypes, 0, raw, at, count);
+        at += count;
+        System.arraycopy(revealed, 0, raw, at, count * planeBytes);
+        at += count * planeBytes;
+        System.arraycopy(flagged, 0, raw, at, count * planeBytes);
+        at += count * planeBytes;
+        System.arraycopy(numbers, 0, raw, at, count * numberBytes);
+
+        byte[] out = raw;
+        int storedLength = rawLength;
+        if (deflater != null) {
+            deflater.reset();
+            deflater.setInput(raw, CHUNK_HEADER_BYTES, rawLength);
+            deflater.finish();
+            storedLength = 0;
+            while (!deflater.finished()) {
+                if (CHUNK_HEADER_BYTES + storedLength == stored.length)
+                    stored = Arrays.copyOf(stored, stored.length * 2);
+                storedLength += deflater.deflate(stored, CHUNK_HEADER_BYTES + storedLength,
+                        stored.length - CHUNK_HEADER_BYTES - storedLength);
+            }
+            out = stored;
+        }
+
+        ByteBuffer chunk = ByteBuffer.wrap(out, 0, CHUNK_HEADER_BYTES + storedLength).order(ByteOrder.LITTLE_ENDIAN);
+        chunk.putInt(0, rows).putInt(4, columns).putInt(8, kind).putInt(12, bombs)
+                .putInt(16, count).putInt(20, rawLength).putInt(24, storedLength);
+        writeFully(chunk);
+        count = 0;
+    }
+
+    // writes what is left and closes the file
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+            if (deflater != null)
+                deflater.end();
+        }
+    }
+
+    // sizes the columns for positions on boards shaped like this one
+    private void startChunk(MinesweeperVisibleBoard board) {
+        rows = board.getRows();
+        columns = board.getColumns();
+        kind = board.getTopology().getKind();
+        bombs = board.getBombs();
+        cells = board.getCellCount();
+        planeBytes = (cells + 7) / 8;
+        numberBytes = (cells + 1) / 2;
+
+        int positionBytes = FIXED_BYTES + 2 * planeBytes + numberBytes;
+        capacity = Math.max(CHUNK_BYTES / positionBytes, 1);
+        gameIds = ByteBuffer.allocate(capacity * 8).order(ByteOrder.LITTLE_ENDIAN);
+        moveNumbers = ByteBuffer.allocate(capacity * 4).order(ByteOrder.LITTLE_ENDIAN);
+        moveIndexes = ByteBuffer.allocate(capacity * 4).order(ByteOrder.LITTLE_ENDIAN);
+        moveTypes = new byte[capacity];
+        revealed = new byte[capacity * planeBytes];
+        flagged = new byte[capacity * planeBytes];
+        numbers = new byte[capacity * numberBytes];
+
+        int chunkBytes = CHUNK_HEADER_BYTES + capacity * positionBytes;
+        if (raw.length < chunkBytes)
+            raw = new byte[chunkBytes];
+        if (deflater != null && stored.length < chunkBytes + 1024)
+            stored = new byte[chunkBytes + 1024];
+    }
+
+    // writes all of a buffer; a channel may take less than asked for
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            bytesWritten += channel.write(buffer);
+    }
+}
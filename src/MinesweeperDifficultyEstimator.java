@@ -0,0 +1,92 @@
+import javax.swing.*;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
+/*
+ * Estimates how hard a board size is by playing games on it in the
+ * background with a MinesweeperSimulator, and shows the estimate on a
+ * label, updated as the games come in.
+ *
+ * Games are played one at a time until MAX_GAMES have been played or the
+ * estimator is cancelled with cancel(true); a cancelled estimator stops at
+ * the next move of the game it is playing and never touches the label
+ * again, so a new one can be started as soon as the settings change.
+ *
+ * The games are seeded from the board size, and the solver has no Monte
+ * Carlo estimator, which depends on timing, so the same settings always get
+ * the same estimate.
+ */
+public class MinesweeperDifficultyEstimator extends SwingWorker<Void, String> {
+    // games played for one estimate
+    public static final int MAX_GAMES = 1000;
+
+    // how often the label is updated, in nanoseconds
+    private static final long PUBLISH_NANOS = 150000000L;
+
+    // the solver every estimator plays with; it keeps no state between
+    // components, so it can be shared
+    private static final MinesweeperSolver SOLVER =
+            new MinesweeperSolver(MinesweeperSolver.DEFAULT_STEP_LIMIT, null);
+
+    // the board size being estimated
+    private final int rows, columns, bombs;
+
+    // where the estimate is shown
+    private final JLabel label;
+
+    // constructor for MinesweeperDifficultyEstimator; call execute() to start it
+    public MinesweeperDifficultyEstimator(int rows, int columns, int bombs, JLabel label) {
+        MinesweeperLayout.checkDimensions(rows, columns, bombs);
+        this.rows = rows;
+        this.columns = columns;
+        this.bombs = bombs;
+        this.label = label;
+    }
+
+    // plays the games, publishing the estimate every PUBLISH_NANOS
+    protected Void doInBackground() {
+        MinesweeperSimulator simulator = new MinesweeperSimulator(rows, columns, bombs, SOLVER, null);
+        Random random = new Random(((long) rows * 31 + columns) * 31 + bombs);
+        int games = 0;
+        int wins = 0;
+        long guesses = 0;
+        long lastPublish = System.nanoTime();
+        while (games < MAX_GAMES && !isCancelled()) {
+            MinesweeperSimulator.Result result;
+            try {
+                result = simulator.play(random.nextLong());
+            } catch (CancellationException e) {
+                // interrupted by cancel(true)
+                break;
+            }
+            games++;
+            if (result.isWon())
+                wins++;
+            guesses += result.getGuesses();
+
+            long now = System.nanoTime();
+            if (now - lastPublish >= PUBLISH_NANOS || games == MAX_GAMES) {
+                lastPublish = now;
+                publish(describe(games, wins, guesses));
+            }
+        }
+        return null;
+    }
+
+    // shows the latest estimate, unless the estimator has been cancelled
+    protected void process(List<String> estimates) {
+        if (!isCancelled())
+            label.setText(estimates.get(estimates.size() - 1));
+    }
+
+    // returns the estimate after the given games as text: the rate at which
+    // the simulator, which always reveals the safest cell, wins, with the half
+    // width of its 95% confidence interval, and the mean guesses it makes
+    public static String describe(int games, int wins, long guesses) {
+        double rate = (double) wins / games;
+        double margin = 1.96 * Math.sqrt(rate * (1 - rate) / games);
+        return String.format("Solver wins %.0f%% (\u00b1%.0f%%), %.1f guesses/game%s", 100 * rate, 100 * margin,
+                (double) guesses / games, games == MAX_GAMES ? "" : games == 1 ? "  [1 game]" : "  [" + games + " games]");
+    }
+}
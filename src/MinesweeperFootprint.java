@@ -0,0 +1,238 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+/*
+ * What a board costs in memory, and the budget boards must fit in.
+ *
+ * A board can be shown three ways: as the tile grid of the main window or
+ * in a large board window, both drawn by a renderer from the board's own
+ * arrays; or not at all, e.g. on the server. estimate() gives the heap each
+ * one needs for a board of a given size once the whole board has been
+ * played, using the bytes per cell below; choose() picks the
+ * cheapest one that fits the budget, or refuses the board before anything
+ * is allocated. The budget is -Dminesweeper.memoryBudgetMB, or three
+ * quarters of the maximum heap.
+ *
+ * The estimates are checked against the real thing by measure(), which
+ * builds and plays boards, paints a window's view of them, and weighs the
+ * heap before and after. Run main to print the measurements: it measures
+ * each representation at two sizes, so the bytes per cell are the slope
+ * between them and the fixed part drops out. It exits with status 1 if any
+ * representation costs more per cell, or more per board, than its
+ * estimate, so it doubles as a regression check.
+ */
+public final class MinesweeperFootprint {
+    // ways to show a board
+    public static final int TILE_GRID = 0;
+    public static final int LARGE_WINDOW = 1;
+    public static final int HEADLESS = 2;
+
+    // returned by choose() for a board that fits no representation
+    public static final int NONE = -1;
+
+    // largest board shown as a tile grid, as in the custom settings
+    public static final int TILE_GRID_MAX_ROWS = 18;
+    public static final int TILE_GRID_MAX_COLUMNS = 30;
+
+    // heap per cell of a fully played board, by representation. All of them
+    // have the layout, topology classes, cell states and flood fill queue,
+    // about 7 bytes; the tile grid adds the undo history of the main window,
+    // about 32 bytes when every cell is revealed by a move of its own, and a
+    // large window the mipmap (under a byte)
+    private static final double[] CELL_BYTES = { 44, 9, 8 };
+
+    // heap per board regardless of its size: mostly the renderer's tile
+    // images, for the tile grid the 6x4 tiles covering the largest grid's
+    // window, for a large window their default budget
+    private static final long[] FIXED_BYTES = { (24L * 4 * MinesweeperBoardRenderer.TILE_PIXELS
+            * MinesweeperBoardRenderer.TILE_PIXELS) + (64L << 10),
+            MinesweeperBoardRenderer.DEFAULT_BUDGET_BYTES + (64L << 10), 64L << 10 };
+
+    private static final String[] NAMES = { "tile grid", "large window", "headless" };
+
+    // the view measure() paints: the whole tile grid at about the main
+    // window's cell size, or part of the board in a large window
+    private static final int GRID_CELL_PIXELS = 48;
+    private static final int WINDOW_WIDTH = 1280;
+    private static final int WINDOW_HEIGHT = 800;
+    private static final int WINDOW_CELL_PIXELS = 16;
+
+    // keeps what measure() builds reachable while the heap is weighed
+    private static volatile Object sink;
+
+    private MinesweeperFootprint() {
+    }
+
+    // returns the name of a representation
+    public static String name(int representation) {
+        return NAMES[representation];
+    }
+
+    // returns the estimated heap, in bytes, of a fully played board shown the given way
+    public static long estimate(int representation, int rows, int columns) {
+        return FIXED_BYTES[representation] + (long) Math.ceil(CELL_BYTES[representation] * rows * columns);
+    }
+
+    // returns the heap boards may use, in bytes
+    public static long getBudget() {
+        long megabytes = Long.getLong("minesweeper.memoryBudgetMB", 0);
+        return megabytes > 0 ? megabytes << 20 : Runtime.getRuntime().maxMemory() / 4 * 3;
+    }
+
+    // returns the way to show a board: the tile grid if it is square, small
+    // enough and fits the budget, a large window if that fits, or NONE
+    public static int choose(int kind, int rows, int columns) {
+        long budget = getBudget();
+        if (kind == MinesweeperTopology.SQUARE && rows <= TILE_GRID_MAX_ROWS && columns <= TILE_GRID_MAX_COLUMNS
+                && estimate(TILE_GRID, rows, columns) <= budget)
+            return TILE_GRID;
+        return estimate(LARGE_WINDOW, rows, columns) <= budget ? LARGE_WINDOW : NONE;
+    }
+
+    // throws an IllegalArgumentException if a board shown the given way
+    // wouldn't fit the budget
+    public static void checkBudget(int representation, int rows, int columns) {
+        if (estimate(representation, rows, columns) > getBudget())
+            throw new IllegalArgumentException(describeBudget(rows, columns, representation));
+    }
+
+    // returns why a board doesn't fit a large window
+    public static String describeBudget(int rows, int columns) {
+        return describeBudget(rows, columns, LARGE_WINDOW);
+    }
+
+    // returns how much a board shown the given way needs, against the budget
+    private static String describeBudget(int rows, int columns, int representation) {
+        return String.format("a %dx%d board needs about %d MB, over the memory budget of %d MB", rows, columns,
+                estimate(representation, rows, columns) >> 20, getBudget() >> 20);
+    }
+
+    // builds and plays count boards shown the given way, then paints a
+    // window's view of each, and returns the heap they take in bytes per
+    // board, and how much of that the painting added: the renderers' tile
+    // images, which don't grow with the board. Headless AWT is enough
+    public static long[] measure(int representation, int rows, int columns, int count) {
+        Object[] keep = new Object[count];
+        MinesweeperGrid[] grids = new MinesweeperGrid[count];
+        MinesweeperBoardRenderer[] renderers = new MinesweeperBoardRenderer[count];
+        long before = usedMemory();
+        for (int i = 0; i < count; i++) {
+            int bombs = rows * columns / 6;
+            MinesweeperBoard board;
+            if (representation == TILE_GRID) {
+                grids[i] = new MinesweeperGrid(rows, columns, bombs, null);
+                board = grids[i].getBoard();
+                keep[i] = grids[i];
+            } else {
+                board = new MinesweeperBoard(new MinesweeperLayout(rows, columns, bombs, i));
+                if (representation == LARGE_WINDOW) {
+                    renderers[i] = new MinesweeperBoardRenderer(board);
+                    keep[i] = new Object[] { new MinesweeperMipmap(board), renderers[i] };
+                } else {
+                    keep[i] = board;
+                }
+            }
+            play(board);
+        }
+        sink = keep;
+        long played = usedMemory();
+
+        // the tile images are only drawn once they are shown
+        for (int i = 0; i < count; i++) {
+            if (grids[i] != null) {
+                grids[i].setSize(columns * GRID_CELL_PIXELS, rows * GRID_CELL_PIXELS);
+                paint(grids[i], null, grids[i].getWidth(), grids[i].getHeight());
+            } else if (renderers[i] != null) {
+                renderers[i].setCellSize(WINDOW_CELL_PIXELS);
+                paint(null, renderers[i], WINDOW_WIDTH, WINDOW_HEIGHT);
+            }
+        }
+        long after = usedMemory();
+        sink = null;
+        return new long[] { (after - before) / count, (after - played) / count };
+    }
+
+    // plays a board to the end: every cell that isn't a bomb revealed, one
+    // move at a time
+    private static void play(MinesweeperBoard board) {
+        for (int index = 0; index < board.getCellCount() && board.getStatus() == MinesweeperBoard.PLAYING; index++) {
+            if (!board.getLayout().isBomb(index) && board.getState(index) == MinesweeperBoard.HIDDEN)
+                board.reveal(index);
+        }
+    }
+
+    // paints the grid, or the top left of the renderer's board, on a
+    // throwaway image of the given size
+    private static void paint(MinesweeperGrid grid, MinesweeperBoardRenderer renderer, int width, int height) {
+        BufferedImage window = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = window.createGraphics();
+        g.setClip(0, 0, width, height);
+        if (grid != null)
+            grid.paint(g);
+        else
+            renderer.paint(g, 0, 0);
+        g.dispose();
+    }
+
+    // returns the heap in use once garbage has been collected
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 6; i++) {
+            System.gc();
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            used = Math.min(used, runtime.totalMemory() - runtime.freeMemory());
+        }
+        return used;
+    }
+
+    /* *************************************************************************
+     *                         MAIN METHOD
+     * *************************************************************************
+     */
+    // prints the measured and estimated bytes per cell and per board of
+    // every representation, and exits with status 1 if a measurement is over
+    // its estimate. Run with -Djava.awt.headless=true and enough heap, e.g. -Xmx1g
+    public static void main(String[] args) {
+        // for each representation, a small and a large board and how many of each to build
+        int[][] sizes = {
+                { TILE_GRID, 9, 9, 200, 18, 30, 50 },
+                { LARGE_WINDOW, 256, 256, 8, 1000, 1000, 2 },
+                { HEADLESS, 16, 30, 2000, 1000, 1000, 4 } };
+        boolean over = false;
+        System.out.printf("%-13s %14s %14s %16s %16s%n", "", "measured B/cell", "estimate B/cell",
+                "measured B/board", "estimate B/board");
+        for (int[] size : sizes) {
+            int representation = size[0];
+            long smallCells = (long) size[1] * size[2];
+            long largeCells = (long) size[4] * size[5];
+            // once to load the classes, then for real
+            measure(representation, size[1], size[2], 1);
+            long[] small = measure(representation, size[1], size[2], size[3]);
+            long[] large = measure(representation, size[4], size[5], size[6]);
+
+            // the tile images don't grow with the board, so they go in the
+            // fixed part with whatever else the slope leaves over
+            double cellBytes = (double) ((large[0] - large[1]) - (small[0] - small[1])) / (largeCells - smallCells);
+            long fixedBytes = Math.round(large[0] - cellBytes * largeCells);
+            boolean ok = cellBytes <= CELL_BYTES[representation] && fixedBytes <= FIXED_BYTES[representation];
+            over |= !ok;
+            System.out.printf("%-13s %14.1f %14.1f %16d %16d %s%n", name(representation), cellBytes,
+                    CELL_BYTES[representation], fixedBytes, FIXED_BYTES[representation], ok ? "ok" : "OVER");
+        }
+        System.out.printf("budget %d MB; 1000x1000 shown as %s, 10000x10000 as %s%n", getBudget() >> 20,
+                describe(choose(MinesweeperTopology.SQUARE, 1000, 1000)),
+                describe(choose(MinesweeperTopology.SQUARE, 10000, 10000)));
+        if (over)
+            System.exit(1);
+    }
+
+    // returns the name of a representation chosen by choose()
+    private static String describe(int representation) {
+        return representation == NONE ? "none (refused)" : name(representation);
+    }
+}
@@ -0,0 +1,625 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+/*
+ * The frontier of a Minesweeper game and the chance each unrevealed cell is a bomb.
+ *
+ * The frontier is the unrevealed cells next to a revealed number. It splits
+ * into components: groups of cells tied together by the numbers around them,
+ * which can be solved on their own by a MinesweeperSolver. The frontier
+ * listens to the board and only marks the cells a move changed; update()
+ * then rebuilds and re-solves just the components around those cells, and
+ * combines all of the components with the number of bombs left over for the
+ * rest of the board.
+ *
+ * Flags are treated like any other unrevealed cell, since they may be wrong.
+ * If a MinesweeperSolverCache is given, components are looked up in it
+ * before they are solved. The frontier only looks at a
+ * MinesweeperVisibleBoard, so it knows no more than the player.
+ *
+ * A window can't wait for a Monte Carlo estimate after every move. With
+ * setDeferEstimates(true), update() leaves a component the solver gives up
+ * on at the density of the rest of the board, and lists it as an Estimate
+ * that can be run on another thread and applied later; see
+ * MinesweeperBackgroundEstimates.
+ */
+public class MinesweeperFrontier implements MinesweeperBoardListener {
+    // combining components exactly costs the square of the number of bombs
+    // they can hold; above this they are weighted by the density of bombs instead
+    private static final int EXACT_COMBINE_LIMIT = 2000;
+
+    // what can be seen of the board, its topology, and its number of rows and columns
+    private final MinesweeperVisibleBoard board;
+    private final MinesweeperTopology topology;
+    private final int rows, columns;
+
+    // solves the components, and remembers solutions; the cache may be null
+    private final MinesweeperSolver solver;
+    private final MinesweeperSolverCache cache;
+
+    // the component each frontier cell belongs to, null for other cells,
+    // and the list of all components
+    private final Component[] componentOf;
+    private final List<Component> components = new ArrayList<>();
+
+    // cells changed since the last update; dirty marks the ones in the list
+    private final boolean[] dirty;
+    private int[] dirtyCells = new int[64];
+    private int dirtyCount;
+
+    // number of cells not revealed, flags included
+    private int unrevealed;
+
+    // chance of a bomb for each frontier cell in a solved component, and for
+    // every other unrevealed cell
+    private final float[] probability;
+    private float otherProbability;
+
+    // visit marks for building components; a cell is visited when its mark equals stamp
+    private final int[] visited;
+    private int stamp;
+
+    // scratch lists for building components
+    private int[] seeds = new int[64], cellList = new int[64], constraintList = new int[64];
+    private int seedCount;
+
+    // number of each cell within the component being solved
+    private final int[] localIndex;
+
+    // number of components solved by the last update, and the total so far
+    private int lastSolved;
+    private long totalSolved;
+
+    // components left for an estimator since takeEstimates was last called;
+    // null unless estimates are deferred
+    private List<Estimate> estimates;
+
+    /*
+     * A set of frontier cells and the revealed numbers that constrain them.
+     */
+    private static class Component {
+        // the unrevealed cells, in the order they were searched, and the numbers
+        final int[] cells, constraints;
+
+        // the solutions, or null if the solver gave up
+        MinesweeperSolver.Solution solution;
+
+        // set once a move has changed the component and it has been
+        // replaced; read by the threads running Estimates
+        volatile boolean dead;
+
+        Component(int[] cells, int[] constraints) {
+            this.cells = cells;
+            this.constraints = constraints;
+        }
+    }
+
+    /*
+     * A component the solver gave up on, with everything needed to estimate
+     * it on another thread.
+     */
+    public static class Estimate {
+        private final Component component;
+        private final int cells;
+        private final int[] constraintStart, constraintCells, constraintValues;
+        private final double density;
+        private volatile MinesweeperSolver.Solution solution;
+
+        Estimate(Component component, int cells, int[] constraintStart, int[] constraintCells,
+                 int[] constraintValues, double density) {
+            this.component = component;
+            this.cells = cells;
+            this.constraintStart = constraintStart;
+            this.constraintCells = constraintCells;
+            this.constraintValues = constraintValues;
+            this.density = density;
+        }
+
+        // returns true once a move has replaced the component, so the estimate isn't needed
+        public boolean isStale() { return component.dead; }
+
+        // estimates the component, unless it has been replaced; may be called on any thread
+        public void run(MinesweeperMonteCarlo estimator) {
+            if (!isStale())
+                solution = estimator.estimate(cells, constraintStart, constraintCells, constraintValues, density);
+        }
+    }
+
+    // constructor for MinesweeperFrontier; takes the board as it is now and
+    // then follows its changes
+    public MinesweeperFrontier(MinesweeperBoard board, MinesweeperSolver solver) {
+        this(board, solver, null);
+    }
+
+    public MinesweeperFrontier(MinesweeperBoard board, MinesweeperSolver solver, MinesweeperSolverCache cache) {
+        this(board.getVisibleBoard(), solver, cache);
+    }
+
+    public MinesweeperFrontier(MinesweeperVisibleBoard board, MinesweeperSolver solver,
+                               MinesweeperSolverCache cache) {
+        this.board = board;
+        this.solver = solver;
+        this.cache = cache;
+        topology = board.getTopology();
+        rows = board.getRows();
+        columns = board.getColumns();
+
+        int cells = board.getCellCount();
+        componentOf = new Component[cells];
+        dirty = new boolean[cells];
+        probability = new float[cells];
+        visited = new int[cells];
+        localIndex = new int[cells];
+
+        // every revealed cell so far counts as a change
+        unrevealed = cells;
+        for (int index = 0; index < cells; index++) {
+            if (board.getState(index) == MinesweeperBoard.REVEALED) {
+                unrevealed--;
+                markAround(index);
+            }
+        }
+        otherProbability = (float) board.getBombs() / cells;
+        board.addListener(this);
+    }
+
+    // with defer set, components the solver gives up on are listed for
+    // takeEstimates instead of being left to the solver's estimator
+    public void setDeferEstimates(boolean defer) {
+        estimates = defer ? new ArrayList<Estimate>() : null;
+    }
+
+    // returns the components left for an estimator since the last call
+    public List<Estimate> takeEstimates() {
+        if (estimates == null || estimates.isEmpty())
+            return new ArrayList<>();
+        List<Estimate> taken = estimates;
+        estimates = new ArrayList<>();
+        return taken;
+    }
+
+    // uses the solutions of estimates that have been run, for the components
+    // no move has replaced since; returns true if the probabilities changed
+    public boolean applyEstimates(List<Estimate> done) {
+        boolean applied = false;
+        for (Estimate estimate : done) {
+            if (!estimate.isStale() && estimate.solution != null) {
+                estimate.component.solution = estimate.solution;
+                applied = true;
+            }
+        }
+        if (applied)
+            combine();
+        return applied;
+    }
+
+    // public accessors for the components and how many were solved
+    public int getComponentCount() { return components.size(); }
+    public int getLastSolved() { return lastSolved; }
+    public long getTotalSolved() { return totalSolved; }
+
+    // returns the chance the cell at index is a bomb, as of the last update;
+    // returns -1 for revealed cells
+    public float getProbability(int index) {
+        if (board.getState(index) == MinesweeperBoard.REVEALED)
+            return -1;
+        Component component = componentOf[index];
+        if (component != null && component.solution != null)
+            return probability[index];
+        return otherProbability;
+    }
+
+    // returns the half width of the 95% confidence interval of the cell's
+    // probability; 0 unless the cell's component was estimated
+    public float getUncertainty(int index) {
+        Component component = componentOf[index];
+        if (board.getState(index) == MinesweeperBoard.REVEALED || component == null || component.solution == null)
+            return 0;
+        return (float) component.solution.getHalfWidth(localIndex(component, index));
+    }
+
+    // marks the cells around a revealed or hidden cell when it changes
+    public void cellChanged(int index, byte oldState) {
+        byte newState = board.getState(index);
+        if (newState == MinesweeperBoard.REVEALED) {
+            unrevealed--;
+            markAround(index);
+        } else if (oldState == MinesweeperBoard.REVEALED) {
+            unrevealed++;
+            markAround(index);
+        }
+        // flags don't change the frontier
+    }
+
+    public void gameStatusChanged(int status) {}
+
+    // re-solves the components changed since the last update and recomputes
+    // the probabilities; returns false if nothing had changed
+    public boolean update() {
+        lastSolved = 0;
+        if (dirtyCount == 0)
+            return false;
+
+        // the changed cells, and every cell of a component holding one of them
+        int seedStamp = ++stamp;
+        seedCount = 0;
+        for (int i = 0; i < dirtyCount; i++) {
+            int index = dirtyCells[i];
+            dirty[index] = false;
+            addSeed(index, seedStamp);
+            if (componentOf[index] != null)
+                kill(componentOf[index], seedStamp);
+        }
+        dirtyCount = 0;
+
+        // build a new component from every seed still on the frontier; a
+        // component may reach into an old one a new number has joined it to.
+        // An interrupted thread, e.g. a move a tournament has given up on,
+        // stops between components, leaving a frontier that can't be used again
+        int buildStamp = ++stamp;
+        for (int i = 0; i < seedCount; i++) {
+            if (Thread.interrupted())
+                throw new CancellationException("Frontier update interrupted");
+            int seed = seeds[i];
+            if (visited[seed] != buildStamp && board.getState(seed) != MinesweeperBoard.REVEALED
+                    && hasRevealedNeighbor(seed))
+                build(seed, buildStamp);
+        }
+
+        // drop the components that were replaced
+        int live = 0;
+        for (int i = 0; i < components.size(); i++) {
+            Component component = components.get(i);
+            if (!component.dead)
+                components.set(live++, component);
+        }
+        components.subList(live, components.size()).clear();
+
+        combine();
+        return true;
+    }
+
+    // returns the number of a cell within its component
+    private static int localIndex(Component component, int index) {
+        return Arrays.binarySearch(component.cells, index);
+    }
+
+    // marks a cell and its neighbors as changed
+    private void markAround(int index) {
+        mark(index);
+        for (int i = topology.neighborStart(index), end = topology.neighborEnd(index); i < end; i++)
+            mark(index + topology.neighborOffset(i));
+    }
+
+    // marks a cell as changed
+    private void mark(int index) {
+        if (!dirty[index]) {
+            dirty[index] = true;
+            if (dirtyCount == dirtyCells.length)
+                dirtyCells = Arrays.copyOf(dirtyCells, dirtyCount * 2);
+            dirtyCells[dirtyCount++] = index;
+        }
+    }
+
+    // adds a cell to the seeds for new components unless it is already one
+    private void addSeed(int index, int seedStamp) {
+        if (visited[index] == seedStamp)
+            return;
+        visited[index] = seedStamp;
+        if (seedCount == seeds.length)
+            seeds = Arrays.copyOf(seeds, seedCount * 2);
+        seeds[seedCount++] = index;
+    }
+
+    // marks a component as replaced and makes its cells seeds
+    private void kill(Component component, int seedStamp) {
+        component.dead = true;
+        for (int index : component.cells) {
+            componentOf[index] = null;
+            addSeed(index, seedStamp);
+        }
+    }
+
+    // returns true if any neighbor of the cell is revealed
+    private boolean hasRevealedNeighbor(int index) {
+        for (int i = topology.neighborStart(index), end = topology.neighborEnd(index); i < end; i++) {
+            if (board.getState(index + topology.neighborOffset(i)) == MinesweeperBoard.REVEALED)
+                return true;
+        }
+        return false;
+    }
+
+    // collects the component holding the frontier cell start and solves it
+    private void build(int start, int buildStamp) {
+        int cellCount = 0;
+        int constraintCount = 0;
+        visited[start] = buildStamp;
+        cellList[cellCount++] = start;
+
+        // breadth first from cell to number to cell
+        for (int head = 0; head < cellCount; head++) {
+            int index = cellList[head];
+            // an old component a new number joins to this one; its numbers
+            // haven't changed, so the search reaches all of its cells
+            if (componentOf[index] != null)
+                componentOf[index].dead = true;
+
+            for (int i = topology.neighborStart(index), end = topology.neighborEnd(index); i < end; i++) {
+                int number = index + topology.neighborOffset(i);
+                if (visited[number] == buildStamp || board.getState(number) != MinesweeperBoard.REVEALED)
+                    continue;
+                visited[number] = buildStamp;
+                if (constraintCount == constraintList.length)
+                    constraintList = Arrays.copyOf(constraintList, constraintCount * 2);
+                constraintList[constraintCount++] = number;
+
+                for (int j = topology.neighborStart(number), end2 = topology.neighborEnd(number); j < end2; j++) {
+                    int cell = number + topology.neighborOffset(j);
+                    if (visited[cell] == buildStamp || board.getState(cell) == MinesweeperBoard.REVEALED)
+                        continue;
+                    visited[cell] = buildStamp;
+                    if (cellCount == cellList.length)
+                        cellList = Arrays.copyOf(cellList, cellCount * 2);
+                    cellList[cellCount++] = cell;
+                }
+            }
+        }
+
+        // cells and numbers in row-major order, so the same pattern is
+        // numbered the same way wherever it is on the board
+        Arrays.sort(cellList, 0, cellCount);
+        Arrays.sort(constraintList, 0, constraintCount);
+        Component component = new Component(Arrays.copyOf(cellList, cellCount),
+                Arrays.copyOf(constraintList, constraintCount));
+        for (int i = 0; i < cellCount; i++) {
+            componentOf[cellList[i]] = component;
+            localIndex[cellList[i]] = i;
+        }
+        component.solution = solve(component);
+        components.add(component);
+        lastSolved++;
+        totalSolved++;
+    }
+
+    // lists the constraints of a component by the cells' numbers within it
+    // and hands them to the solver, unless the cache has the solution already
+    private MinesweeperSolver.Solution solve(Component component) {
+        int[] cells = component.cells;
+        int[] constraints = component.constraints;
+
+        // describe the component relative to its top left and look it up
+        long hash = 0;
+        int[] description = null;
+        if (cache != null) {
+            int top = Math.min(cells[0], constraints[0]) / columns;
+            int left = Integer.MAX_VALUE;
+            for (int index : cells)
+                left = Math.min(left, index % columns);
+            for (int index : constraints)
+                left = Math.min(left, index % columns);
+
+            // the same places are neighbors in two patterns only if the
+            // patterns have the same pattern class, and on a torus only on
+            // boards of the same size
+            description = new int[4 + 2 * cells.length + 3 * constraints.length];
+            description[0] = cells.length;
+            description[1] = topology.getPatternClass(top);
+            description[2] = topology.wraps() ? rows : 0;
+            description[3] = topology.wraps() ? columns : 0;
+            hash = MinesweeperSolverCache.key(-1 - description[1], description[2], description[3]);
+            int at = 4;
+            for (int index : cells) {
+                int row = index / columns - top;
+                int col = index % columns - left;
+                description[at++] = row;
+                description[at++] = col;
+                hash ^= MinesweeperSolverCache.key(row, col, MinesweeperSolverCache.CELL);
+            }
+            for (int index : constraints) {
+                int row = index / columns - top;
+                int col = index % columns - left;
+                int value = board.getNumber(index);
+                description[at++] = row;
+                description[at++] = col;
+                description[at++] = value;
+                hash ^= MinesweeperSolverCache.key(row, col, value);
+            }
+
+            MinesweeperSolver.Solution solution = cache.get(hash, description);
+            if (solution != null)
+                return solution;
+        }
+
+        int[] constraintStart = new int[constraints.length + 1];
+        int[] constraintCells = new int[constraints.length * topology.getMaxNeighbors()];
+        int[] constraintValues = new int[constraints.length];
+        int count = 0;
+        for (int i = 0; i < constraints.length; i++) {
+            int number = constraints[i];
+            constraintValues[i] = board.getNumber(number);
+            for (int j = topology.neighborStart(number), end = topology.neighborEnd(number); j < end; j++) {
+                int cell = number + topology.neighborOffset(j);
+                if (board.getState(cell) != MinesweeperBoard.REVEALED)
+                    constraintCells[count++] = localIndex[cell];
+            }
+            constraintStart[i + 1] = count;
+        }
+        double density = unrevealed > 0 ? board.getBombs() / (double) unrevealed : 0;
+        MinesweeperSolver.Solution solution = solver.solve(cells.length, constraintStart, constraintCells,
+                constraintValues, density);
+        // estimates are random and depend on the density, so only exact solutions are kept
+        if (cache != null && solution != null && solution.isExact())
+            cache.put(hash, description, solution);
+        if (solution == null && estimates != null)
+            estimates.add(new Estimate(component, cells.length, constraintStart, constraintCells, constraintValues,
+                    density));
+        return solution;
+    }
+
+    // computes the probabilities from the solutions of all the components
+    private void combine() {
+        int bombs = board.getBombs();
+        int constrained = 0;
+        int maxBombs = 0;
+        int solved = 0;
+        for (Component component : components) {
+            if (component.solution != null) {
+                constrained += component.cells.length;
+                maxBombs += component.solution.getMaxBombs();
+                solved++;
+            }
+        }
+        // cells off the frontier, and cells of components the solver gave up on
+        int others = unrevealed - constrained;
+
+        if (maxBombs > EXACT_COMBINE_LIMIT || (long) solved * (maxBombs + 1) > (1 << 22)
+                || !combineExactly(bombs, others, maxBombs, solved))
+            combineByDensity(bombs, others);
+    }
+
+    // combines the components by counting every way the bombs left over can
+    // be placed in the other cells; returns false if the counts don't add up
+    private boolean combineExactly(int bombs, int others, int maxBombs, int solved) {
+        // choose[k] is in proportion to the ways of placing bombs - k bombs in the others
+        double[] choose = new double[maxBombs + 1];
+        int first = Math.max(0, bombs - others);
+        int last = Math.min(bombs, maxBombs);
+        if (first > last)
+            return false;
+        double[] logChoose = new double[maxBombs + 1];
+        for (int k = first + 1; k <= last; k++)
+            logChoose[k] = logChoose[k - 1] + Math.log((bombs - k + 1) / (double) (others - bombs + k));
+        double maxLog = Double.NEGATIVE_INFINITY;
+        for (int k = first; k <= last; k++)
+            maxLog = Math.max(maxLog, logChoose[k]);
+        for (int k = first; k <= last; k++)
+            choose[k] = Math.exp(logChoose[k] - maxLog);
+
+        MinesweeperSolver.Solution[] solutions = new MinesweeperSolver.Solution[solved];
+        Component[] solvedComponents = new Component[solved];
+        int count = 0;
+        for (Component component : components) {
+            if (component.solution != null) {
+                solvedComponents[count] = component;
+                solutions[count++] = component.solution;
+            }
+        }
+
+        // after[i][m]: the weight of the components after i and the others
+        // together, given m bombs in the components up to i
+        double[][] after = new double[solved + 1][];
+        after[solved] = choose;
+        for (int i = solved - 1; i >= 0; i--) {
+            double[] next = after[i + 1];
+            double[] current = new double[maxBombs + 1];
+            MinesweeperSolver.Solution solution = solutions[i];
+            int least = solution.getMinBombs();
+            int most = solution.getMaxBombs();
+            for (int m = 0; m <= maxBombs; m++) {
+                double sum = 0;
+                for (int k = least; k <= most && m + k <= maxBombs; k++)
+                    sum += solution.getWeight(k) * next[m + k];
+                current[m] = sum;
+            }
+            after[i] = current;
+        }
+
+        // before: the weight of the components before i, by number of bombs in them
+        double[] before = new double[maxBombs + 1];
+        before[0] = 1;
+        int beforeMax = 0;
+        double[] rest = new double[maxBombs + 1];
+        for (int i = 0; i < solved; i++) {
+            MinesweeperSolver.Solution solution = solutions[i];
+            int least = solution.getMinBombs();
+            int most = solution.getMaxBombs();
+
+            // rest[k]: the weight of everything else given k bombs in this component
+            double total = 0;
+            for (int k = least; k <= most; k++) {
+                double sum = 0;
+                for (int j = 0; j <= beforeMax && j + k <= maxBombs; j++)
+                    sum += before[j] * after[i + 1][j + k];
+                rest[k] = sum;
+                total += solution.getWeight(k) * sum;
+            }
+            if (total <= 0)
+                return false;
+
+            int[] cells = solvedComponents[i].cells;
+            for (int cell = 0; cell < cells.length; cell++) {
+                double sum = 0;
+                for (int k = least; k <= most; k++)
+                    sum += solution.getBombWeight(cell, k) * rest[k];
+                probability[cells[cell]] = (float) (sum / total);
+            }
+
+            // add this component to before
+            double[] next = new double[maxBombs + 1];
+            for (int j = 0; j <= beforeMax; j++) {
+                for (int k = least; k <= most; k++)
+                    next[j + k] += before[j] * solution.getWeight(k);
+            }
+            before = next;
+            beforeMax += most;
+        }
+
+        // the others share the bombs the components leave over
+        double total = 0;
+        double leftOver = 0;
+        for (int k = 0; k <= beforeMax; k++) {
+            total += before[k] * choose[k];
+            leftOver += before[k] * choose[k] * (bombs - k);
+        }
+        if (total <= 0)
+            return false;
+        otherProbability = others > 0 ? (float) (leftOver / total / others) : 0;
+        return true;
+    }
+
+    // combines the components as if every unrevealed cell were a bomb with
+    // the same chance, which is close enough once the board is large
+    private void combineByDensity(int bombs, int others) {
+        // keep the odds finite when the board is all or no bombs
+        double density = unrevealed > 0 ? bombs / (double) unrevealed : 0;
+        density = Math.min(Math.max(density, 1e-9), 1 - 1e-9);
+        double logOdds = Math.log(density / (1 - density));
+
+        double expected = 0;
+        for (Component component : components) {
+            MinesweeperSolver.Solution solution = component.solution;
+            if (solution == null)
+                continue;
+
+            // weigh the solutions with k bombs by the odds of k bombs
+            int least = solution.getMinBombs();
+            int most = solution.getMaxBombs();
+            double maxLog = Double.NEGATIVE_INFINITY;
+            for (int k = least; k <= most; k++) {
+                if (solution.getWeight(k) > 0)
+                    maxLog = Math.max(maxLog, Math.log(solution.getWeight(k)) + k * logOdds);
+            }
+            double[] odds = new double[most + 1];
+            double total = 0;
+            for (int k = least; k <= most; k++) {
+                if (solution.getWeight(k) > 0)
+                    odds[k] = Math.exp(Math.log(solution.getWeight(k)) + k * logOdds - maxLog);
+                total += odds[k];
+            }
+
+            int[] cells = component.cells;
+            for (int cell = 0; cell < cells.length; cell++) {
+                double sum = 0;
+                for (int k = least; k <= most; k++)
+                    sum += solution.getBombWeight(cell, k) * odds[k];
+                probability[cells[cell]] = (float) (sum / total);
+                expected += sum / total;
+            }
+        }
+
+        // the others share the bombs the components are expected to leave over
+        otherProbability = others > 0 ? (float) Math.min(Math.max((bombs - expected) / others, 0), 1) : 0;
+    }
+}
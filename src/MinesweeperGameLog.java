@@ -0,0 +1,568 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/*
+ * Journal of the game being played, so it survives the program dying.
+ *
+ * The journal is a snapshot of the board and a log of the moves made since.
+ * Every move is appended to the log; once the log holds SNAPSHOT_RECORDS
+ * moves, or the game changes in a way a move can't describe (a new game, a
+ * loaded board, an undo or redo), a new snapshot is taken and the log
+ * started afresh. Opening the journal rebuilds the game from the snapshot
+ * and replays the log, so recovery reads one board and at most
+ * SNAPSHOT_RECORDS moves however long the game or large the board.
+ *
+ * Nothing is written on the caller's thread: moves and snapshots are queued,
+ * and a committer thread writes whatever has been queued since its last
+ * write and forces it to disk once, so moves made while a force is under
+ * way share the next one. sync() waits until everything queued is on disk.
+ *
+ * A snapshot is written to a temporary file and renamed over the old one,
+ * then the log is replaced by an empty one of the same generation; a log of
+ * any other generation is left over from an older snapshot and ignored.
+ * Every record has a CRC, and replay stops at the first one that is torn or
+ * doesn't match.
+ *
+ * Only one program may use a journal at a time: opening one takes a lock on
+ * a file beside it, held until close(), and fails if another program, or
+ * another MinesweeperGameLog, already holds it. The operating system drops
+ * the lock when a program dies, so a crash doesn't keep the journal locked.
+ */
+public class MinesweeperGameLog {
+    /*
+     * A game rebuilt from the journal.
+     */
+    public static class Recovery {
+        private final MinesweeperBoard board;
+        private final long elapsedMillis;
+        private final String difficulty;
+        private final int flags;
+        private final int replayed;
+
+        Recovery(MinesweeperBoard board, long elapsedMillis, String difficulty, int flags, int replayed) {
+            this.board = board;
+            this.elapsedMillis = elapsedMillis;
+            this.difficulty = difficulty;
+            this.flags = flags;
+            this.replayed = replayed;
+        }
+
+        // public accessors for the game; replayed is the number of moves
+        // replayed from the log on top of the snapshot
+        public MinesweeperBoard getBoard() { return board; }
+        public long getElapsedMillis() { return elapsedMillis; }
+        public String getDifficulty() { return difficulty; }
+        public int getFlags() { return flags; }
+        public int getReplayed() { return replayed; }
+    }
+
+    // flags kept with a game
+    public static final int UNDO_USED = 1;
+    public static final int BOARD_LOADED = 2;
+
+    // moves logged before the log is compacted into a new snapshot
+    public static final int SNAPSHOT_RECORDS = 1024;
+
+    // first bytes of both files, and their format version
+    private static final int MAGIC = 0x4d534a4c;
+    private static final byte FORMAT_VERSION = 1;
+
+    // magic, version and generation
+    private static final int HEADER_BYTES = 4 + 1 + 8;
+
+    // type, index and elapsed time of a move, and the CRC of the three
+    private static final int RECORD_BYTES = 1 + 4 + 8 + 4;
+
+    private final File snapshotFile, logFile, directory;
+
+    // the lock file, and the lock on it held while the journal is open
+    private final FileChannel lockChannel;
+    private FileLock fileLock;
+
+    // the game found when the journal was opened; null if there was none
+    private final Recovery recovery;
+
+    // set by the caller's thread: the generation of the last snapshot queued,
+    // moves logged since, and what the next compacted snapshot keeps
+    private long generation;
+    private int recordsSinceSnapshot;
+    private boolean snapshotTaken;
+    private String difficulty;
+    private int flags;
+
+    // entries queued for the committer: byte[] records, and Snapshots
+    private final Object lock = new Object();
+    private List<Object> pending = new ArrayList<>();
+    private long queued, durable;
+    private IOException failure;
+    private boolean closed;
+
+    // the committer, and the log it appends to; only it touches the files
+    private final Thread committer;
+    private FileChannel logChannel;
+
+    // how much has been written; read by main
+    private volatile long recordsWritten, snapshotsWritten, forces;
+
+    /*
+     * A snapshot queued for the committer.
+     */
+    private static class Snapshot {
+        final long generation;
+        final byte[] bytes;
+
+        Snapshot(long generation, byte[] bytes) {
+            this.generation = generation;
+            this.bytes = bytes;
+        }
+    }
+
+    // constructor for MinesweeperGameLog; rebuilds the game the directory
+    // holds, see getRecovery, and starts the committer. Call snapshot before
+    // the first move is logged. Throws an IOException if the journal is in
+    // use elsewhere
+    public MinesweeperGameLog(File directory) throws IOException {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create journal directory " + directory);
+        snapshotFile = new File(directory, "game.snapshot");
+        logFile = new File(directory, "game.log");
+
+        lockChannel = FileChannel.open(new File(directory, "game.lock").toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE);
+        try {
+            fileLock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // held by another journal in this program
+        }
+        if (fileLock == null) {
+            lockChannel.close();
+            throw new IOException("Journal " + directory + " is in use by another Minesweeper");
+        }
+
+        // a new snapshot must not share its generation with any log left behind
+        long[] generations = new long[2];
+        try {
+            recovery = recover(generations);
+        } catch (IOException | RuntimeException e) {
+            releaseLock();
+            throw e;
+        }
+        generation = Math.max(generations[0], generations[1]);
+
+        committer = new Thread(new Runnable() {
+            public void run() {
+                commit();
+            }
+        }, "minesweeper-journal");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    // public accessor for the game found when the journal was opened; null
+    // if there was none or its snapshot couldn't be read
+    public Recovery getRecovery() { return recovery; }
+
+    // queues a snapshot of the game, replacing the journal; the undo history
+    // isn't kept, so the game recovered is this board and the moves after it
+    public void snapshot(MinesweeperBoard board, long elapsedMillis, String difficulty, int flags)
+            throws IOException {
+        this.difficulty = difficulty;
+        this.flags = flags;
+        generation++;
+        recordsSinceSnapshot = 0;
+        snapshotTaken = true;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + board.getCellCount() / 4);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeHeader(out, generation);
+        out.writeLong(elapsedMillis);
+        out.writeUTF(difficulty);
+        out.writeInt(flags);
+        board.writeTo(out);
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray(), 0, bytes.size());
+        out.writeInt((int) crc.getValue());
+        enqueue(new Snapshot(generation, bytes.toByteArray()));
+    }
+
+    // queues a move just made on board, with the time of the game after it;
+    // takes a snapshot instead once enough moves have been logged
+    public void logMove(MinesweeperBoard board, MinesweeperMove move, long elapsedMillis) throws IOException {
+        if (!snapshotTaken || recordsSinceSnapshot >= SNAPSHOT_RECORDS) {
+            snapshot(board, elapsedMillis, difficulty, flags);
+            return;
+        }
+        recordsSinceSnapshot++;
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES);
+        record.put((byte) move.getType());
+        record.putInt(move.getIndex());
+        record.putLong(elapsedMillis);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, RECORD_BYTES - 4);
+        record.putInt((int) crc.getValue());
+        enqueue(record.array());
+    }
+
+    // waits until everything queued so far is on disk
+    public void sync() throws IOException {
+        synchronized (lock) {
+            long target = queued;
+            try {
+                while (durable < target && failure == null)
+                    lock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for the journal");
+            }
+            if (failure != null)
+                throw new IOException("Journal failed: " + failure.getMessage(), failure);
+        }
+    }
+
+    // writes everything queued, stops the committer and lets the journal be
+    // opened again; the journal keeps the game, to be recovered the next time
+    // it is opened
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        releaseLock();
+        synchronized (lock) {
+            if (failure != null)
+                throw new IOException("Journal failed: " + failure.getMessage(), failure);
+        }
+    }
+
+    // public accessors for how much has been written, and how many forces it took
+    public long getRecordsWritten() { return recordsWritten; }
+    public long getSnapshotsWritten() { return snapshotsWritten; }
+    public long getForces() { return forces; }
+
+    // releases the lock on the journal, as the operating system does when
+    // the program dies
+    private synchronized void releaseLock() {
+        if (fileLock == null)
+            return;
+        try {
+            lockChannel.close();
+        } catch (IOException ignored) {
+        }
+        fileLock = null;
+    }
+
+    // queues an entry for the committer; throws if it has failed or the
+    // journal is closed
+    private void enqueue(Object entry) throws IOException {
+        synchronized (lock) {
+            if (failure != null)
+                throw new IOException("Journal failed: " + failure.getMessage(), failure);
+            if (closed)
+                throw new IOException("Journal is closed");
+            pending.add(entry);
+            queued++;
+            lock.notifyAll();
+        }
+    }
+
+    // the committer's loop: takes everything queued, writes it, and forces
+    // it to disk once, until the journal is closed and nothing is left
+    private void commit() {
+        List<Object> batch = new ArrayList<>();
+        try {
+            while (true) {
+                long target;
+                synchronized (lock) {
+                    while (pending.isEmpty() && !closed)
+                        lock.wait();
+                    if (pending.isEmpty())
+                        break;
+                    List<Object> taken = pending;
+                    pending = batch;
+                    batch = taken;
+                    target = queued;
+                }
+
+                // consecutive records go out in one write
+                ByteBuffer records = ByteBuffer.allocate(batch.size() * RECORD_BYTES);
+                for (Object entry : batch) {
+                    if (entry instanceof Snapshot) {
+                        writeRecords(records);
+                        writeSnapshot((Snapshot) entry);
+                    } else {
+                        records.put((byte[]) entry);
+                    }
+                }
+                writeRecords(records);
+                if (logChannel != null)
+                    logChannel.force(false);
+                forces++;
+                batch.clear();
+
+                synchronized (lock) {
+                    durable = target;
+                    lock.notifyAll();
+                }
+            }
+        } catch (IOException e) {
+            synchronized (lock) {
+                failure = e;
+                lock.notifyAll();
+            }
+        } catch (InterruptedException e) {
+            synchronized (lock) {
+                failure = new InterruptedIOException("Journal interrupted");
+                lock.notifyAll();
+            }
+        } finally {
+            if (logChannel != null) {
+                try {
+                    logChannel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    // appends the records gathered in the buffer to the log, and empties it
+    private void writeRecords(ByteBuffer records) throws IOException {
+        if (records.position() == 0)
+            return;
+        if (logChannel == null)
+            throw new IOException("Move logged before the first snapshot");
+        records.flip();
+        recordsWritten += records.remaining() / RECORD_BYTES;
+        while (records.hasRemaining())
+            logChannel.write(records);
+        records.clear();
+    }
+
+    // writes a snapshot and replaces the log with an empty one of its
+    // generation; the old log stays until the snapshot is on disk, and is
+    // ignored from then on
+    private void writeSnapshot(Snapshot snapshot) throws IOException {
+        if (logChannel != null)
+            logChannel.force(false);
+        replace(snapshotFile, snapshot.bytes);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream(HEADER_BYTES);
+        writeHeader(new DataOutputStream(header), snapshot.generation);
+        replace(logFile, header.toByteArray());
+        if (logChannel != null)
+            logChannel.close();
+        logChannel = FileChannel.open(logFile.toPath(), StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        snapshotsWritten++;
+    }
+
+    // writes a file's new contents beside it, forces them to disk, and
+    // renames them over it
+    private void replace(File file, byte[] contents) throws IOException {
+        File temporary = new File(directory, file.getName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(contents);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(true);
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+    }
+
+    // forces the directory's entries to disk, so a rename survives a crash;
+    // not every platform can open a directory, and there's nothing to do then
+    private void forceDirectory() {
+        try (FileChannel channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+
+    // writes the magic, format version and generation that start both files
+    private static void writeHeader(DataOutput out, long generation) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeByte(FORMAT_VERSION);
+        out.writeLong(generation);
+    }
+
+    // reads the header of a file; returns its generation, or -1 if it isn't one of ours
+    private static long readHeader(DataInput in) throws IOException {
+        if (in.readInt() != MAGIC || in.readByte() != FORMAT_VERSION)
+            return -1;
+        return in.readLong();
+    }
+
+    // rebuilds the game from the snapshot and the moves logged after it;
+    // returns null if there is no readable snapshot. The generations of the
+    // snapshot and log files, or 0, go in generations
+    private Recovery recover(long[] generations) throws IOException {
+        Recovery recovered = null;
+        if (snapshotFile.exists()) {
+            byte[] bytes = Files.readAllBytes(snapshotFile.toPath());
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, Math.max(bytes.length - 4, 0));
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            try {
+                long snapshotGeneration = readHeader(in);
+                generations[0] = Math.max(snapshotGeneration, 0);
+                if (snapshotGeneration >= 0 && bytes.length > HEADER_BYTES + 4
+                        && ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt() == (int) crc.getValue()) {
+                    long elapsedMillis = in.readLong();
+                    String snapshotDifficulty = in.readUTF();
+                    int snapshotFlags = in.readInt();
+                    MinesweeperBoard board = MinesweeperBoard.readFrom(in);
+                    recovered = replay(board, snapshotGeneration, elapsedMillis, snapshotDifficulty, snapshotFlags,
+                            generations);
+                }
+            } catch (EOFException e) {
+                // a snapshot is renamed into place whole, so this one isn't ours
+            } catch (IOException e) {
+                System.err.println("Unable to read journal snapshot: " + e.getMessage());
+            }
+        }
+        if (recovered == null && logFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new FileInputStream(logFile))) {
+                generations[1] = Math.max(readHeader(in), 0);
+            } catch (EOFException e) {
+                // an empty or torn log
+            }
+        }
+        return recovered;
+    }
+
+    // replays the moves in the log on the snapshot's board, if the log
+    // belongs to the snapshot, stopping at the first torn or damaged record
+    private Recovery replay(MinesweeperBoard board, long snapshotGeneration, long elapsedMillis,
+            String snapshotDifficulty, int snapshotFlags, long[] generations) throws IOException {
+        int replayed = 0;
+        if (logFile.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+                long logGeneration = readHeader(in);
+                generations[1] = Math.max(logGeneration, 0);
+                byte[] record = new byte[RECORD_BYTES];
+                CRC32 crc = new CRC32();
+                while (logGeneration == snapshotGeneration) {
+                    in.readFully(record);
+                    ByteBuffer buffer = ByteBuffer.wrap(record);
+                    int type = buffer.get();
+                    int index = buffer.getInt();
+                    long moveMillis = buffer.getLong();
+                    crc.reset();
+                    crc.update(record, 0, RECORD_BYTES - 4);
+                    if (buffer.getInt() != (int) crc.getValue() || index < 0 || index >= board.getCellCount())
+                        break;
+                    MinesweeperMove move = type == MinesweeperMove.FLAG ? MinesweeperMove.flag(index)
+                            : MinesweeperMove.reveal(index);
+                    move.applyTo(board);
+                    elapsedMillis = moveMillis;
+                    replayed++;
+                }
+            } catch (EOFException e) {
+                // the end of the log, or a record torn by a crash
+            }
+        }
+        return new Recovery(board, elapsedMillis, snapshotDifficulty, snapshotFlags, replayed);
+    }
+
+    /* *************************************************************************
+     *                         MAIN METHOD
+     * *************************************************************************
+     */
+    // checks that a game is recovered after the journal is abandoned part
+    // way, with and without a torn last record, and reports how many moves
+    // share each force when they are logged faster than the disk forces.
+    // Takes the directory to use, a temporary one by default
+    public static void main(String[] args) throws IOException {
+        File directory = args.length > 0 ? new File(args[0])
+                : Files.createTempDirectory("minesweeper-journal").toFile();
+        int rows = 200, columns = 200, bombs = 6000;
+        int moves = 5000;
+
+        // play random moves, logging them all, and keep a copy of the game
+        MinesweeperGameLog journal = new MinesweeperGameLog(directory);
+        MinesweeperBoard board = new MinesweeperBoard(new MinesweeperLayout(rows, columns, bombs, 42L));
+        journal.snapshot(board, 0, "Custom", 0);
+        java.util.Random random = new java.util.Random(7);
+        int made = 0;
+        long start = System.nanoTime();
+        for (int i = 0; made < moves && i < 100 * moves; i++) {
+            int index = random.nextInt(board.getCellCount());
+            MinesweeperMove move = random.nextInt(4) == 0 || board.getLayout().isBomb(index)
+                    ? MinesweeperMove.flag(index) : MinesweeperMove.reveal(index);
+            if (board.getStatus() != MinesweeperBoard.PLAYING || !move.applyTo(board))
+                continue;
+            journal.logMove(board, move, made);
+            made++;
+        }
+        journal.sync();
+        long nanos = System.nanoTime() - start;
+        System.out.printf("%d moves logged in %.1f ms: %d records and %d snapshots in %d forces, "
+                + "%.1f moves per force%n", made, nanos / 1e6, journal.getRecordsWritten(),
+                journal.getSnapshotsWritten(), journal.getForces(), (double) made / journal.getForces());
+
+        // the journal can't be opened again while it is in use
+        boolean ok = true;
+        try {
+            new MinesweeperGameLog(directory).close();
+            System.out.println("journal in use: OPENED TWICE");
+            ok = false;
+        } catch (IOException e) {
+            System.out.println("journal in use: refused");
+        }
+
+        // abandon the journal without closing it, the way a crash would
+        journal.releaseLock();
+        ok &= check(directory, board, made - 1, "after a crash");
+
+        // tear the last record in half
+        long length = new File(directory, "game.log").length();
+        if (length > HEADER_BYTES) {
+            try (RandomAccessFile file = new RandomAccessFile(new File(directory, "game.log"), "rw")) {
+                file.setLength(length - RECORD_BYTES / 2);
+            }
+            MinesweeperGameLog reopened = new MinesweeperGameLog(directory);
+            Recovery recovered = reopened.getRecovery();
+            System.out.printf("torn last record: %d moves replayed, last move %s%n", recovered.getReplayed(),
+                    recovered.getElapsedMillis() == made - 2 ? "dropped" : "NOT DROPPED");
+            ok &= recovered.getElapsedMillis() == made - 2;
+            reopened.close();
+        }
+        if (!ok)
+            System.exit(1);
+    }
+
+    // opens the journal in directory and checks it recovers the board, with
+    // the time of the move logged last
+    private static boolean check(File directory, MinesweeperBoard expected, long elapsedMillis, String when)
+            throws IOException {
+        long start = System.nanoTime();
+        MinesweeperGameLog journal = new MinesweeperGameLog(directory);
+        long nanos = System.nanoTime() - start;
+        Recovery recovered = journal.getRecovery();
+        MinesweeperBoard board = recovered.getBoard();
+        boolean same = board.getStatus() == expected.getStatus() && recovered.getElapsedMillis() == elapsedMillis;
+        for (int index = 0; same && index < board.getCellCount(); index++)
+            same = board.getState(index) == expected.getState(index);
+        System.out.printf("%s: %s, %d moves replayed in %.1f ms%n", when, same ? "recovered" : "NOT RECOVERED",
+                recovered.getReplayed(), nanos / 1e6);
+        journal.close();
+        return same;
+    }
+}
@@ -1,21 +1,36 @@
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
-import java.util.LinkedList;
-import java.util.Random;
 
 /*
  * Class representing the Grid of tiles in Minesweeper
+ *
+ * The game itself is played on a MinesweeperBoard; the grid listens to the
+ * board and draws it through a MinesweeperBoardRenderer with the game's
+ * icons. The tiles used to be a JButton each, which repainted themselves
+ * through the look and feel on every change; now a move only redraws the
+ * cells it changed onto the renderer's offscreen tiles and repaints their
+ * part of the grid, so it costs the same on Expert as on Beginner.
+ *
+ * Mouse events come from the grid itself; getIndexAt tells which cell was
+ * clicked, and isPlayable whether the cell still responds to input.
  */
-public class MinesweeperGrid extends JPanel {
+public class MinesweeperGrid extends JPanel implements MinesweeperBoardListener {
+    // moves Edit > Undo can take back; every board the grid shows keeps them
+    private static final int UNDO_DEPTH = 10000;
+
     // number of rows, columns, and bombs in the grid
     private int rows, columns, bombs;
 
-    // MouseListener to have the grid respond to mouse events
-    private MouseListener listener;
+    // the board holding the state of the current game, and the renderer drawing it
+    private MinesweeperBoard board;
+    private MinesweeperBoardRenderer renderer;
 
-    // 2D-array of tiles
-    private MinesweeperTile[][] tiles;
+    // whether each tile shows its chance of being a bomb, and the frontier
+    // computing the chances; null while they are not shown
+    private boolean showProbabilities;
+    private MinesweeperFrontier frontier;
 
     // MinesweeperGrid constructor
     public MinesweeperGrid(int rows, int columns, int bombs, MouseListener listener) {
@@ -24,256 +39,171 @@ public class MinesweeperGrid extends JPanel {
         this.columns = columns;
         this.bombs = bombs;
 
-        // set the MouseListener
-        this.listener = listener;
-
-        // instantiates all of the tiles
-        tiles = createTiles();
-
-        // specifies the layout for the grid
-        this.setLayout(new GridLayout(rows, columns, 0, 0));
+        // places bombs on a new board and has the grid respond to the mouse
+        setBoard();
+        addListener(listener);
+    }
 
-        // places bombs on the grid, sets numbers of adjacent bombs for tiles,
-        // and adds the tiles to the grid
-        setBombs();
-        setNumAdjacentBombs();
-        addTiles();
+    // constructor for a grid showing a board that may already be part way
+    // through, e.g. one loaded by MinesweeperBoardIO; the board must be
+    // square. The renderer shows the cells already revealed or flagged, and
+    // the end of the game
+    public MinesweeperGrid(MinesweeperBoard board, MouseListener listener) {
+        rows = board.getRows();
+        columns = board.getColumns();
+        bombs = board.getLayout().getBombs();
+        setBoard(board);
+        addListener(listener);
     }
 
     // resets the grid to an initial, playable configuration of the same size
     public void resetGrid() {
-        // remove all the tiles and set all tiles back to initial
-        // tile configuration
-        this.removeAll();
-        resetTiles();
-
-        // places bombs, sets number of adjacent bombs for tiles, and
-        // adds tiles to the grid, then redraws the grid
-        setBombs();
-        setNumAdjacentBombs();
-        addTiles();
+        // places bombs on a new board, then redraws the grid
+        setBoard();
+        updateProbabilities();
         this.repaint();
     }
 
-    // reveals all of the bombs on the grid; called when a user
-    // clicks on a bomb tile
-    public void revealBombs() {
-        // iterates through all of the tiles
-        for (int row = 0; row < rows; row++) {
-            for (int col = 0; col < columns; col++) {
-                if (tiles[row][col].isFlag() && !tiles[row][col].isBomb()) {
-                    // if the bomb is a flag that doesn't cover a bomb,
-                    // reveal it as a "false" flag
-                    tiles[row][col].revealFalseFlag();
-                } else if (tiles[row][col].isBomb() && !tiles[row][col].isFlag()) {
-                    // if it is a bomb and the user DID NOT mark it as a bomb,
-                    // reveal it as a bomb
-                    tiles[row][col].reveal();
-                }
-                // make sure these tiles no longer respond to input
-                tiles[row][col].removeMouseListener(listener);
-            }
-        }
-    }
-
-    // fills in blank tiles surrounding a clicked tile
-    // returns the number of tiles flipped by the function for bookkeeping
-    // in Minesweeper class
-    public int floodfill(MinesweeperTile clickedTile) {
-        // coordinates of the current tile being checked
-        int[] coords;
-        int row;
-        int col;
-
-        // coordinates of surrounding tiles to look at
-        int[] rowsToCheck;
-        int[] colsToCheck;
-
-        // the actual tile being checked
-        MinesweeperTile toCheck;
-
-        // tracks the number of revealed tiles
-        int tilesFlipped = 0;
+    // public accessor for the board of the current game
+    public MinesweeperBoard getBoard() { return board; }
 
-        // array denoting which tiles have been checked; all values initialized to false
-        // function works without this, but it improves the speed of the function
-        // in cases where a large number of tiles need to be revealed
-        boolean[][] checked = new boolean[rows][columns];
-        for (int i = 0; i < rows; i++) {
-            for (int j = 0; j < columns; j++) {
-                checked[i][j] = false;
-            }
-        }
-
-        // The LinkedList acts as a Queue of buttons to check, preventing
-        // the need for recursive function calls; the Queue is initialized
-        // with the tile that was clicked
-        LinkedList<MinesweeperTile> tilesToCheck = new LinkedList<>();
-        tilesToCheck.add(clickedTile);
-
-        // while there are still tiles in the queue
-        while (tilesToCheck.size() != 0) {
-            // get the head of the queue to check, reveal it,
-            // increment tilesFlipped and remove the MouseListener
-            toCheck = tilesToCheck.poll();
-            toCheck.reveal();
-            tilesFlipped++;
-            toCheck.removeMouseListener(listener);
-
-            // get the tiles coordinates
-            coords = toCheck.getCoords();
-            row = coords[0];
-            col = coords[1];
-
-            // set the coordinates to check
-            rowsToCheck = new int[] { row - 1, row, row + 1 };
-            colsToCheck = new int[] { col - 1, col, col + 1 };
-
-            // check all the tiles surrounding the current tile
-            for (int r : rowsToCheck) {
-                for (int c : colsToCheck) {
-                    // ignore cases where r or c is outside of the grid, the index is already checked,
-                    // or the tile is already revealed
-                    if (r < 0 || c < 0 || r >= rows || c >= columns || checked[r][c] || tiles[r][c].isRevealed())
-                        continue;
-
-                    // case where the surrounding tile will have a number;
-                    // these tiles do not need to be added to queue of tiles to check
-                    if (tiles[r][c].getNumAdjacentBombs() > 0) {
-                        // reveal the tile and increment number of tilesFlipped
-                        tiles[r][c].reveal();
-                        if (!(tiles[r][c].isFlag() && !tiles[r][c].isBomb()))
-                            tilesFlipped++;
-                        // remove the MouseListener
-                        tiles[r][c].removeMouseListener(listener);
-                    }
-
-                    // add blank tiles to the queue
-                    if (tiles[r][c].getNumAdjacentBombs() == 0)
-                        tilesToCheck.add(tiles[r][c]);
-
-                    // set checked of this index to true to speed up function
-                    checked[r][c] = true;
-                }
-            }
-        }
-
-        // returns the number of tiles flipped in the function
-        return tilesFlipped;
+    // shows or hides the chance of a bomb on every unrevealed tile
+    public void setShowProbabilities(boolean show) {
+        showProbabilities = show;
+        if (show && frontier == null)
+            frontier = MinesweeperBackgroundEstimates.newFrontier(board);
+        updateProbabilities();
+        repaint();
     }
 
-    // the board is cleared: remove all MouseListeners
-    // and any bomb tiles that have not been marked with a flag
-    // will have a flag set
-    public void allCleared() {
-        // iterate through all the tiles to ensure all MouseListeners are removed
-        for (int row = 0; row < rows; row++) {
-            for (int col = 0; col < columns; col++) {
-                tiles[row][col].removeMouseListener(listener);
-                if (!tiles[row][col].isFlag() && tiles[row][col].isBomb()) {
-                    // set a flag on unflagged bombs
-                    tiles[row][col].setFlag();
+    // brings the chances shown up to date with the board; called after every
+    // move. Components too large to enumerate are estimated in the background
+    // and their tiles are shaded again once the estimate arrives
+    public void updateProbabilities() {
+        if (!showProbabilities)
+            return;
+        if (board.getStatus() == MinesweeperBoard.PLAYING) {
+            final MinesweeperFrontier updated = frontier;
+            updated.update();
+            MinesweeperBackgroundEstimates.estimate(updated, new Runnable() {
+                public void run() {
+                    if (frontier == updated)
+                        repaint();
                 }
-            }
+            });
         }
+        // the chances may have changed anywhere, and come off once the game is over
+        repaint();
     }
 
-    // Resets all tiles to initial configuration
-    private void resetTiles() {
-        // removes MouseListener for every tile and resets
-        // variables for every tile
-        for (int row = 0; row < rows; row++) {
-            for (int col = 0; col < columns; col++) {
-                tiles[row][col].removeMouseListener(listener);
-                tiles[row][col].resetVariables();
-            }
-        }
+    // returns the index of the cell at a point on the grid, or -1 if the
+    // point is outside the board
+    public int getIndexAt(Point point) {
+        int size = cellSize();
+        if (size == 0)
+            return -1;
+        int x = point.x - originX(size);
+        int y = point.y - originY(size);
+        if (x < 0 || y < 0 || x >= columns * size || y >= rows * size)
+            return -1;
+        return (y / size) * columns + x / size;
     }
 
-    // initializes all the tiles for the grid
-    private MinesweeperTile[][] createTiles() {
-        // the Tiles for the grid
-        MinesweeperTile[][] theTiles = new MinesweeperTile[rows][columns];
-
-        // initialize all the tiles
-        for (int row = 0; row < rows; row++) {
-            for (int col = 0; col < columns; col++) {
-                theTiles[row][col] = new MinesweeperTile(row, col);
-            }
-        }
+    // returns true if the cell at index still responds to clicks: it is not
+    // revealed and the game is not over
+    public boolean isPlayable(int index) {
+        return board.getStatus() == MinesweeperBoard.PLAYING && board.getState(index) != MinesweeperBoard.REVEALED;
+    }
 
-        // returns all the tiles for the grid
-        return theTiles;
+    // returns the chance of a bomb under the mouse as a tooltip, if it is shown
+    public String getToolTipText(MouseEvent e) {
+        int index = getIndexAt(e.getPoint());
+        if (!showingProbabilities() || index < 0 || board.getState(index) == MinesweeperBoard.REVEALED)
+            return null;
+        String text = Math.round(frontier.getProbability(index) * 100) + "% bomb";
+        float uncertainty = frontier.getUncertainty(index);
+        if (uncertainty >= 0.005f)
+            text += " (\u00b1" + Math.round(uncertainty * 100) + "%)";
+        return text;
     }
 
-    // places bombs on the grid
-    private void setBombs() {
-        // Random number generator for generating indices for bombs
-        Random RNG = new Random(System.currentTimeMillis());
+    // repaints the part of the grid showing a cell after the board changes it
+    public void cellChanged(int index, byte oldState) {
+        int size = cellSize();
+        repaint(originX(size) + (index % columns) * size, originY(size) + (index / columns) * size, size, size);
+    }
 
-        // The random indices where the bomb will be planted
-        int randRow = RNG.nextInt(rows);
-        int randCol = RNG.nextInt(columns);
+    // repaints the whole grid once the game is over, or again once it isn't,
+    // since the bombs show while it is lost
+    public void gameStatusChanged(int status) {
+        repaint();
+        updateProbabilities();
+    }
 
-        // plant bombs number of bombs
-        for (int i = 0; i < bombs; i++) {
-            // get new random indices if there happens to be a bomb
-            // already planted at this generated index pair
-            while (tiles[randRow][randCol].isBomb()) {
-                randRow = RNG.nextInt(rows);
-                randCol = RNG.nextInt(columns);
+    // draws the board, centered, then the chance of a bomb over the
+    // unrevealed tiles if it is shown
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        int size = cellSize();
+        if (size == 0)
+            return;
+        int x = originX(size);
+        int y = originY(size);
+        renderer.setCellSize(size);
+        renderer.paint(g, x, y);
+        if (!showingProbabilities())
+            return;
+
+        // only the tiles inside the clip are shaded again
+        Rectangle clip = g.getClipBounds();
+        int firstRow = Math.max((clip.y - y) / size, 0);
+        int lastRow = Math.min((clip.y + clip.height - y - 1) / size, rows - 1);
+        int firstCol = Math.max((clip.x - x) / size, 0);
+        int lastCol = Math.min((clip.x + clip.width - x - 1) / size, columns - 1);
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                int index = row * columns + col;
+                if (board.getState(index) == MinesweeperBoard.REVEALED)
+                    continue;
+                g.setColor(MinesweeperBoardRenderer.probabilityColor(frontier.getProbability(index)));
+                g.fillRect(x + col * size, y + row * size, size, size);
             }
-
-            // place a bomb on the generated random index
-            tiles[randRow][randCol].placeBomb();
         }
     }
 
-    // has the tiles check for adjacent bombs
-    private void setNumAdjacentBombs() {
-        // for every tile
-        for (int row = 0; row < rows; row++) {
-            for (int col = 0; col < columns; col++) {
-                // if the tile is a bomb, move to the next tile
-                if (tiles[row][col].isBomb()) continue;
-
-                // otherwise set its number of adjacent bombs
-                checkAdjTiles(row, col);
-            }
-        }
+    // returns true if the chances are shown on the tiles
+    private boolean showingProbabilities() {
+        return showProbabilities && board.getStatus() == MinesweeperBoard.PLAYING;
     }
 
-    // set the number of adjacent bombs for non-bomb tiles
-    private void checkAdjTiles(int row, int col) {
-        // coordinates for all surrounding tiles
-        int[] rowsToCheck = new int[] { row - 1, row, row + 1 };
-        int[] colsToCheck = new int[] { col - 1, col, col + 1 };
+    // returns the pixels per cell at which the whole board fits the grid
+    private int cellSize() {
+        return Math.max(Math.min(getWidth() / columns, getHeight() / rows), 0);
+    }
 
-        // for all surrounding tiles
-        for (int r : rowsToCheck) {
-            for (int c : colsToCheck) {
-                // ignore cases where r or c are outside of the grid, and the case
-                // where r and c correspond to the current tile
-                if ((r == row && c == col) || r < 0 || c < 0 || r >= rows || c >= columns)
-                    continue;
+    // returns where the board's top left corner is, centering it on the grid
+    private int originX(int size) { return (getWidth() - columns * size) / 2; }
+    private int originY(int size) { return (getHeight() - rows * size) / 2; }
 
-                // if the surrounding tile corresponding to r and c is a bomb, increment
-                // the number of surrounding bombs for the tile corresponding to row and column
-                if (tiles[r][c].isBomb())
-                    tiles[row][col].increaseAdjacentBombs();
-            }
-        }
+    // has the grid, and its tooltips, respond to the mouse
+    private void addListener(MouseListener listener) {
+        if (listener != null)
+            addMouseListener(listener);
+        ToolTipManager.sharedInstance().registerComponent(this);
     }
 
-    // add all of the tiles to the grid
-    private void addTiles() {
-
-        for (int row = 0; row < rows; row++) {
-            for (int col = 0; col < columns; col++) {
-                tiles[row][col].addMouseListener(listener);
+    // starts a new board with randomly placed bombs
+    private void setBoard() {
+        setBoard(new MinesweeperBoard(new MinesweeperLayout(rows, columns, bombs, System.nanoTime())));
+    }
 
-                this.add(tiles[row][col]);
-            }
-        }
+    // shows the given board from now on
+    private void setBoard(MinesweeperBoard newBoard) {
+        board = newBoard;
+        board.setUndoDepth(UNDO_DEPTH);
+        renderer = new MinesweeperBoardRenderer(board);
+        renderer.setIcons(true);
+        board.addListener(this);
+        frontier = showProbabilities ? MinesweeperBackgroundEstimates.newFrontier(board) : null;
     }
 }
@@ -0,0 +1,42 @@
+import javax.swing.*;
+import java.awt.Image;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Loads the images in the resources folder, each one only once and only
+ * when it is first needed.
+ *
+ * Every tile used to decode its own copy of concave.jpg, and a new flag or
+ * bomb image on every reveal; now they all share one ImageIcon per image.
+ */
+public class MinesweeperIcons {
+    // names of the images in the resources folder
+    public static final String SMILEY = "resources/smiley.jpeg";
+    public static final String WORRIED = "resources/worried.jpg";
+    public static final String GAME_OVER = "resources/frowny.jpeg";
+    public static final String VICTORY = "resources/victory.jpeg";
+    public static final String BOOM = "resources/boom.jpg";
+    public static final String CONCAVE = "resources/concave.jpg";
+    public static final String BOMB = "resources/bomb.jpeg";
+    public static final String FLAG = "resources/flag.jpg";
+    public static final String FALSE_FLAG = "resources/falseFlag.jpeg";
+
+    // icons loaded so far, keyed by name
+    private static final Map<String, Icon> icons = new HashMap<>();
+
+    // returns the icon for an image, loading it the first time it is asked for
+    public static synchronized Icon get(String name) {
+        Icon icon = icons.get(name);
+        if (icon == null) {
+            icon = new ImageIcon(MinesweeperIcons.class.getClassLoader().getResource(name));
+            icons.put(name, icon);
+        }
+        return icon;
+    }
+
+    // returns the image of an icon, e.g. for drawing it at another size
+    public static Image getImage(String name) {
+        return ((ImageIcon) get(name)).getImage();
+    }
+}
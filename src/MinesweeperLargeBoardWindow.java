@@ -0,0 +1,130 @@
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+
+/*
+ * A window for boards too large for the tile grid, e.g. 1000x1000.
+ *
+ * The board is shown in a MinesweeperZoomPanel with a MinesweeperMinimap
+ * beside it. Can be opened from the Game menu or run on its own:
+ *
+ *     java MinesweeperLargeBoardWindow [rows] [columns] [bombs] [square|torus|hex]
+ */
+public class MinesweeperLargeBoardWindow extends JFrame {
+    // the board being played
+    private final MinesweeperBoard board;
+
+    // line above the board with the bombs left and the game status
+    private final JLabel statusLabel;
+
+    // computes the probability overlay; created the first time it is shown
+    private MinesweeperFrontier frontier;
+
+    // constructor for MinesweeperLargeBoardWindow
+    public MinesweeperLargeBoardWindow(int rows, int columns, int bombs) {
+        this(MinesweeperTopology.SQUARE, rows, columns, bombs);
+    }
+
+    public MinesweeperLargeBoardWindow(int kind, int rows, int columns, int bombs) {
+        this(new MinesweeperBoard(new MinesweeperLayout(topology(kind, rows, columns, bombs), bombs,
+                System.nanoTime())));
+    }
+
+    // shows a board that may already be part way through, e.g. one loaded by MinesweeperBoardIO
+    public MinesweeperLargeBoardWindow(MinesweeperBoard board) {
+        super("Minesweeper Redux: " + board.getRows() + "x" + board.getColumns()
+                + (board.getLayout().getTopology().getKind() == MinesweeperTopology.SQUARE ? ""
+                        : " " + MinesweeperTopology.kindName(board.getLayout().getTopology().getKind())));
+
+        this.board = board;
+        int rows = board.getRows();
+        int columns = board.getColumns();
+        MinesweeperMipmap mipmap = new MinesweeperMipmap(board);
+        final MinesweeperZoomPanel zoomPanel = new MinesweeperZoomPanel(board, mipmap);
+        MinesweeperMinimap minimap = new MinesweeperMinimap(mipmap, zoomPanel, rows, columns);
+
+        statusLabel = new JLabel();
+        statusLabel.setBorder(BorderFactory.createEmptyBorder(4, 8, 4, 8));
+        updateStatus();
+
+        // the status changes with every move
+        zoomPanel.addViewListener(new ChangeListener() {
+            public void stateChanged(ChangeEvent e) {
+                updateStatus();
+            }
+        });
+
+        // shows or hides the chance of a bomb on every unrevealed cell
+        final JCheckBox probabilityBox = new JCheckBox("Show probabilities");
+        probabilityBox.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                if (probabilityBox.isSelected() && frontier == null)
+                    frontier = MinesweeperBackgroundEstimates.newFrontier(board);
+                zoomPanel.setFrontier(probabilityBox.isSelected() ? frontier : null);
+            }
+        });
+
+        JPanel minimapPanel = new JPanel(new BorderLayout());
+        minimapPanel.add(minimap, BorderLayout.NORTH);
+        minimapPanel.add(probabilityBox, BorderLayout.CENTER);
+        minimapPanel.add(new JLabel("<html>Wheel: zoom<br>Drag: scroll<br>Right click: flag</html>"),
+                BorderLayout.SOUTH);
+        minimapPanel.setBorder(BorderFactory.createEmptyBorder(4, 4, 4, 4));
+
+        add(statusLabel, BorderLayout.NORTH);
+        add(zoomPanel, BorderLayout.CENTER);
+        add(minimapPanel, BorderLayout.EAST);
+
+        // show the whole board the first time the panel has a size
+        zoomPanel.addComponentListener(new ComponentAdapter() {
+            private boolean fitted;
+
+            public void componentResized(ComponentEvent e) {
+                if (!fitted && zoomPanel.getWidth() > 0) {
+                    fitted = true;
+                    zoomPanel.zoomToFit();
+                }
+            }
+        });
+
+        setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE);
+        pack();
+        setLocationRelativeTo(null);
+    }
+
+    // checks the dimensions before building a topology for them
+    private static MinesweeperTopology topology(int kind, int rows, int columns, int bombs) {
+        MinesweeperLayout.checkDimensions(rows, columns, bombs);
+        return new MinesweeperTopology(kind, rows, columns);
+    }
+
+    // shows the bombs left and whether the game is over
+    private void updateStatus() {
+        String text = "Bombs: " + board.getFlagsRemaining() + "    Tiles left: " + board.getTilesToClear();
+        if (board.getStatus() != MinesweeperBoard.PLAYING)
+            text += "    " + MinesweeperBoard.statusName(board.getStatus());
+        statusLabel.setText(text);
+    }
+
+    public static void main(String[] args) {
+        final int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        final int columns = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        final int bombs = args.length > 2 ? Integer.parseInt(args[2]) : rows * columns / 6;
+        final int kind = args.length > 3 ? MinesweeperTopology.parseKind(args[3]) : MinesweeperTopology.SQUARE;
+        MinesweeperLayout.checkDimensions(rows, columns, bombs);
+        MinesweeperFootprint.checkBudget(MinesweeperFootprint.LARGE_WINDOW, rows, columns);
+
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                MinesweeperLargeBoardWindow window = new MinesweeperLargeBoardWindow(kind, rows, columns, bombs);
+                window.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
+                window.setVisible(true);
+            }
+        });
+    }
+}
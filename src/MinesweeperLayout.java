@@ -0,0 +1,200 @@
+import java.util.BitSet;
+import java.util.Random;
+
+/*
+ * Class representing where the bombs are on a board.
+ *
+ * A layout never changes once it is built, so any number of boards
+ * (and any number of threads) can share one. Cells are numbered in
+ * row-major order: index = row * columns + col. Which cells are neighbors
+ * is up to the layout's MinesweeperTopology.
+ */
+public class MinesweeperLayout {
+    // number of rows, columns, and bombs in the layout
+    private final int rows, columns, bombs;
+
+    // which cells are neighbors
+    private final MinesweeperTopology topology;
+
+    // seed used to place the bombs, so the same layout can be rebuilt later;
+    // layouts with bombs placed by hand have none
+    private final long seed;
+    private final boolean seeded;
+
+    // number of bombs adjacent to each cell; bombs are marked with -1
+    // just like MinesweeperTile used to do
+    private final byte[] adjacent;
+
+    // builds a square layout with bombs placed randomly from the given seed
+    public MinesweeperLayout(int rows, int columns, int bombs, long seed) {
+        this(topology(MinesweeperTopology.SQUARE, rows, columns, bombs), bombs, seed);
+    }
+
+    // builds a layout of the given shape with bombs placed randomly from the given seed
+    public MinesweeperLayout(MinesweeperTopology topology, int bombs, long seed) {
+        checkDimensions(topology.getRows(), topology.getColumns(), bombs);
+
+        // initialize number of rows, columns, bombs, and the seed
+        this.topology = topology;
+        this.rows = topology.getRows();
+        this.columns = topology.getColumns();
+        this.bombs = bombs;
+        this.seed = seed;
+        seeded = true;
+
+        adjacent = new byte[rows * columns];
+
+        // places bombs on the layout and sets numbers of adjacent bombs
+        setBombs();
+        setNumAdjacentBombs();
+    }
+
+    // builds a layout of the given shape with a bomb on every cell set in bombs,
+    // e.g. a puzzle loaded by MinesweeperBoardIO
+    public MinesweeperLayout(MinesweeperTopology topology, BitSet bombs) {
+        this(topology, marks(topology, bombs));
+    }
+
+    // builds a layout with a bomb on every cell marked negative in cells;
+    // the array becomes the layout's own, so huge layouts aren't copied
+    MinesweeperLayout(MinesweeperTopology topology, byte[] cells) {
+        if (cells.length != topology.getCellCount())
+            throw new IllegalArgumentException("Expected " + topology.getCellCount() + " cells, not " + cells.length);
+        int bombCount = 0;
+        for (int index = 0; index < cells.length; index++) {
+            if (cells[index] < 0) {
+                cells[index] = -1;
+                bombCount++;
+            }
+        }
+        checkDimensions(topology.getRows(), topology.getColumns(), bombCount);
+
+        this.topology = topology;
+        this.rows = topology.getRows();
+        this.columns = topology.getColumns();
+        this.bombs = bombCount;
+        seed = 0;
+        seeded = false;
+
+        adjacent = cells;
+        setNumAdjacentBombs();
+    }
+
+    // public accessors for the dimensions of the layout
+    public int getRows() { return rows; }
+    public int getColumns() { return columns; }
+    public int getBombs() { return bombs; }
+    public int getCellCount() { return adjacent.length; }
+    public MinesweeperTopology getTopology() { return topology; }
+
+    // public accessors for the seed the bombs were placed with, and whether
+    // there is one; the seed is 0 for bombs placed by hand
+    public long getSeed() { return seed; }
+    public boolean isSeeded() { return seeded; }
+
+    // public accessor to check if the cell at index is a bomb
+    public boolean isBomb(int index) { return adjacent[index] < 0; }
+
+    // public accessor for the number of bombs adjacent to the cell at index;
+    // returns -1 for bombs
+    public int getNumAdjacentBombs(int index) { return adjacent[index]; }
+
+    // returns the 3BV of the layout: the least number of clicks needed to clear
+    // it, which is one click per blank area plus one per number not touching a blank area
+    public int get3BV() {
+        int cells = adjacent.length;
+        boolean[] marked = new boolean[cells];
+        int[] queue = new int[cells];
+        int clicks = 0;
+
+        // one click for each blank area; flood the area and the numbers around it
+        for (int start = 0; start < cells; start++) {
+            if (adjacent[start] != 0 || marked[start])
+                continue;
+            clicks++;
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = start;
+            marked[start] = true;
+            while (head < tail) {
+                int index = queue[head++];
+                for (int i = topology.neighborStart(index), end = topology.neighborEnd(index); i < end; i++) {
+                    int neighbor = index + topology.neighborOffset(i);
+                    if (marked[neighbor])
+                        continue;
+                    marked[neighbor] = true;
+                    if (adjacent[neighbor] == 0)
+                        queue[tail++] = neighbor;
+                }
+            }
+        }
+
+        // one click for every number the blank areas didn't reveal
+        for (int index = 0; index < cells; index++) {
+            if (adjacent[index] > 0 && !marked[index])
+                clicks++;
+        }
+        return clicks;
+    }
+
+    // throws an IllegalArgumentException if a board of this size can't be played
+    public static void checkDimensions(int rows, int columns, int bombs) {
+        if (rows < 1 || columns < 1)
+            throw new IllegalArgumentException("Board must have at least one row and column");
+        if ((long) rows * columns > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Board is too large: " + rows + "x" + columns);
+        if (bombs < 0 || bombs >= rows * columns)
+            throw new IllegalArgumentException("Invalid number of bombs: " + bombs);
+    }
+
+    // checks the dimensions before building a topology for them
+    private static MinesweeperTopology topology(int kind, int rows, int columns, int bombs) {
+        checkDimensions(rows, columns, bombs);
+        return new MinesweeperTopology(kind, rows, columns);
+    }
+
+    // marks the cells set in bombs with -1
+    private static byte[] marks(MinesweeperTopology topology, BitSet bombs) {
+        if (bombs.length() > topology.getCellCount())
+            throw new IllegalArgumentException("Bomb outside the board: " + (bombs.length() - 1));
+        byte[] cells = new byte[topology.getCellCount()];
+        for (int index = bombs.nextSetBit(0); index >= 0; index = bombs.nextSetBit(index + 1))
+            cells[index] = -1;
+        return cells;
+    }
+
+    // places bombs on the layout
+    private void setBombs() {
+        // Random number generator for generating indices for bombs
+        Random RNG = new Random(seed);
+        int cells = adjacent.length;
+
+        // plant bombs number of bombs
+        for (int i = 0; i < bombs; i++) {
+            // get a new random index if there happens to be a bomb
+            // already planted at the generated index
+            int index = RNG.nextInt(cells);
+            while (adjacent[index] < 0)
+                index = RNG.nextInt(cells);
+
+            // place a bomb on the generated random index
+            adjacent[index] = -1;
+        }
+    }
+
+    // sets the number of adjacent bombs for every cell that isn't a bomb
+    private void setNumAdjacentBombs() {
+        for (int index = 0; index < adjacent.length; index++) {
+            // if the cell is a bomb, move to the next cell
+            if (adjacent[index] < 0) continue;
+
+            // count the bombs in all surrounding cells
+            int count = 0;
+            for (int i = topology.neighborStart(index), end = topology.neighborEnd(index); i < end; i++) {
+                if (adjacent[index + topology.neighborOffset(i)] < 0)
+                    count++;
+            }
+            adjacent[index] = (byte) count;
+        }
+    }
+}
@@ -0,0 +1,245 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Class keeping the best times of every game won, per difficulty.
+ *
+ * Every win is appended to a log file and never rewritten. In memory, the
+ * times for each difficulty are kept in primitive arrays with a sorted index,
+ * so top-N and percentile queries are binary searches and copies even with
+ * millions of entries. New entries are only sorted into the index the next
+ * time it is queried.
+ */
+public class MinesweeperLeaderboard {
+    /*
+     * A single game won.
+     */
+    public static class Entry {
+        private final long timeMillis, seed, date;
+        private final float bbbvPerSecond;
+
+        Entry(long timeMillis, float bbbvPerSecond, long seed, long date) {
+            this.timeMillis = timeMillis;
+            this.bbbvPerSecond = bbbvPerSecond;
+            this.seed = seed;
+            this.date = date;
+        }
+
+        // public accessors for the entry
+        public long getTimeMillis() { return timeMillis; }
+        public float get3BVPerSecond() { return bbbvPerSecond; }
+        public long getSeed() { return seed; }
+        public long getDate() { return date; }
+    }
+
+    /*
+     * All the entries for one difficulty.
+     */
+    private static class Index {
+        // entries in the order they were added
+        long[] times = new long[16];
+        float[] rates = new float[16];
+        long[] seeds = new long[16];
+        long[] dates = new long[16];
+        int size;
+
+        // sort keys (time in the high 32 bits, entry number in the low 32 bits);
+        // the first sortedCount are sorted, the rest were added since the last query
+        long[] order = new long[16];
+        int sortedCount;
+
+        // adds an entry; it is sorted into the index on the next query
+        void add(long timeMillis, float rate, long seed, long date) {
+            if (size == times.length) {
+                int capacity = size * 2;
+                times = Arrays.copyOf(times, capacity);
+                rates = Arrays.copyOf(rates, capacity);
+                seeds = Arrays.copyOf(seeds, capacity);
+                dates = Arrays.copyOf(dates, capacity);
+                order = Arrays.copyOf(order, capacity);
+            }
+            times[size] = timeMillis;
+            rates[size] = rate;
+            seeds[size] = seed;
+            dates[size] = date;
+            order[size] = sortKey(timeMillis, size);
+            size++;
+        }
+
+        // sorts the new entries and merges them into the sorted index
+        void sort() {
+            if (sortedCount == size)
+                return;
+            Arrays.sort(order, sortedCount, size);
+            if (sortedCount > 0) {
+                long[] merged = new long[order.length];
+                int a = 0, b = sortedCount, out = 0;
+                while (a < sortedCount && b < size)
+                    merged[out++] = order[a] <= order[b] ? order[a++] : order[b++];
+                while (a < sortedCount)
+                    merged[out++] = order[a++];
+                while (b < size)
+                    merged[out++] = order[b++];
+                order = merged;
+            }
+            sortedCount = size;
+        }
+
+        // the entry at a position in the sorted index
+        Entry entryAt(int position) {
+            int entry = (int) order[position];
+            return new Entry(times[entry], rates[entry], seeds[entry], dates[entry]);
+        }
+    }
+
+    // the log file and a stream appending to it
+    private final File logFile;
+    private DataOutputStream log;
+
+    // the entries for each difficulty
+    private final Map<String, Index> indexes = new HashMap<>();
+
+    // constructor for MinesweeperLeaderboard; reads the existing log, if any
+    public MinesweeperLeaderboard(File logFile) throws IOException {
+        this.logFile = logFile;
+        load();
+
+        File directory = logFile.getAbsoluteFile().getParentFile();
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create directory " + directory);
+        log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true)));
+    }
+
+    // returns the leaderboard key for a difficulty; custom games are kept
+    // apart by their dimensions
+    public static String key(String difficulty, int rows, int columns, int bombs) {
+        if (difficulty.equals("Custom"))
+            return "Custom " + rows + "x" + columns + "x" + bombs;
+        return difficulty;
+    }
+
+    // records a game won and appends it to the log
+    public synchronized void record(String key, long timeMillis, float bbbvPerSecond, long seed) throws IOException {
+        long date = System.currentTimeMillis();
+        log.writeUTF(key);
+        log.writeLong(timeMillis);
+        log.writeFloat(bbbvPerSecond);
+        log.writeLong(seed);
+        log.writeLong(date);
+        log.flush();
+
+        index(key).add(timeMillis, bbbvPerSecond, seed, date);
+    }
+
+    // returns the n fastest games for a difficulty, fastest first
+    public synchronized List<Entry> top(String key, int n) {
+        Index index = indexes.get(key);
+        List<Entry> entries = new ArrayList<>();
+        if (index == null)
+            return entries;
+
+        index.sort();
+        for (int i = 0; i < Math.min(n, index.size); i++)
+            entries.add(index.entryAt(i));
+        return entries;
+    }
+
+    // returns the number of games recorded for a difficulty
+    public synchronized int size(String key) {
+        Index index = indexes.get(key);
+        return index == null ? 0 : index.size;
+    }
+
+    // returns the percentage of recorded games for a difficulty that were
+    // slower than the given time, e.g. 90 means faster than 90% of games
+    public synchronized double percentile(String key, long timeMillis) {
+        Index index = indexes.get(key);
+        if (index == null || index.size == 0)
+            return 100;
+
+        // the first sort key with a time greater than timeMillis
+        index.sort();
+        int position = Arrays.binarySearch(index.order, 0, index.size, sortKey(timeMillis, Integer.MAX_VALUE));
+        if (position < 0)
+            position = -position - 1;
+        return 100.0 * (index.size - position) / index.size;
+    }
+
+    // returns the time a game needs to be in the fastest percent of games
+    public synchronized long timeAtPercentile(String key, double percent) {
+        Index index = indexes.get(key);
+        if (index == null || index.size == 0)
+            return -1;
+
+        index.sort();
+        int position = (int) Math.ceil(percent / 100 * index.size) - 1;
+        return index.times[(int) index.order[Math.min(Math.max(position, 0), index.size - 1)]];
+    }
+
+    // closes the log
+    public synchronized void close() throws IOException {
+        log.close();
+    }
+
+    // reads the log into memory, dropping a partly written last entry
+    private void load() throws IOException {
+        if (!logFile.exists())
+            return;
+
+        long goodLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+            while (true) {
+                String key = in.readUTF();
+                long timeMillis = in.readLong();
+                float rate = in.readFloat();
+                long seed = in.readLong();
+                long date = in.readLong();
+                index(key).add(timeMillis, rate, seed, date);
+                goodLength += 2 + utfLength(key) + 8 + 4 + 8 + 8;
+            }
+        } catch (EOFException e) {
+            // end of the log
+        }
+
+        // a crash in the middle of an append leaves a partial entry behind
+        if (goodLength < logFile.length()) {
+            try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+                file.setLength(goodLength);
+            }
+        }
+    }
+
+    // returns the index for a difficulty, creating it if needed
+    private Index index(String key) {
+        Index index = indexes.get(key);
+        if (index == null) {
+            index = new Index();
+            indexes.put(key, index);
+        }
+        return index;
+    }
+
+    // builds the sort key for an entry; times are capped so they fit in 31 bits
+    private static long sortKey(long timeMillis, int entry) {
+        return (Math.min(timeMillis, Integer.MAX_VALUE) << 32) | (entry & 0xffffffffL);
+    }
+
+    // number of bytes writeUTF uses for the characters of a string
+    private static int utfLength(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007F)
+                length++;
+            else if (c <= 0x07FF)
+                length += 2;
+            else
+                length += 3;
+        }
+        return length;
+    }
+}
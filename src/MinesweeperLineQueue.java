@@ -0,0 +1,124 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/*
+ * Lines pushed to a client by a task of their own, so a slow client only
+ * holds up itself: race progress from MinesweeperServer, and frames from a
+ * MinesweeperSocketSpectator.
+ *
+ * Items are queued with offer() and written by run(), one line each, while
+ * holding the writer's lock, which is shared with whatever else writes to
+ * the client; the writer is flushed only once the queue is empty. A client
+ * with more items waiting than the queue holds is too slow: the queue takes
+ * no more, and the too-slow line follows those already queued. finish()
+ * ends the writing with a last line of its own, and stop() with none.
+ */
+public class MinesweeperLineQueue<T> implements Runnable {
+    /*
+     * Queued after the items to end the writing task; line is written
+     * before it ends, unless it is null.
+     */
+    private static final class Last {
+        final String line;
+
+        Last(String line) {
+            this.line = line;
+        }
+    }
+
+    // where the lines go
+    private final Writer out;
+
+    // the items not yet written, with room for one Last
+    private final BlockingQueue<Object> queue;
+    private final int capacity;
+
+    // written when the client falls behind
+    private final String tooSlowLine;
+
+    // set once no more items should be taken
+    private volatile boolean stopped;
+
+    // constructor for MinesweeperLineQueue holding up to capacity items
+    public MinesweeperLineQueue(Writer out, int capacity, String tooSlowLine) {
+        this.out = out;
+        this.capacity = capacity;
+        this.tooSlowLine = tooSlowLine;
+        queue = new LinkedBlockingQueue<>(capacity + 1);
+    }
+
+    // queues an item; returns false if it wasn't taken, because the queue
+    // has stopped or the client has fallen too far behind. Never blocks
+    public boolean offer(T item) {
+        if (stopped)
+            return false;
+        if (queue.size() >= capacity) {
+            end(tooSlowLine);
+            return false;
+        }
+        queue.offer(item);
+        return true;
+    }
+
+    // writes the items already queued, then the given line, and stops
+    public void finish(String lastLine) {
+        end(lastLine);
+    }
+
+    // stops once the items already queued are written, with no last line
+    public void stop() {
+        end(null);
+    }
+
+    // returns the line an item is written as; items are strings unless a
+    // subclass says otherwise
+    protected String line(T item) {
+        return item.toString();
+    }
+
+    // takes no more items, and queues the end of the writing task
+    private void end(String lastLine) {
+        if (stopped)
+            return;
+        stopped = true;
+        queue.offer(new Last(lastLine));
+    }
+
+    // writes queued items until the queue ends, flushing only once it is
+    // empty; closes the writer if the client has gone away
+    @SuppressWarnings("unchecked")
+    public void run() {
+        try {
+            while (true) {
+                Object item = queue.take();
+                synchronized (out) {
+                    do {
+                        if (item instanceof Last) {
+                            String lastLine = ((Last) item).line;
+                            if (lastLine != null) {
+                                out.write(lastLine);
+                                out.write('\n');
+                            }
+                            out.flush();
+                            return;
+                        }
+                        out.write(line((T) item));
+                        out.write('\n');
+                    } while ((item = queue.poll()) != null);
+                    out.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            stopped = true;
+        } catch (IOException e) {
+            // the client went away
+            stopped = true;
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
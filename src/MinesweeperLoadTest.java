@@ -0,0 +1,203 @@
+import java.io.*;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+ * Load test client for MinesweeperServer.
+ *
+ * Opens a number of connections that each play games with random moves for a
+ * fixed amount of time, then reports moves per second and the latency
+ * percentiles of single moves. Each connection can juggle several games at
+ * once, switching between them with OPEN, so most games sit idle between
+ * moves the way they do with real players. Main function at bottom of class.
+ */
+public class MinesweeperLoadTest {
+    // connection settings
+    private final String host;
+    private final int port;
+
+    // number of connections, games per connection, how long to run, and the size of each game
+    private final int clients, gamesPerClient;
+    private final long durationMillis;
+    private final int rows, columns, bombs;
+
+    // constructor for MinesweeperLoadTest
+    public MinesweeperLoadTest(String host, int port, int clients, int gamesPerClient, long durationMillis,
+                               int rows, int columns, int bombs) {
+        this.host = host;
+        this.port = port;
+        this.clients = clients;
+        this.gamesPerClient = gamesPerClient;
+        this.durationMillis = durationMillis;
+        this.rows = rows;
+        this.columns = columns;
+        this.bombs = bombs;
+    }
+
+    // runs the test and prints the results
+    public void run() throws InterruptedException {
+        Client[] workers = new Client[clients];
+        Thread[] threads = new Thread[clients];
+        long deadline = System.currentTimeMillis() + durationMillis;
+
+        for (int i = 0; i < clients; i++) {
+            workers[i] = new Client(i, deadline);
+            threads[i] = new Thread(workers[i], "load-client-" + i);
+            threads[i].start();
+        }
+
+        long start = System.nanoTime();
+        for (Thread thread : threads)
+            thread.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        // merge the latencies of every client into one sorted array
+        int moves = 0;
+        int games = 0;
+        int errors = 0;
+        for (Client worker : workers) {
+            moves += worker.moves;
+            games += worker.games;
+            errors += worker.errors;
+        }
+        long[] latencies = new long[moves];
+        int offset = 0;
+        for (Client worker : workers) {
+            System.arraycopy(worker.latencies, 0, latencies, offset, worker.moves);
+            offset += worker.moves;
+        }
+        Arrays.sort(latencies);
+
+        System.out.printf("clients: %d, games: %d, moves: %d, errors: %d%n", clients, games, moves, errors);
+        System.out.printf("throughput: %.0f moves/s%n", moves / seconds);
+        System.out.printf("latency (us): p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                percentile(latencies, 0.50), percentile(latencies, 0.90), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), percentile(latencies, 1.0));
+    }
+
+    // returns the latency at the given fraction of the sorted latencies, in microseconds
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0)
+            return 0;
+        int index = (int) Math.ceil(fraction * sorted.length) - 1;
+        return sorted[Math.max(index, 0)] / 1000.0;
+    }
+
+    /*
+     * One connection to the server, playing random games until the deadline.
+     */
+    private class Client implements Runnable {
+        private final Random RNG;
+        private final long deadline;
+
+        // results for this client; latencies in nanoseconds
+        private long[] latencies = new long[1024];
+        private int moves, games, errors;
+
+        Client(int id, long deadline) {
+            RNG = new Random(id);
+            this.deadline = deadline;
+        }
+
+        public void run() {
+            try (Socket socket = new Socket(host, port);
+                 BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+                 Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.US_ASCII))) {
+                socket.setTcpNoDelay(true);
+
+                // ids of the games this client is playing; 0 means a new game is needed
+                long[] sessionIds = new long[gamesPerClient];
+
+                while (System.currentTimeMillis() < deadline) {
+                    int game = RNG.nextInt(gamesPerClient);
+                    if (sessionIds[game] == 0) {
+                        // start a new game in this slot
+                        send(out, "NEW " + rows + " " + columns + " " + bombs + " " + RNG.nextLong());
+                        String reply = in.readLine();
+                        if (!reply.startsWith("OK")) {
+                            errors++;
+                            continue;
+                        }
+                        sessionIds[game] = Long.parseLong(reply.substring(3));
+                        games++;
+                    } else if (gamesPerClient > 1) {
+                        // switch to the chosen game
+                        send(out, "OPEN " + sessionIds[game]);
+                        if (!in.readLine().startsWith("OK")) {
+                            errors++;
+                            sessionIds[game] = 0;
+                            continue;
+                        }
+                    }
+
+                    // reveal a random cell, starting over once the game is finished
+                    String command = "REVEAL " + RNG.nextInt(rows) + " " + RNG.nextInt(columns);
+                    long start = System.nanoTime();
+                    send(out, command);
+                    String reply = in.readLine();
+                    record(System.nanoTime() - start);
+                    if (reply.startsWith("ERR"))
+                        errors++;
+                    if (!reply.startsWith("PLAYING"))
+                        sessionIds[game] = 0;
+                }
+                send(out, "QUIT");
+            } catch (IOException e) {
+                System.err.println("Client error: " + e.getMessage());
+                errors++;
+            }
+        }
+
+        // records the latency of a single move
+        private void record(long nanos) {
+            if (moves == latencies.length)
+                latencies = Arrays.copyOf(latencies, moves * 2);
+            latencies[moves++] = nanos;
+        }
+    }
+
+    // writes a command and flushes it to the server
+    private static void send(Writer out, String command) throws IOException {
+        out.write(command);
+        out.write('\n');
+        out.flush();
+    }
+
+    /* *************************************************************************
+     *                         MAIN METHOD
+     * *************************************************************************
+     */
+    // usage: MinesweeperLoadTest [host] [port] [clients] [gamesPerClient] [seconds] [rows] [columns] [bombs]
+    // with a port of 0 an in-process server is started on a free port
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        int gamesPerClient = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+        int seconds = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+        int rows = args.length > 5 ? Integer.parseInt(args[5]) : 16;
+        int columns = args.length > 6 ? Integer.parseInt(args[6]) : 30;
+        int bombs = args.length > 7 ? Integer.parseInt(args[7]) : 99;
+
+        MinesweeperServer server = null;
+        if (port == 0) {
+            // keep a quarter of the games in memory so the spill path gets exercised
+            int maxResident = Math.max(clients * gamesPerClient / 4, 1);
+            server = MinesweeperServer.newServer(0, MinesweeperServer.DEFAULT_MAX_CELLS,
+                    MinesweeperServer.DEFAULT_MAX_SESSIONS, maxResident, MinesweeperServer.DEFAULT_IDLE_MILLIS,
+                    Files.createTempDirectory("minesweeper-spill").toFile());
+            server.start();
+            port = server.getPort();
+        }
+
+        new MinesweeperLoadTest(host, port, clients, gamesPerClient, seconds * 1000L, rows, columns, bombs).run();
+
+        if (server != null) {
+            System.out.println("server: " + server.getSessions().getMetrics());
+            server.stop();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import java.awt.*;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/*
+ * A small overview of a whole MinesweeperBoard, with a rectangle showing the
+ * part visible in a MinesweeperZoomPanel. Clicking or dragging on the minimap
+ * moves the zoom panel there.
+ *
+ * The overview is drawn from the coarsest mipmap level with at least one
+ * block per pixel, and only redrawn when the mipmap has changed.
+ */
+public class MinesweeperMinimap extends JComponent {
+    // largest width or height of the minimap, in pixels
+    private static final int SIZE = 200;
+
+    // the board's summaries, and the view whose position is shown
+    private final MinesweeperMipmap mipmap;
+    private final MinesweeperZoomPanel view;
+
+    // the level drawn, and the overview image of it
+    private final int level;
+    private final BufferedImage image;
+
+    // mipmap version the image was drawn at; -1 until it is drawn
+    private int imageVersion = -1;
+
+    // pixels per cell
+    private final double scale;
+
+    // constructor for MinesweeperMinimap
+    public MinesweeperMinimap(MinesweeperMipmap mipmap, MinesweeperZoomPanel view, int rows, int columns) {
+        this.mipmap = mipmap;
+        this.view = view;
+
+        // pick the coarsest level that still fills SIZE pixels
+        int pick = 0;
+        while (pick < mipmap.getLevelCount() - 1
+                && Math.max(mipmap.getBlockRows(pick + 1), mipmap.getBlockColumns(pick + 1)) >= SIZE)
+            pick++;
+        level = pick;
+        image = new BufferedImage(mipmap.getBlockColumns(level), mipmap.getBlockRows(level), BufferedImage.TYPE_INT_RGB);
+
+        scale = SIZE / (double) Math.max(rows, columns);
+        setPreferredSize(new Dimension((int) Math.ceil(columns * scale), (int) Math.ceil(rows * scale)));
+
+        // follow the view
+        view.addViewListener(new ChangeListener() {
+            public void stateChanged(ChangeEvent e) {
+                repaint();
+            }
+        });
+
+        // move the view to wherever the minimap is clicked or dragged
+        MouseAdapter mouseHandler = new MouseAdapter() {
+            public void mousePressed(MouseEvent e) {
+                MinesweeperMinimap.this.view.centerOn(e.getX() / scale, e.getY() / scale);
+            }
+
+            public void mouseDragged(MouseEvent e) {
+                MinesweeperMinimap.this.view.centerOn(e.getX() / scale, e.getY() / scale);
+            }
+        };
+        addMouseListener(mouseHandler);
+        addMouseMotionListener(mouseHandler);
+    }
+
+    // draws the overview and the rectangle of the visible part
+    protected void paintComponent(Graphics g) {
+        int version = mipmap.getVersion();
+        if (version != imageVersion) {
+            drawImage();
+            imageVersion = version;
+        }
+
+        int width = (int) Math.round(image.getWidth() * (1 << mipmap.getShift(level)) * scale);
+        int height = (int) Math.round(image.getHeight() * (1 << mipmap.getShift(level)) * scale);
+        g.drawImage(image, 0, 0, width, height, null);
+
+        g.setColor(Color.YELLOW);
+        g.drawRect((int) Math.round(view.getViewX() * scale), (int) Math.round(view.getViewY() * scale),
+                (int) Math.round(view.getViewWidth() * scale), (int) Math.round(view.getViewHeight() * scale));
+    }
+
+    // redraws the overview image from the mipmap
+    private void drawImage() {
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int blockColumns = mipmap.getBlockColumns(level);
+        for (int blockRow = 0; blockRow < mipmap.getBlockRows(level); blockRow++) {
+            for (int blockCol = 0; blockCol < blockColumns; blockCol++) {
+                pixels[blockRow * blockColumns + blockCol] = MinesweeperZoomPanel.blockColor(
+                        mipmap.getCellCount(level, blockRow, blockCol),
+                        mipmap.getRevealed(level, blockRow, blockCol), mipmap.getFlagged(level, blockRow, blockCol));
+            }
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Summaries of a MinesweeperBoard at several levels of detail, for drawing
+ * boards too large to draw cell by cell.
+ *
+ * Level 0 splits the board into 4x4 blocks, and each level after it into
+ * blocks twice as wide and tall, until one block covers the whole board. For
+ * every block the number of revealed and flagged cells is kept. The mipmap
+ * listens to the board and updates one block per level for every cell that
+ * changes, so it never has to be rebuilt.
+ */
+public class MinesweeperMipmap implements MinesweeperBoardListener {
+    // block size of level 0 is 1 << FIRST_SHIFT cells
+    public static final int FIRST_SHIFT = 2;
+
+    // the board being summarized, and its number of rows and columns
+    private final MinesweeperBoard board;
+    private final int rows, columns;
+
+    // number of block rows and columns at each level
+    private final int[] blockRows, blockColumns;
+
+    // revealed and flagged cell counts for each block, by level
+    private final int[][] revealed, flagged;
+
+    // increases every time a count changes, so cached drawings know to redraw
+    private volatile int version;
+
+    // constructor for MinesweeperMipmap; counts the board as it is now and
+    // then follows its changes
+    public MinesweeperMipmap(MinesweeperBoard board) {
+        this.board = board;
+        rows = board.getRows();
+        columns = board.getColumns();
+
+        // one level per doubling until a single block covers the board
+        int levels = 1;
+        while (((rows - 1) >> (FIRST_SHIFT + levels - 1)) > 0 || ((columns - 1) >> (FIRST_SHIFT + levels - 1)) > 0)
+            levels++;
+
+        blockRows = new int[levels];
+        blockColumns = new int[levels];
+        revealed = new int[levels][];
+        flagged = new int[levels][];
+        for (int level = 0; level < levels; level++) {
+            int shift = getShift(level);
+            blockRows[level] = ((rows - 1) >> shift) + 1;
+            blockColumns[level] = ((columns - 1) >> shift) + 1;
+            revealed[level] = new int[blockRows[level] * blockColumns[level]];
+            flagged[level] = new int[blockRows[level] * blockColumns[level]];
+        }
+
+        for (int index = 0; index < board.getCellCount(); index++) {
+            byte state = board.getState(index);
+            if (state != MinesweeperBoard.HIDDEN)
+                add(index, state, 1);
+        }
+        board.addListener(this);
+    }
+
+    // public accessors for the levels
+    public int getLevelCount() { return blockRows.length; }
+    public int getShift(int level) { return FIRST_SHIFT + level; }
+    public int getBlockRows(int level) { return blockRows[level]; }
+    public int getBlockColumns(int level) { return blockColumns[level]; }
+    public int getVersion() { return version; }
+
+    // public accessors for the counts of a block
+    public int getRevealed(int level, int blockRow, int blockCol) {
+        return revealed[level][blockRow * blockColumns[level] + blockCol];
+    }
+
+    public int getFlagged(int level, int blockRow, int blockCol) {
+        return flagged[level][blockRow * blockColumns[level] + blockCol];
+    }
+
+    // number of cells in a block; blocks on the bottom and right edges
+    // may hang over the board
+    public int getCellCount(int level, int blockRow, int blockCol) {
+        int shift = getShift(level);
+        int height = Math.min(rows - (blockRow << shift), 1 << shift);
+        int width = Math.min(columns - (blockCol << shift), 1 << shift);
+        return height * width;
+    }
+
+    // updates the counts when a cell changes
+    public void cellChanged(int index, byte oldState) {
+        add(index, oldState, -1);
+        add(index, board.getState(index), 1);
+        version++;
+    }
+
+    public void gameStatusChanged(int status) {}
+
+    // adds delta to the revealed or flagged count of every block holding the cell
+    private void add(int index, byte state, int delta) {
+        if (state == MinesweeperBoard.HIDDEN)
+            return;
+        int row = index / columns;
+        int col = index - row * columns;
+        int[][] counts = state == MinesweeperBoard.REVEALED ? revealed : flagged;
+        for (int level = 0; level < counts.length; level++) {
+            int shift = getShift(level);
+            counts[level][(row >> shift) * blockColumns[level] + (col >> shift)] += delta;
+        }
+    }
+}
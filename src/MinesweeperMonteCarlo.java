@@ -0,0 +1,579 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Estimates the solutions of frontier components too large for
+ * MinesweeperSolver to enumerate, by sampling assignments of bombs.
+ *
+ * Each sampler is a Markov chain over assignments that agree with every
+ * number. It starts from an assignment found by a randomized search, then
+ * repeatedly picks a window of neighboring cells, enumerates every way to
+ * refill the window that still agrees with the numbers, and picks one in
+ * proportion to the odds of its number of bombs at the board's density.
+ * Most windows are small; every few steps a large one lets a long chain of
+ * numbers flip to its other solution all at once. The chains run on their
+ * own threads with their own random number generators until the time budget
+ * is spent, and their counts are added together. The spread of each cell's
+ * frequency between batches of samples, or between chains if that is
+ * larger, gives a 95% confidence interval.
+ *
+ * Every estimator runs its chains on one pool shared by the whole program,
+ * so creating estimators, e.g. one per game, costs no threads; the pool's
+ * threads stop once it has been idle for a minute.
+ */
+public class MinesweeperMonteCarlo {
+    // default time spent on one component
+    public static final long DEFAULT_BUDGET_MILLIS = 30;
+
+    // cells refilled in a small step and in a large one, and how often a step is large
+    private static final int SMALL_WINDOW = 12;
+    private static final int LARGE_WINDOW = 48;
+    private static final int LARGE_EVERY = 4;
+
+    // a step keeps the old filling if its window has more fillings than
+    // this, or takes more search steps; that depends only on the cells
+    // outside the window, so it doesn't bias the chain
+    private static final int FILL_LIMIT = 1 << 12;
+    private static final int FILL_STEP_LIMIT = 1 << 15;
+
+    // fewest chains run, however few threads there are, so a chain stuck
+    // in one solution shows up in the confidence intervals
+    private static final int MIN_CHAINS = 4;
+
+    // search steps allowed for finding a first assignment
+    private static final int START_STEP_LIMIT = 1 << 20;
+
+    // sweeps thrown away while a chain forgets where it started
+    private static final int BURN_IN_SWEEPS = 4;
+
+    // samples per batch for the confidence intervals
+    private static final int BATCH = 8;
+
+    // number of chains and the time they get, in nanoseconds
+    private final int threads;
+    private final long budgetNanos;
+
+    // runs all but one of the chains of every estimator; created the first
+    // time it is needed
+    private static ExecutorService executor;
+
+    // seeds the chains' random number generators
+    private final SplittableRandom seeds;
+
+    // constructor for MinesweeperMonteCarlo
+    public MinesweeperMonteCarlo() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_BUDGET_MILLIS, System.nanoTime());
+    }
+
+    public MinesweeperMonteCarlo(int threads, long budgetMillis, long seed) {
+        this.threads = Math.max(threads, 1);
+        this.budgetNanos = budgetMillis * 1000000L;
+        seeds = new SplittableRandom(seed);
+    }
+
+    // estimates a component given as for MinesweeperSolver.solve; density is
+    // the chance of a bomb elsewhere on the board; returns null if no
+    // assignment agreeing with the numbers was found
+    public MinesweeperSolver.Solution estimate(int cells, int[] constraintStart, int[] constraintCells,
+                                               int[] constraintValues, double density) {
+        final Component component = new Component(cells, constraintStart, constraintCells, constraintValues);
+        density = Math.min(Math.max(density, 1e-6), 1 - 1e-6);
+        final double odds = density / (1 - density);
+        final long deadline = System.nanoTime() + budgetNanos;
+
+        // deal the chains out to the threads; one thread's share runs here,
+        // the others on the executor
+        int chainCount = Math.max(threads, MIN_CHAINS);
+        List<List<Chain>> shares = new ArrayList<>();
+        for (int i = 0; i < threads; i++)
+            shares.add(new ArrayList<Chain>());
+        for (int i = 0; i < chainCount; i++)
+            shares.get(i % threads).add(new Chain(component, odds, split()));
+
+        List<Future<List<Chain>>> futures = new ArrayList<>();
+        for (int i = 1; i < threads; i++) {
+            final List<Chain> share = shares.get(i);
+            futures.add(getExecutor().submit(new Callable<List<Chain>>() {
+                public List<Chain> call() {
+                    return run(share, deadline);
+                }
+            }));
+        }
+        List<Chain> chains = new ArrayList<>(run(shares.get(0), deadline));
+        for (Future<List<Chain>> future : futures) {
+            try {
+                chains.addAll(future.get());
+            } catch (Exception e) {
+                throw new IllegalStateException("Sampler failed", e);
+            }
+        }
+        if (chains.isEmpty())
+            return null;
+        return merge(cells, chains, odds);
+    }
+
+    // starts the chains and takes turns sweeping them until the deadline;
+    // returns the chains that found a starting assignment
+    private static List<Chain> run(List<Chain> chains, long deadline) {
+        List<Chain> started = new ArrayList<>();
+        for (Chain chain : chains) {
+            if (chain.start())
+                started.add(chain);
+        }
+        // every chain takes at least one sample, however short the budget
+        boolean sampled;
+        do {
+            sampled = true;
+            for (Chain chain : started) {
+                chain.sweep();
+                sampled &= chain.samples > 0;
+            }
+        } while (!started.isEmpty() && (System.nanoTime() < deadline || !sampled));
+        return started;
+    }
+
+    // returns a generator for a new chain
+    private synchronized SplittableRandom split() {
+        return seeds.split();
+    }
+
+    // creates the executor shared by the chains of every estimator, with a
+    // thread for every processor but the one each estimate runs on; its
+    // threads don't keep the program running
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            int poolThreads = Math.max(Runtime.getRuntime().availableProcessors() - 1, 1);
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(poolThreads, poolThreads, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable, "minesweeper-sampler");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+        return executor;
+    }
+
+    // adds up the counts of the chains
+    private static MinesweeperSolver.Solution merge(int cells, List<Chain> chains, double odds) {
+        long samples = 0;
+        long[] byBombs = new long[cells + 1];
+        long[] bombCounts = new long[cells];
+        double[] batchSum = new double[cells];
+        double[] batchSquares = new double[cells];
+        int batches = 0;
+        for (Chain chain : chains) {
+            samples += chain.samples;
+            batches += chain.batches;
+            for (int k = 0; k <= cells; k++)
+                byBombs[k] += chain.byBombs[k];
+            for (int cell = 0; cell < cells; cell++) {
+                bombCounts[cell] += chain.bombCounts[cell];
+                batchSum[cell] += chain.batchSum[cell];
+                batchSquares[cell] += chain.batchSquares[cell];
+            }
+        }
+
+        // the chains sample k bombs in proportion to odds^k times the number
+        // of solutions with k bombs; divide the odds back out, keeping only
+        // the numbers of bombs that were sampled
+        int minBombs = cells;
+        int maxBombs = 0;
+        double maxLog = Double.NEGATIVE_INFINITY;
+        for (int k = 0; k <= cells; k++) {
+            if (byBombs[k] > 0) {
+                minBombs = Math.min(minBombs, k);
+                maxBombs = k;
+                maxLog = Math.max(maxLog, Math.log(byBombs[k]) - k * Math.log(odds));
+            }
+        }
+        double[] weights = new double[maxBombs - minBombs + 1];
+        double[][] bombWeights = new double[cells][maxBombs - minBombs + 1];
+        for (int k = minBombs; k <= maxBombs; k++) {
+            double scale = Math.exp(-k * Math.log(odds) - maxLog);
+            weights[k - minBombs] = byBombs[k] * scale;
+            for (Chain chain : chains) {
+                if (k < chain.lowBombs || k >= chain.lowBombs + chain.bombRange)
+                    continue;
+                int offset = (k - chain.lowBombs) * cells;
+                for (int cell = 0; cell < cells; cell++)
+                    bombWeights[cell][k - minBombs] += chain.bombCountsByBombs[offset + cell] * scale;
+            }
+        }
+
+        // each cell's chance, with the confidence interval from the batch means
+        // when there are enough batches, or as if the samples were independent
+        // if not, widened to the spread between the chains if that is larger
+        double[] halfWidths = new double[cells];
+        int chainCount = chains.size();
+        for (int cell = 0; cell < cells; cell++) {
+            double chance = (double) bombCounts[cell] / samples;
+            double variance;
+            if (batches >= 2) {
+                double mean = batchSum[cell] / batches;
+                variance = Math.max(batchSquares[cell] / batches - mean * mean, 0) / (batches - 1);
+            } else {
+                variance = chance * (1 - chance) / samples;
+            }
+            if (chainCount >= 2) {
+                double spread = 0;
+                for (Chain chain : chains) {
+                    double difference = (double) chain.bombCounts[cell] / chain.samples - chance;
+                    spread += difference * difference;
+                }
+                variance = Math.max(variance, spread / (chainCount - 1) / chainCount);
+            }
+            halfWidths[cell] = Math.max(1.96 * Math.sqrt(variance), 0.5 / samples);
+        }
+        return new MinesweeperSolver.Solution(minBombs, weights, bombWeights, halfWidths);
+    }
+
+    /*
+     * The cells and constraints of a component, shared by its chains.
+     */
+    private static class Component {
+        final int cells;
+        final int[] constraintStart, constraintCells, constraintValues;
+
+        // the constraints on each cell
+        final int[] cellStart, cellConstraints;
+
+        Component(int cells, int[] constraintStart, int[] constraintCells, int[] constraintValues) {
+            this.cells = cells;
+            this.constraintStart = constraintStart;
+            this.constraintCells = constraintCells;
+            this.constraintValues = constraintValues;
+
+            int constraints = constraintValues.length;
+            cellStart = new int[cells + 1];
+            for (int i = 0; i < constraintStart[constraints]; i++)
+                cellStart[constraintCells[i] + 1]++;
+            for (int cell = 0; cell < cells; cell++)
+                cellStart[cell + 1] += cellStart[cell];
+            cellConstraints = new int[constraintStart[constraints]];
+            int[] fill = new int[cells];
+            for (int c = 0; c < constraints; c++) {
+                for (int i = constraintStart[c]; i < constraintStart[c + 1]; i++) {
+                    int cell = constraintCells[i];
+                    cellConstraints[cellStart[cell] + fill[cell]++] = c;
+                }
+            }
+        }
+    }
+
+    /*
+     * One Markov chain and the counts of its samples.
+     */
+    private static class Chain {
+        private final Component component;
+        private final double odds;
+        private final SplittableRandom random;
+
+        // the current assignment, and the number of bombs it has
+        private final boolean[] bomb;
+        private int bombs;
+
+        // bombs still needed and cells still unassigned, by constraint;
+        // only meaningful for the constraints being searched
+        private final int[] needed, unassigned;
+
+        // the window being refilled; a cell is in it, and a constraint has
+        // been set up for it, when its mark equals stamp
+        private final int[] window = new int[LARGE_WINDOW];
+        private final int[] visited, constraintStamp;
+        private int stamp;
+
+        // odds^k for the bombs in a window
+        private final double[] powers = new double[LARGE_WINDOW + 1];
+
+        // the ways found to refill the window, as bit masks, and the search
+        // steps taken to find them
+        private final long[] fills = new long[FILL_LIMIT];
+        private int fillCount, fillSteps;
+
+        // steps and sweeps taken so far
+        private int steps, sweeps;
+
+        // counts: samples taken, samples by number of bombs, samples in
+        // which each cell is a bomb, and the batches for the confidence intervals
+        long samples;
+        final long[] byBombs;
+        final long[] bombCounts;
+
+        // samples in which each cell is a bomb, by number of bombs from
+        // lowBombs to lowBombs + bombRange - 1 and then by cell; a chain
+        // only visits a narrow range, which grows if it is left
+        long[] bombCountsByBombs;
+        int lowBombs, bombRange;
+        final int[] batchCounts;
+        final double[] batchSum, batchSquares;
+        int batches;
+
+        Chain(Component component, double odds, SplittableRandom random) {
+            this.component = component;
+            this.odds = odds;
+            this.random = random;
+            int cells = component.cells;
+            bomb = new boolean[cells];
+            needed = new int[component.constraintValues.length];
+            unassigned = new int[component.constraintValues.length];
+            visited = new int[cells];
+            constraintStamp = new int[component.constraintValues.length];
+            for (int k = 0; k <= LARGE_WINDOW; k++)
+                powers[k] = Math.pow(odds, k);
+            byBombs = new long[cells + 1];
+            bombCounts = new long[cells];
+            batchCounts = new int[cells];
+            batchSum = new double[cells];
+            batchSquares = new double[cells];
+        }
+
+        // refills about as many cells as the component has, then takes a
+        // sample once the chain is past its burn in
+        void sweep() {
+            int cells = component.cells;
+            for (int i = Math.max(cells / SMALL_WINDOW, 1); i > 0; i--)
+                refill(random.nextInt(cells), ++steps % LARGE_EVERY == 0 ? LARGE_WINDOW : SMALL_WINDOW);
+            if (++sweeps > BURN_IN_SWEEPS)
+                sample();
+        }
+
+        // finds a first assignment by a search that tries each cell as a bomb
+        // first with the chance of the board's density; returns false if
+        // none is found within the step limit
+        boolean start() {
+            int cells = component.cells;
+            int[] constraintStart = component.constraintStart;
+            for (int c = 0; c < needed.length; c++) {
+                needed[c] = component.constraintValues[c];
+                unassigned[c] = constraintStart[c + 1] - constraintStart[c];
+            }
+
+            boolean[] bombFirst = new boolean[cells];
+            double density = odds / (1 + odds);
+            for (int cell = 0; cell < cells; cell++)
+                bombFirst[cell] = random.nextDouble() < density;
+
+            // tried[cell] is the number of values tried for the cell
+            int[] tried = new int[cells];
+            int cell = 0;
+            int steps = 0;
+            while (cell < cells) {
+                if (cell < 0 || ++steps > START_STEP_LIMIT)
+                    return false;
+                if (tried[cell] == 2) {
+                    // both values failed; go back to the cell before
+                    tried[cell] = 0;
+                    cell--;
+                    if (cell >= 0)
+                        unassign(cell, bomb[cell]);
+                    continue;
+                }
+                boolean value = tried[cell] == 0 ? bombFirst[cell] : !bombFirst[cell];
+                tried[cell]++;
+                if (assign(cell, value))
+                    cell++;
+                else
+                    unassign(cell, value);
+            }
+
+            bombs = 0;
+            for (int i = 0; i < cells; i++) {
+                if (bomb[i])
+                    bombs++;
+            }
+            return true;
+        }
+
+        // picks a window of cells around start and refills it with one of
+        // the assignments that agree with the numbers
+        private void refill(int start, int maxSize) {
+            int size = pickWindow(start, maxSize);
+
+            // take the window out of the assignment, remembering how it was filled
+            long oldFill = 0;
+            for (int i = 0; i < size; i++) {
+                if (bomb[window[i]]) {
+                    oldFill |= 1L << i;
+                    bomb[window[i]] = false;
+                    bombs--;
+                }
+            }
+
+            // each constraint on the window needs its value less the bombs
+            // outside the window, among the window cells it covers
+            for (int i = 0; i < size; i++) {
+                int cell = window[i];
+                for (int j = component.cellStart[cell]; j < component.cellStart[cell + 1]; j++) {
+                    int c = component.cellConstraints[j];
+                    if (constraintStamp[c] == stamp)
+                        continue;
+                    constraintStamp[c] = stamp;
+                    needed[c] = component.constraintValues[c];
+                    unassigned[c] = 0;
+                    for (int k = component.constraintStart[c]; k < component.constraintStart[c + 1]; k++) {
+                        int other = component.constraintCells[k];
+                        if (visited[other] == stamp)
+                            unassigned[c]++;
+                        else if (bomb[other])
+                            needed[c]--;
+                    }
+                }
+            }
+
+            // every way to refill the window, picked with weight odds^bombs;
+            // the old filling is always one of them
+            fillCount = 0;
+            fillSteps = 0;
+            long fill = oldFill;
+            if (enumerate(size, 0, 0)) {
+                double total = 0;
+                for (int i = 0; i < fillCount; i++)
+                    total += powers[Long.bitCount(fills[i])];
+                double pick = random.nextDouble() * total;
+                fill = fills[fillCount - 1];
+                for (int i = 0; i < fillCount; i++) {
+                    pick -= powers[Long.bitCount(fills[i])];
+                    if (pick < 0) {
+                        fill = fills[i];
+                        break;
+                    }
+                }
+            }
+
+            for (int i = 0; i < size; i++) {
+                if ((fill & (1L << i)) != 0) {
+                    bomb[window[i]] = true;
+                    bombs++;
+                }
+            }
+        }
+
+        // collects up to maxSize cells near start, breadth first through the constraints
+        private int pickWindow(int start, int maxSize) {
+            stamp++;
+            int size = 0;
+            window[size++] = start;
+            visited[start] = stamp;
+            for (int head = 0; head < size && size < maxSize; head++) {
+                int cell = window[head];
+                for (int j = component.cellStart[cell]; j < component.cellStart[cell + 1] && size < maxSize; j++) {
+                    int c = component.cellConstraints[j];
+                    for (int k = component.constraintStart[c]; k < component.constraintStart[c + 1] && size < maxSize; k++) {
+                        int neighbor = component.constraintCells[k];
+                        if (visited[neighbor] != stamp) {
+                            visited[neighbor] = stamp;
+                            window[size++] = neighbor;
+                        }
+                    }
+                }
+            }
+            return size;
+        }
+
+        // finds every assignment of window cells from i on that agrees with
+        // the constraints, given the cells before i are assigned as in mask;
+        // returns false once there are too many
+        private boolean enumerate(int size, int i, long mask) {
+            if (++fillSteps > FILL_STEP_LIMIT)
+                return false;
+            if (i == size) {
+                if (fillCount == FILL_LIMIT)
+                    return false;
+                fills[fillCount++] = mask;
+                return true;
+            }
+            int cell = window[i];
+            boolean finished = !assign(cell, false) || enumerate(size, i + 1, mask);
+            unassign(cell, false);
+            if (!finished)
+                return false;
+            finished = !assign(cell, true) || enumerate(size, i + 1, mask | (1L << i));
+            unassign(cell, true);
+            return finished;
+        }
+
+        // assigns a cell and returns true if every constraint on it can still
+        // be met; must be followed by unassign either way
+        private boolean assign(int cell, boolean isBomb) {
+            bomb[cell] = isBomb;
+            boolean possible = true;
+            for (int j = component.cellStart[cell]; j < component.cellStart[cell + 1]; j++) {
+                int c = component.cellConstraints[j];
+                unassigned[c]--;
+                if (isBomb)
+                    needed[c]--;
+                if (needed[c] < 0 || needed[c] > unassigned[c])
+                    possible = false;
+            }
+            return possible;
+        }
+
+        // undoes assign
+        private void unassign(int cell, boolean isBomb) {
+            bomb[cell] = false;
+            for (int j = component.cellStart[cell]; j < component.cellStart[cell + 1]; j++) {
+                int c = component.cellConstraints[j];
+                unassigned[c]++;
+                if (isBomb)
+                    needed[c]++;
+            }
+        }
+
+        // counts the current assignment
+        private void sample() {
+            samples++;
+            byBombs[bombs]++;
+            int cells = component.cells;
+            if (bombs < lowBombs || bombs >= lowBombs + bombRange)
+                growRange();
+            int offset = (bombs - lowBombs) * cells;
+            for (int cell = 0; cell < cells; cell++) {
+                if (bomb[cell]) {
+                    bombCounts[cell]++;
+                    bombCountsByBombs[offset + cell]++;
+                    batchCounts[cell]++;
+                }
+            }
+
+            // close a batch every BATCH samples
+            if (samples % BATCH == 0) {
+                for (int cell = 0; cell < cells; cell++) {
+                    double mean = batchCounts[cell] / (double) BATCH;
+                    batchSum[cell] += mean;
+                    batchSquares[cell] += mean * mean;
+                    batchCounts[cell] = 0;
+                }
+                batches++;
+            }
+        }
+
+        // widens the range of numbers of bombs counted to take in the
+        // current number, with room to spare on both sides
+        private void growRange() {
+            int cells = component.cells;
+            int margin = Math.max(bombRange / 2, 8);
+            int low = bombRange == 0 ? bombs : Math.min(lowBombs, bombs);
+            int high = bombRange == 0 ? bombs : Math.max(lowBombs + bombRange - 1, bombs);
+            low = Math.max(low - margin, 0);
+            high = Math.min(high + margin, cells);
+            long[] counts = new long[(high - low + 1) * cells];
+            if (bombRange > 0)
+                System.arraycopy(bombCountsByBombs, 0, counts, (lowBombs - low) * cells, bombRange * cells);
+            bombCountsByBombs = counts;
+            lowBombs = low;
+            bombRange = high - low + 1;
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * One move a MinesweeperStrategy can make: reveal a cell, the way a left
+ * click does, or plant or remove a flag, the way a right click does.
+ */
+public final class MinesweeperMove {
+    // kinds of move
+    public static final int REVEAL = 0;
+    public static final int FLAG = 1;
+
+    // the kind of move and the index of the cell it is made on
+    private final int type;
+    private final int index;
+
+    // constructor for MinesweeperMove; see reveal and flag
+    private MinesweeperMove(int type, int index) {
+        this.type = type;
+        this.index = index;
+    }
+
+    // returns a move revealing the cell at index
+    public static MinesweeperMove reveal(int index) {
+        return new MinesweeperMove(REVEAL, index);
+    }
+
+    // returns a move planting or removing a flag on the cell at index
+    public static MinesweeperMove flag(int index) {
+        return new MinesweeperMove(FLAG, index);
+    }
+
+    // public accessors for the move
+    public int getType() { return type; }
+    public int getIndex() { return index; }
+
+    // makes the move on a board, through the same rules as the game window;
+    // returns true if the board changed
+    public boolean applyTo(MinesweeperBoard board) {
+        if (index < 0 || index >= board.getCellCount())
+            return false;
+        if (type == FLAG)
+            return board.toggleFlag(index);
+        int oldStatus = board.getStatus();
+        return board.reveal(index) > 0 || board.getStatus() != oldStatus;
+    }
+
+    public String toString() {
+        return (type == FLAG ? "flag " : "reveal ") + index;
+    }
+}
@@ -0,0 +1,215 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * Class representing a race: many players playing the same seeded board at
+ * the same time.
+ *
+ * There is one authoritative MinesweeperLayout for the race, and every player
+ * gets their own MinesweeperBoard on top of it, so a move is validated with
+ * the same reveal and flood fill rules as the game window at the cost of the
+ * cells it flips. Players are ranked by the time from the start of the race
+ * to clearing their board. Progress is sent to the listeners from a separate
+ * thread, so a slow listener never holds up a move.
+ */
+public class MinesweeperRace {
+    // the board every player plays
+    private final MinesweeperLayout layout;
+
+    // the players, keyed by name
+    private final ConcurrentHashMap<String, Player> players = new ConcurrentHashMap<>();
+
+    // objects told about every player's progress, and the thread telling them
+    private final List<MinesweeperRaceListener> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService broadcaster;
+
+    // System.nanoTime when the race started; 0 until then
+    private volatile long startTime;
+
+    // System.nanoTime of the last join, start or move, for expiring idle
+    // races, and whether the race has been closed
+    private volatile long lastActivity;
+    private volatile boolean closed;
+
+    /*
+     * One player in the race and their copy of the board.
+     */
+    private static class Player {
+        final String name;
+        final MinesweeperBoard board;
+
+        // milliseconds from the start of the race to finishing, -1 until then
+        volatile long finishMillis = -1;
+
+        Player(String name, MinesweeperLayout layout) {
+            this.name = name;
+            board = new MinesweeperBoard(layout);
+        }
+
+        // number of tiles this player has cleared so far
+        int getTilesCleared() {
+            return board.getCellCount() - board.getLayout().getBombs() - board.getTilesToClear();
+        }
+    }
+
+    // constructor for MinesweeperRace
+    public MinesweeperRace(int rows, int columns, int bombs, long seed) {
+        layout = new MinesweeperLayout(rows, columns, bombs, seed);
+        lastActivity = System.nanoTime();
+        broadcaster = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "minesweeper-race-broadcast");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    // public accessor for the board being raced on
+    public MinesweeperLayout getLayout() { return layout; }
+
+    // public accessor to check if the race has started
+    public boolean isStarted() { return startTime != 0; }
+
+    // public accessor for the System.nanoTime of the last join, start or move
+    public long getLastActivity() { return lastActivity; }
+
+    // adds a listener that is told about every player's progress
+    public void addListener(MinesweeperRaceListener listener) {
+        listeners.add(listener);
+    }
+
+    // removes a listener added with addListener; returns true if no listeners are left
+    public boolean removeListener(MinesweeperRaceListener listener) {
+        listeners.remove(listener);
+        return listeners.isEmpty();
+    }
+
+    // adds a player; returns false if the name is taken or the race has started
+    public boolean join(String name) {
+        if (isStarted() || closed)
+            return false;
+        lastActivity = System.nanoTime();
+        return players.putIfAbsent(name, new Player(name, layout)) == null;
+    }
+
+    // starts the clock; moves are refused until the race has started
+    public synchronized void start() {
+        lastActivity = System.nanoTime();
+        if (startTime == 0)
+            startTime = System.nanoTime();
+    }
+
+    // milliseconds since the race started
+    public long getElapsedMillis() {
+        return isStarted() ? (System.nanoTime() - startTime) / 1000000 : 0;
+    }
+
+    // returns a player's board, or null if there is no such player
+    public MinesweeperBoard getBoard(String name) {
+        Player player = players.get(name);
+        return player == null ? null : player.board;
+    }
+
+    // validates and makes a move for a player: reveals the cell at index, or
+    // plants or removes a flag on it; returns the number of tiles flipped
+    // throws IllegalArgumentException or IllegalStateException for moves that aren't allowed
+    public int move(String name, int index, boolean flag) {
+        Player player = players.get(name);
+        if (player == null)
+            throw new IllegalArgumentException("Not in this race: " + name);
+        if (closed)
+            throw new IllegalStateException("The race has ended");
+        if (!isStarted())
+            throw new IllegalStateException("The race has not started");
+        if (index < 0 || index >= layout.getCellCount())
+            throw new IllegalArgumentException("Cell out of range: " + index);
+
+        lastActivity = System.nanoTime();
+        MinesweeperBoard board = player.board;
+        int tilesFlipped, tilesCleared, status;
+        synchronized (board) {
+            // flags don't count as progress, and moves on a finished board or on
+            // revealed cells change nothing, so they are answered without telling anyone
+            if (flag) {
+                board.toggleFlag(index);
+                return 0;
+            }
+            if (board.getStatus() != MinesweeperBoard.PLAYING)
+                return 0;
+            tilesFlipped = board.reveal(index);
+            if (tilesFlipped == 0 && board.getStatus() == MinesweeperBoard.PLAYING)
+                return 0;
+
+            status = board.getStatus();
+            tilesCleared = player.getTilesCleared();
+            if (status == MinesweeperBoard.WON)
+                player.finishMillis = getElapsedMillis();
+        }
+
+        broadcast(name, tilesCleared, status, getElapsedMillis());
+        return tilesFlipped;
+    }
+
+    // returns the players best first: everyone who cleared the board by their
+    // time, then everyone still playing by tiles cleared, then the players who lost
+    // each entry is "name finishMillis tilesCleared status"
+    public List<String> getStandings() {
+        List<Player> ranked = new ArrayList<>(players.values());
+        Collections.sort(ranked, new Comparator<Player>() {
+            public int compare(Player a, Player b) {
+                int groupA = group(a);
+                int groupB = group(b);
+                if (groupA != groupB)
+                    return Integer.compare(groupA, groupB);
+                if (groupA == 0)
+                    return Long.compare(a.finishMillis, b.finishMillis);
+                return Integer.compare(b.getTilesCleared(), a.getTilesCleared());
+            }
+
+            // 0 for winners, 1 for players still playing, 2 for players who lost
+            private int group(Player player) {
+                int status = player.board.getStatus();
+                return status == MinesweeperBoard.WON ? 0 : status == MinesweeperBoard.PLAYING ? 1 : 2;
+            }
+        });
+
+        List<String> standings = new ArrayList<>(ranked.size());
+        for (Player player : ranked) {
+            standings.add(player.name + " " + player.finishMillis + " " + player.getTilesCleared()
+                    + " " + MinesweeperBoard.statusName(player.board.getStatus()));
+        }
+        return standings;
+    }
+
+    // stops the broadcast thread once the race is no longer needed; moves
+    // are refused from then on
+    public void close() {
+        closed = true;
+        broadcaster.shutdown();
+    }
+
+    // hands a progress update to the broadcast thread
+    private void broadcast(final String name, final int tilesCleared, final int status, final long elapsedMillis) {
+        if (listeners.isEmpty())
+            return;
+        try {
+            broadcaster.execute(new Runnable() {
+                public void run() {
+                    for (MinesweeperRaceListener listener : listeners)
+                        listener.progress(name, tilesCleared, status, elapsedMillis);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the race was closed during the move; nobody is told any more
+        }
+    }
+}
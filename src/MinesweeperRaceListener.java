@@ -0,0 +1,10 @@
+/*
+ * Interface for anything following the progress of a MinesweeperRace,
+ * e.g. the connections of the players in the race.
+ */
+public interface MinesweeperRaceListener {
+    // called on the race's broadcast thread, so it must not block, when a
+    // player's progress changes; status is one of the
+    // MinesweeperBoard game states and elapsedMillis is the time since the race started
+    void progress(String player, int tilesCleared, int status, long elapsedMillis);
+}
@@ -0,0 +1,31 @@
+import java.util.Random;
+
+/*
+ * A MinesweeperStrategy that reveals a random hidden cell every move; the
+ * baseline any other strategy should beat.
+ */
+public class MinesweeperRandomStrategy implements MinesweeperStrategy {
+    // picks the cells; seeded by startGame
+    private Random random;
+
+    public String getName() { return "random"; }
+
+    public void startGame(MinesweeperVisibleBoard board, long seed) {
+        random = new Random(seed);
+    }
+
+    // picks among the hidden cells that aren't flagged
+    public MinesweeperMove chooseMove(MinesweeperVisibleBoard board) {
+        int hidden = 0;
+        for (int index = 0; index < board.getCellCount(); index++) {
+            if (board.getState(index) == MinesweeperBoard.HIDDEN)
+                hidden++;
+        }
+        int pick = random.nextInt(Math.max(hidden, 1));
+        for (int index = 0; index < board.getCellCount(); index++) {
+            if (board.getState(index) == MinesweeperBoard.HIDDEN && pick-- == 0)
+                return MinesweeperMove.reveal(index);
+        }
+        return MinesweeperMove.reveal(0);
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * A MinesweeperStrategy that always reveals the cell least likely to be a
+ * bomb according to a MinesweeperFrontier, the way MinesweeperSimulator plays.
+ *
+ * Ties go to the lowest index, so with a solver that has no Monte Carlo
+ * estimator the strategy plays the same game the same way every time.
+ */
+public class MinesweeperSafestCellStrategy implements MinesweeperStrategy {
+    // solves frontier components and remembers them; may be shared between
+    // instances playing at the same time, and the cache may be null
+    private final MinesweeperSolver solver;
+    private final MinesweeperSolverCache cache;
+
+    // the chances for the game being played
+    private MinesweeperFrontier frontier;
+
+    // constructor for MinesweeperSafestCellStrategy
+    public MinesweeperSafestCellStrategy(MinesweeperSolver solver, MinesweeperSolverCache cache) {
+        this.solver = solver;
+        this.cache = cache;
+    }
+
+    public String getName() { return "safest"; }
+
+    public void startGame(MinesweeperVisibleBoard board, long seed) {
+        frontier = new MinesweeperFrontier(board, solver, cache);
+    }
+
+    public MinesweeperMove chooseMove(MinesweeperVisibleBoard board) {
+        frontier.update();
+        int best = 0;
+        float bestProbability = 2;
+        for (int index = 0; index < board.getCellCount(); index++) {
+            // flagged cells can't be revealed until the flag is removed
+            if (board.getState(index) != MinesweeperBoard.HIDDEN)
+                continue;
+            float probability = frontier.getProbability(index);
+            if (probability < bestProbability) {
+                best = index;
+                bestProbability = probability;
+            }
+        }
+        return MinesweeperMove.reveal(best);
+    }
+}
@@ -0,0 +1,139 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ * Append-only on-disk store for spilled boards.
+ *
+ * Records are appended to the current segment file, which is rolled over once
+ * it grows past the segment size. Nothing is ever rewritten: a record that is
+ * no longer needed is released, and a segment file is deleted once every
+ * record in it has been released. The store does not survive a restart; the
+ * directory is cleared when the store is opened.
+ */
+public class MinesweeperSegmentStore {
+    // directory holding the segment files and the size at which a segment rolls over
+    private final File directory;
+    private final long segmentSize;
+
+    // the segment currently appended to
+    private int currentSegment;
+    private FileChannel currentChannel;
+
+    // open channels and the number of live records for every segment
+    private final Map<Integer, FileChannel> channels = new HashMap<>();
+    private final Map<Integer, Integer> liveRecords = new HashMap<>();
+
+    // constructor for MinesweeperSegmentStore
+    public MinesweeperSegmentStore(File directory, long segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        // start from an empty directory
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Unable to create spill directory " + directory);
+        File[] oldSegments = directory.listFiles();
+        if (oldSegments != null) {
+            for (File segment : oldSegments) {
+                if (segment.getName().endsWith(".seg") && !segment.delete())
+                    throw new IOException("Unable to delete old segment " + segment);
+            }
+        }
+
+        currentSegment = -1;
+        rollOver();
+    }
+
+    // appends a record to the current segment; returns its offset, and the
+    // segment it was written to in segmentOut[0]
+    public synchronized long append(byte[] record, int[] segmentOut) throws IOException {
+        if (currentChannel.size() + record.length > segmentSize && currentChannel.size() > 0)
+            rollOver();
+
+        long offset = currentChannel.size();
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        while (buffer.hasRemaining())
+            currentChannel.write(buffer, offset + buffer.position());
+
+        liveRecords.put(currentSegment, liveRecords.get(currentSegment) + 1);
+        segmentOut[0] = currentSegment;
+        return offset;
+    }
+
+    // reads a record back
+    public byte[] read(int segment, long offset, int length) throws IOException {
+        FileChannel channel;
+        synchronized (this) {
+            channel = channels.get(segment);
+        }
+        if (channel == null)
+            throw new IOException("Segment " + segment + " has been deleted");
+
+        // positional reads don't move the channel's position, so they
+        // don't need to be synchronized with appends
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0)
+                throw new IOException("Unexpected end of segment " + segment);
+        }
+        return buffer.array();
+    }
+
+    // marks a record as no longer needed, deleting its segment once it is empty
+    public synchronized void release(int segment) throws IOException {
+        int live = liveRecords.get(segment) - 1;
+        liveRecords.put(segment, live);
+        if (live == 0 && segment != currentSegment)
+            deleteSegment(segment);
+    }
+
+    // public accessors for the number of segment files and their total size
+    public synchronized int getSegmentCount() { return channels.size(); }
+
+    public synchronized long getDiskBytes() throws IOException {
+        long bytes = 0;
+        for (FileChannel channel : channels.values())
+            bytes += channel.size();
+        return bytes;
+    }
+
+    // closes every segment and deletes the files
+    public synchronized void close() throws IOException {
+        for (Integer segment : channels.keySet().toArray(new Integer[0]))
+            deleteSegment(segment);
+    }
+
+    // starts a new segment file, deleting the old one if nothing in it is live
+    private void rollOver() throws IOException {
+        int oldSegment = currentSegment;
+        currentSegment++;
+        File file = segmentFile(currentSegment);
+        currentChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channels.put(currentSegment, currentChannel);
+        liveRecords.put(currentSegment, 0);
+
+        if (oldSegment >= 0 && liveRecords.get(oldSegment) == 0)
+            deleteSegment(oldSegment);
+    }
+
+    // closes and deletes a segment file
+    private void deleteSegment(int segment) throws IOException {
+        FileChannel channel = channels.remove(segment);
+        liveRecords.remove(segment);
+        if (channel != null)
+            channel.close();
+        File file = segmentFile(segment);
+        if (file.exists() && !file.delete())
+            throw new IOException("Unable to delete segment " + file);
+    }
+
+    // the file for a segment number
+    private File segmentFile(int segment) {
+        return new File(directory, String.format("%08d.seg", segment));
+    }
+}
@@ -0,0 +1,546 @@
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Runs Minesweeper as a backend instead of a window.
+ *
+ * Clients connect over a plain socket and play headless MinesweeperBoards
+ * with one text command per line:
+ *
+ *   NEW <rows> <columns> <bombs> [seed]  ->  OK <sessionId>
+ *   OPEN <sessionId>                     ->  OK <sessionId>
+ *   REVEAL <row> <col>                   ->  <status> <tilesFlipped> <tilesToClear>
+ *   FLAG <row> <col>                     ->  <status> <flagsRemaining>
+ *   STATS                                ->  session store metrics
+ *   QUIT
+ *
+ * Races, where every player plays the same seeded board (see MinesweeperRace):
+ *
+ *   RACE <raceId> <rows> <columns> <bombs> <seed>  ->  OK <raceId>
+ *   JOIN <raceId> <name>                 ->  OK <raceId>
+ *   START                                ->  OK <raceId>
+ *   STANDINGS                            ->  STANDINGS <name> <finishMillis> <tilesCleared> <status>, ...
+ *
+ * Once a connection joins a race, REVEAL and FLAG apply to its board in the
+ * race, and the progress of every player is pushed to it as
+ * "PROGRESS <name> <tilesCleared> <status> <elapsedMillis>" lines between replies.
+ * A player that falls too far behind reading them gets "ERR progress too
+ * slow" and no more progress; STANDINGS still works. Races count against
+ * the limit on games, and a race nobody has joined, started or moved in for
+ * half an hour is dropped.
+ *
+ * Any number of connections can watch a game as it is played (see MinesweeperBroadcast):
+ *
+ *   WATCH <sessionId>                    ->  OK <sessionId>
+ *
+ * after which every move is pushed as a "FRAME <base64>" line, starting
+ * with a keyframe, and "END" once the game is over. Watching another game
+ * stops watching the first. A spectator that falls too far behind gets
+ * "ERR spectator too slow" and can WATCH again to catch up.
+ *
+ * where status is PLAYING, WON, or LOST. Errors are answered with "ERR <message>".
+ * Each connection gets its own thread; on a JDK with virtual threads those are
+ * used, so tens of thousands of connections don't need tens of thousands of
+ * platform threads. Idle games are spilled to disk by a MinesweeperSessionStore,
+ * and games abandoned for a day are dropped.
+ * Main function at bottom of class.
+ */
+public class MinesweeperServer {
+    // default port, and default limits on the size of a game and the number of games
+    public static final int DEFAULT_PORT = 7878;
+    public static final int DEFAULT_MAX_CELLS = 1 << 20;
+    public static final int DEFAULT_MAX_SESSIONS = 100000;
+    public static final int DEFAULT_MAX_RESIDENT = 10000;
+    public static final long DEFAULT_IDLE_MILLIS = 60000;
+    public static final long DEFAULT_EXPIRE_MILLIS = 24 * 60 * 60 * 1000L;
+    public static final long RACE_EXPIRE_MILLIS = 30 * 60 * 1000L;
+
+    // progress lines queued for a racer before it is sent no more
+    public static final int PUSH_QUEUE_LINES = 1024;
+
+    // port to listen on (0 picks a free port) and the limits for games
+    private final int port, maxCells, maxSessions;
+
+    // all of the games in progress, keyed by session id
+    private final MinesweeperSessionStore sessions;
+    private final AtomicLong nextSessionId = new AtomicLong(1);
+
+    // all of the races, keyed by race id
+    private final ConcurrentHashMap<String, MinesweeperRace> races = new ConcurrentHashMap<>();
+
+    // the games being watched, keyed by session id; lock the map itself to
+    // add or remove spectators, so a broadcast isn't closed as one joins
+    private final ConcurrentHashMap<Long, MinesweeperBroadcast> broadcasts = new ConcurrentHashMap<>();
+
+    // spills idle games in the background
+    private final ScheduledExecutorService evictionExecutor;
+
+    // runs one task per connection
+    private final ExecutorService connectionExecutor = newConnectionExecutor();
+
+    private ServerSocket serverSocket;
+    private volatile boolean running;
+
+    // constructor for MinesweeperServer
+    public MinesweeperServer(int port, int maxCells, int maxSessions, long idleMillis,
+                             MinesweeperSessionStore sessions) {
+        this.port = port;
+        this.maxCells = maxCells;
+        this.maxSessions = maxSessions;
+        this.sessions = sessions;
+
+        // check for idle games a few times per idle period
+        evictionExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable task) {
+                Thread thread = new Thread(task, "minesweeper-eviction");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        long period = Math.max(idleMillis / 4, 100);
+        evictionExecutor.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                MinesweeperServer.this.sessions.evictIdle();
+                expireRaces();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // opens the server socket and starts accepting connections in the background
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port, 1024);
+        running = true;
+
+        Thread acceptThread = new Thread(new Runnable() {
+            public void run() {
+                acceptConnections();
+            }
+        }, "minesweeper-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    // stops accepting connections and closes the server socket
+    public void stop() throws IOException {
+        running = false;
+        serverSocket.close();
+        connectionExecutor.shutdownNow();
+        evictionExecutor.shutdownNow();
+    }
+
+    // public accessor for the port the server is listening on
+    public int getPort() { return serverSocket.getLocalPort(); }
+
+    // public accessor for the games in progress
+    public MinesweeperSessionStore getSessions() { return sessions; }
+
+    // hands every new connection off to its own thread
+    private void acceptConnections() {
+        while (running) {
+            try {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connectionExecutor.execute(new Runnable() {
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            } catch (IOException e) {
+                if (running)
+                    System.err.println("Error accepting connection: " + e.getMessage());
+            }
+        }
+    }
+
+    /*
+     * What the server knows about one connection. Also receives the progress
+     * of the race the connection has joined and pushes it to the client.
+     *
+     * Progress is queued by the race's broadcast thread and written by a task
+     * of the connection's own, so a player who stops reading only holds up
+     * itself; one whose queue fills up is sent no more progress.
+     */
+    private static class Connection implements MinesweeperRaceListener {
+        // replies and pushed lines both go through out, one line at a time
+        final Writer out;
+
+        // progress lines not yet written, written by a task of their own
+        final MinesweeperLineQueue<String> pushed;
+
+        // id of the game this connection is playing; 0 means none
+        long sessionId;
+
+        // the race this connection has joined, its id, and the connection's name in the race
+        MinesweeperRace race;
+        String raceId, player;
+
+        // sends the game this connection is watching, and that game's id
+        MinesweeperSocketSpectator spectator;
+        long watchedId;
+
+        Connection(Writer out) {
+            this.out = out;
+            pushed = new MinesweeperLineQueue<>(out, PUSH_QUEUE_LINES, "ERR progress too slow");
+        }
+
+        // writes a single line to the client
+        void send(String line) throws IOException {
+            synchronized (out) {
+                out.write(line);
+                out.write('\n');
+                out.flush();
+            }
+        }
+
+        public void progress(String name, int tilesCleared, int status, long elapsedMillis) {
+            pushed.offer("PROGRESS " + name + " " + tilesCleared + " " + MinesweeperBoard.statusName(status) + " " + elapsedMillis);
+        }
+
+        // stops writing progress once the connection closes
+        void stopPushing() {
+            pushed.stop();
+        }
+    }
+
+    // reads commands from one client until it quits or disconnects
+    private void serve(Socket socket) {
+        Connection connection = null;
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+             Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.US_ASCII))) {
+            connection = new Connection(out);
+
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.equals("QUIT"))
+                    break;
+                connection.send(processCommand(line, connection));
+
+                // frames only follow the reply to WATCH
+                if (connection.spectator != null)
+                    connection.spectator.start();
+            }
+        } catch (SocketException e) {
+            // the client went away
+        } catch (IOException e) {
+            System.err.println("Error serving connection: " + e.getMessage());
+        } finally {
+            // stop pushing race progress to a closed connection, and drop
+            // the race once nobody is left in it
+            if (connection != null && connection.race != null) {
+                connection.stopPushing();
+                if (connection.race.removeListener(connection)) {
+                    races.remove(connection.raceId, connection.race);
+                    connection.race.close();
+                }
+            }
+            if (connection != null)
+                unwatch(connection);
+        }
+    }
+
+    // runs a single command for a connection and returns the reply
+    private String processCommand(String line, Connection connection) {
+        String[] args = line.trim().split(" +");
+        try {
+            switch (args[0]) {
+                case "NEW":
+                    return newSession(args, connection);
+                case "OPEN":
+                    long id = Long.parseLong(args[1]);
+                    if (sessions.get(id) == null)
+                        return "ERR no such session: " + id;
+                    connection.sessionId = id;
+                    return "OK " + id;
+                case "REVEAL":
+                case "FLAG":
+                    if (connection.race != null)
+                        return raceMove(args, connection);
+                    return move(args, connection.sessionId);
+                case "STATS":
+                    return sessions.getMetrics();
+                case "WATCH":
+                    return watch(args, connection);
+                case "RACE":
+                    return newRace(args);
+                case "JOIN":
+                    return joinRace(args, connection);
+                case "START":
+                    if (connection.race == null)
+                        return "ERR not in a race";
+                    connection.race.start();
+                    return "OK " + connection.raceId;
+                case "STANDINGS":
+                    if (connection.race == null)
+                        return "ERR not in a race";
+                    return "STANDINGS " + String.join(", ", connection.race.getStandings());
+                default:
+                    return "ERR unknown command: " + args[0];
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            return "ERR malformed command: " + line;
+        } catch (IllegalArgumentException e) {
+            return "ERR " + e.getMessage();
+        } catch (IllegalStateException e) {
+            return "ERR " + e.getMessage();
+        } catch (IOException e) {
+            return "ERR storage failure: " + e.getMessage();
+        }
+    }
+
+    // starts a new game for the connection
+    private String newSession(String[] args, Connection connection) throws IOException {
+        if (connection.race != null)
+            return "ERR already in a race";
+
+        int rows = Integer.parseInt(args[1]);
+        int columns = Integer.parseInt(args[2]);
+        int bombs = Integer.parseInt(args[3]);
+        long seed = args.length > 4 ? Long.parseLong(args[4]) : System.nanoTime();
+
+        // refuse games that would break the memory limits up front
+        MinesweeperLayout.checkDimensions(rows, columns, bombs);
+        if ((long) rows * columns > maxCells)
+            return "ERR board larger than " + maxCells + " cells";
+        if (sessions.getSessionCount() + races.size() >= maxSessions)
+            return "ERR too many sessions";
+
+        long id = nextSessionId.getAndIncrement();
+        sessions.create(id, new MinesweeperBoard(new MinesweeperLayout(rows, columns, bombs, seed)));
+        connection.sessionId = id;
+        return "OK " + id;
+    }
+
+    // reveals or flags a cell on the connection's current game
+    private String move(String[] args, long id) throws IOException {
+        MinesweeperSession session = sessions.get(id);
+        if (session == null)
+            return "ERR no game in progress";
+        int row = Integer.parseInt(args[1]);
+        int col = Integer.parseInt(args[2]);
+
+        // several connections may have the same session open, and the
+        // store must not spill the board in the middle of a move
+        String reply;
+        session.lock.lock();
+        try {
+            // another connection may have finished the game while this one waited
+            if (session.removed)
+                return "ERR no game in progress";
+            MinesweeperBoard board = sessions.acquire(session);
+            if (row < 0 || col < 0 || row >= board.getRows() || col >= board.getColumns())
+                return "ERR cell out of range: " + row + " " + col;
+
+            // the board may have been read back from disk since the last move
+            MinesweeperBroadcast broadcast = broadcasts.get(id);
+            if (broadcast != null)
+                broadcast.follow(board);
+
+            if (args[0].equals("REVEAL")) {
+                int tilesFlipped = board.reveal(row, col);
+                reply = MinesweeperBoard.statusName(board.getStatus()) + " " + tilesFlipped + " " + board.getTilesToClear();
+            } else {
+                board.toggleFlag(row, col);
+                reply = MinesweeperBoard.statusName(board.getStatus()) + " " + board.getFlagsRemaining();
+            }
+
+            if (broadcast != null)
+                broadcast.publish();
+
+            // finished games take no more moves, so they don't need to be kept
+            if (board.getStatus() != MinesweeperBoard.PLAYING) {
+                sessions.remove(id);
+                if (broadcast != null && broadcasts.remove(id, broadcast))
+                    broadcast.close();
+            }
+        } finally {
+            session.lock.unlock();
+        }
+        return reply;
+    }
+
+    // makes the connection a spectator of a game
+    private String watch(String[] args, Connection connection) throws IOException {
+        long id = Long.parseLong(args[1]);
+        MinesweeperSession session = sessions.get(id);
+        if (session == null)
+            return "ERR no such session: " + id;
+        unwatch(connection);
+
+        // the session's lock keeps a move from finishing the game, and closing
+        // its broadcast, while the spectator is added
+        synchronized (broadcasts) {
+            session.lock.lock();
+            try {
+                // the game may have finished since it was looked up
+                if (session.removed)
+                    return "ERR no such session: " + id;
+                MinesweeperBroadcast broadcast = broadcasts.get(id);
+                boolean finished = false;
+                if (broadcast == null) {
+                    MinesweeperBoard board = sessions.acquire(session);
+                    broadcast = new MinesweeperBroadcast(board);
+                    finished = board.getStatus() != MinesweeperBoard.PLAYING;
+                    if (!finished)
+                        broadcasts.put(id, broadcast);
+                }
+                connection.spectator = new MinesweeperSocketSpectator(connection.out, connectionExecutor);
+                connection.watchedId = id;
+                broadcast.addSpectator(connection.spectator);
+
+                // a finished game takes no more moves, so the spectator gets
+                // its last keyframe and END at once
+                if (finished)
+                    broadcast.close();
+            } finally {
+                session.lock.unlock();
+            }
+        }
+        return "OK " + id;
+    }
+
+    // stops the connection watching a game, and the game's broadcast once nobody is watching
+    private void unwatch(Connection connection) {
+        if (connection.spectator == null)
+            return;
+
+        // as in watch, the session's lock keeps a move from publishing to
+        // the broadcast while it is closed; a finished session has no moves left
+        MinesweeperSession session = sessions.get(connection.watchedId);
+        synchronized (broadcasts) {
+            if (session != null)
+                session.lock.lock();
+            try {
+                MinesweeperBroadcast broadcast = broadcasts.get(connection.watchedId);
+                if (broadcast != null && broadcast.removeSpectator(connection.spectator)) {
+                    broadcasts.remove(connection.watchedId);
+                    broadcast.close();
+                }
+            } finally {
+                if (session != null)
+                    session.lock.unlock();
+            }
+        }
+        connection.spectator.stop();
+        connection.spectator = null;
+    }
+
+    // creates a race that players can join
+    private String newRace(String[] args) {
+        String raceId = args[1];
+        int rows = Integer.parseInt(args[2]);
+        int columns = Integer.parseInt(args[3]);
+        int bombs = Integer.parseInt(args[4]);
+        long seed = Long.parseLong(args[5]);
+
+        MinesweeperLayout.checkDimensions(rows, columns, bombs);
+        if ((long) rows * columns > maxCells)
+            return "ERR board larger than " + maxCells + " cells";
+        if (sessions.getSessionCount() + races.size() >= maxSessions)
+            return "ERR too many sessions";
+        if (races.putIfAbsent(raceId, new MinesweeperRace(rows, columns, bombs, seed)) != null)
+            return "ERR race already exists: " + raceId;
+        return "OK " + raceId;
+    }
+
+    // adds the connection to a race as a player
+    private String joinRace(String[] args, Connection connection) {
+        MinesweeperRace race = races.get(args[1]);
+        if (race == null)
+            return "ERR no such race: " + args[1];
+        if (connection.race != null)
+            return "ERR already in a race";
+        if (!race.join(args[2]))
+            return "ERR unable to join race " + args[1];
+
+        connection.race = race;
+        connection.raceId = args[1];
+        connection.player = args[2];
+        race.addListener(connection);
+        connectionExecutor.execute(connection.pushed);
+        return "OK " + args[1];
+    }
+
+    // drops races nobody has joined, started or moved in for RACE_EXPIRE_MILLIS;
+    // their players' moves are refused from then on
+    private void expireRaces() {
+        long now = System.nanoTime();
+        for (Map.Entry<String, MinesweeperRace> entry : races.entrySet()) {
+            MinesweeperRace race = entry.getValue();
+            if (now - race.getLastActivity() > RACE_EXPIRE_MILLIS * 1000000L && races.remove(entry.getKey(), race))
+                race.close();
+        }
+    }
+
+    // reveals or flags a cell on the connection's board in its race
+    private String raceMove(String[] args, Connection connection) {
+        MinesweeperRace race = connection.race;
+        MinesweeperBoard board = race.getBoard(connection.player);
+        int row = Integer.parseInt(args[1]);
+        int col = Integer.parseInt(args[2]);
+        if (row < 0 || col < 0 || row >= board.getRows() || col >= board.getColumns())
+            return "ERR cell out of range: " + row + " " + col;
+
+        // only this connection moves on this board, so the results can be
+        // read back after the race has validated the move
+        if (args[0].equals("REVEAL")) {
+            int tilesFlipped = race.move(connection.player, row * board.getColumns() + col, false);
+            return MinesweeperBoard.statusName(board.getStatus()) + " " + tilesFlipped + " " + board.getTilesToClear();
+        } else {
+            race.move(connection.player, row * board.getColumns() + col, true);
+            return MinesweeperBoard.statusName(board.getStatus()) + " " + board.getFlagsRemaining();
+        }
+    }
+
+    // creates a server whose idle games are spilled to segment files in spillDirectory
+    public static MinesweeperServer newServer(int port, int maxCells, int maxSessions, int maxResident,
+                                              long idleMillis, File spillDirectory) throws IOException {
+        MinesweeperSegmentStore segments = new MinesweeperSegmentStore(spillDirectory, 64L << 20);
+        MinesweeperSessionStore sessions = new MinesweeperSessionStore(maxResident, idleMillis,
+                DEFAULT_EXPIRE_MILLIS, segments);
+        return new MinesweeperServer(port, maxCells, maxSessions, idleMillis, sessions);
+    }
+
+    // uses a virtual thread per connection when the JDK has them (21 and up),
+    // otherwise a cached pool of platform threads
+    static ExecutorService newConnectionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /* *************************************************************************
+     *                         MAIN METHOD
+     * *************************************************************************
+     */
+    // usage: MinesweeperServer [port] [maxCells] [maxSessions] [maxResident] [idleSeconds] [spillDirectory]
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        int maxCells = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MAX_CELLS;
+        int maxSessions = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_MAX_SESSIONS;
+        int maxResident = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_MAX_RESIDENT;
+        long idleMillis = args.length > 4 ? Long.parseLong(args[4]) * 1000 : DEFAULT_IDLE_MILLIS;
+        File spillDirectory = new File(args.length > 5 ? args[5] : "minesweeper-spill");
+
+        MinesweeperServer server = newServer(port, maxCells, maxSessions, maxResident, idleMillis, spillDirectory);
+        server.start();
+        System.out.println("Minesweeper server listening on port " + server.getPort());
+
+        // keep the main thread alive; the accept thread is a daemon
+        while (true) {
+            try {
+                Thread.sleep(Long.MAX_VALUE);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+}
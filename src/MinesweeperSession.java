@@ -0,0 +1,47 @@
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Class representing one game on a MinesweeperServer.
+ *
+ * The session itself is small and always stays in memory; its board may be
+ * spilled to disk by the MinesweeperSessionStore while the game is idle.
+ * Hold the lock while using the board; the store only spills boards it can lock.
+ */
+public class MinesweeperSession {
+    // id the clients use for this game
+    private final long id;
+
+    // guards the board and the spill location
+    final ReentrantLock lock = new ReentrantLock();
+
+    // the board while it is in memory, null while it is spilled
+    MinesweeperBoard board;
+
+    // where the board was last spilled: segment number, offset, and length
+    int spillSegment = -1;
+    long spillOffset;
+    int spillLength;
+
+    // set once the store has removed the session; a move that was waiting
+    // for the lock finds the game gone
+    boolean removed;
+
+    // heap bytes of the board as last counted by the store
+    long residentBytes;
+
+    // System.nanoTime of the last move, for idle eviction
+    volatile long lastAccess;
+
+    // constructor for MinesweeperSession
+    MinesweeperSession(long id, MinesweeperBoard board) {
+        this.id = id;
+        this.board = board;
+        lastAccess = System.nanoTime();
+    }
+
+    // public accessor for the session id
+    public long getId() { return id; }
+
+    // public accessor to check if the board is in memory
+    public boolean isResident() { return board != null; }
+}
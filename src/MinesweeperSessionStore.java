@@ -0,0 +1,271 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Keeps the sessions of a MinesweeperServer, with only the recently used
+ * boards in memory.
+ *
+ * Boards are kept in least-recently-used order. When there are more than
+ * maxResident boards in memory, or a board has not been touched for
+ * idleMillis, it is spilled to a MinesweeperSegmentStore in the compact form
+ * written by MinesweeperBoard.writeTo, and it is read back the next time a
+ * move is made on it. Sessions not touched for expireMillis are abandoned
+ * games and are removed altogether.
+ *
+ * To use a board: get the session, lock session.lock, call acquire, and
+ * unlock once the move is done.
+ */
+public class MinesweeperSessionStore {
+    // limits for boards kept in memory, and for sessions kept at all
+    private final int maxResident;
+    private final long idleNanos, expireNanos;
+
+    // where spilled boards go
+    private final MinesweeperSegmentStore segments;
+
+    // every session, in memory or not
+    private final ConcurrentHashMap<Long, MinesweeperSession> sessions = new ConcurrentHashMap<>();
+
+    // sessions whose boards are in memory, least recently used first;
+    // guarded by synchronizing on the map
+    private final LinkedHashMap<Long, MinesweeperSession> resident = new LinkedHashMap<>(16, 0.75f, true);
+
+    // estimated heap bytes of the boards in memory
+    private final AtomicLong residentBytes = new AtomicLong();
+
+    // metrics: hits are moves on boards in memory, reloads are moves that
+    // had to read a board back from disk
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong reloads = new AtomicLong();
+    private final AtomicLong spills = new AtomicLong();
+    private final AtomicLong reloadNanos = new AtomicLong();
+    private final AtomicLong spillNanos = new AtomicLong();
+    private final AtomicLong maxReloadNanos = new AtomicLong();
+    private final AtomicLong maxSpillNanos = new AtomicLong();
+
+    // constructor for MinesweeperSessionStore
+    public MinesweeperSessionStore(int maxResident, long idleMillis, long expireMillis,
+                                   MinesweeperSegmentStore segments) {
+        this.maxResident = maxResident;
+        this.idleNanos = idleMillis * 1000000L;
+        this.expireNanos = expireMillis * 1000000L;
+        this.segments = segments;
+    }
+
+    // adds a new session holding the given board
+    public MinesweeperSession create(long id, MinesweeperBoard board) {
+        MinesweeperSession session = new MinesweeperSession(id, board);
+        sessions.put(id, session);
+        synchronized (resident) {
+            resident.put(id, session);
+        }
+        countBytes(session);
+        evictOverflow();
+        return session;
+    }
+
+    // returns the session with the given id, or null if there is none
+    public MinesweeperSession get(long id) {
+        return sessions.get(id);
+    }
+
+    // returns the session's board, reading it back from disk if it was spilled;
+    // the caller must hold session.lock. Throws an IllegalStateException if
+    // the session has been removed since the caller got it
+    public MinesweeperBoard acquire(MinesweeperSession session) throws IOException {
+        if (session.removed)
+            throw new IllegalStateException("no game in progress");
+        session.lastAccess = System.nanoTime();
+        if (session.board != null) {
+            hits.incrementAndGet();
+            synchronized (resident) {
+                // moves the session to the most recently used end
+                resident.get(session.getId());
+            }
+            countBytes(session);
+            return session.board;
+        }
+
+        // read the board back from its segment
+        long start = System.nanoTime();
+        byte[] record = segments.read(session.spillSegment, session.spillOffset, session.spillLength);
+        session.board = MinesweeperBoard.readFrom(new DataInputStream(new ByteArrayInputStream(record)));
+        segments.release(session.spillSegment);
+        session.spillSegment = -1;
+        recordTime(reloadNanos, maxReloadNanos, System.nanoTime() - start);
+        reloads.incrementAndGet();
+
+        synchronized (resident) {
+            resident.put(session.getId(), session);
+        }
+        countBytes(session);
+        evictOverflow();
+        return session.board;
+    }
+
+    // removes a session and whatever it has stored
+    public void remove(long id) throws IOException {
+        MinesweeperSession session = sessions.remove(id);
+        if (session == null)
+            return;
+        synchronized (resident) {
+            resident.remove(id);
+        }
+
+        session.lock.lock();
+        try {
+            session.removed = true;
+            if (session.board != null) {
+                dropBoard(session);
+            } else if (session.spillSegment >= 0) {
+                segments.release(session.spillSegment);
+                session.spillSegment = -1;
+            }
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    // spills every board that has not been touched for the idle time,
+    // and removes sessions that have expired
+    public void evictIdle() {
+        long now = System.nanoTime();
+        for (MinesweeperSession session : sessions.values()) {
+            if (now - session.lastAccess > expireNanos) {
+                try {
+                    remove(session.getId());
+                } catch (IOException e) {
+                    System.err.println("Unable to remove session " + session.getId() + ": " + e.getMessage());
+                }
+            }
+        }
+
+        long cutoff = now - idleNanos;
+        List<MinesweeperSession> victims = new ArrayList<>();
+        synchronized (resident) {
+            // least recently used first, so stop at the first recent one
+            for (MinesweeperSession session : resident.values()) {
+                if (session.lastAccess - cutoff > 0)
+                    break;
+                victims.add(session);
+            }
+        }
+        for (MinesweeperSession session : victims)
+            spill(session);
+    }
+
+    // spills least recently used boards until at most maxResident are in memory
+    private void evictOverflow() {
+        List<MinesweeperSession> victims = new ArrayList<>();
+        synchronized (resident) {
+            int excess = resident.size() - maxResident;
+            Iterator<MinesweeperSession> iterator = resident.values().iterator();
+            while (excess-- > 0 && iterator.hasNext())
+                victims.add(iterator.next());
+        }
+        for (MinesweeperSession session : victims)
+            spill(session);
+    }
+
+    // writes a board to disk and drops it from memory; boards that are
+    // being played right now are skipped rather than waited for
+    private void spill(MinesweeperSession session) {
+        // never spill the board the calling thread is in the middle of using
+        if (session.lock.isHeldByCurrentThread() || !session.lock.tryLock())
+            return;
+        try {
+            if (session.board == null || !sessions.containsKey(session.getId()))
+                return;
+
+            long start = System.nanoTime();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            session.board.writeTo(new DataOutputStream(bytes));
+            byte[] record = bytes.toByteArray();
+            int[] segment = new int[1];
+            session.spillOffset = segments.append(record, segment);
+            session.spillSegment = segment[0];
+            session.spillLength = record.length;
+
+            synchronized (resident) {
+                resident.remove(session.getId());
+            }
+            dropBoard(session);
+            recordTime(spillNanos, maxSpillNanos, System.nanoTime() - start);
+            spills.incrementAndGet();
+        } catch (IOException e) {
+            // the board simply stays in memory
+            System.err.println("Unable to spill session " + session.getId() + ": " + e.getMessage());
+        } finally {
+            session.lock.unlock();
+        }
+    }
+
+    // updates the resident byte count for a board that may have grown
+    private void countBytes(MinesweeperSession session) {
+        long bytes = session.board.estimateBytes();
+        residentBytes.addAndGet(bytes - session.residentBytes);
+        session.residentBytes = bytes;
+    }
+
+    // removes a board from memory and from the resident byte count
+    private void dropBoard(MinesweeperSession session) {
+        residentBytes.addAndGet(-session.residentBytes);
+        session.residentBytes = 0;
+        session.board = null;
+    }
+
+    // adds a duration to a total and keeps track of the longest one
+    private static void recordTime(AtomicLong total, AtomicLong max, long nanos) {
+        total.addAndGet(nanos);
+        long previous;
+        while (nanos > (previous = max.get()) && !max.compareAndSet(previous, nanos))
+            ;
+    }
+
+    /* *************************************************************************
+     *                            METRICS
+     * *************************************************************************
+     */
+    // public accessors for the number of sessions and the boards in memory
+    public int getSessionCount() { return sessions.size(); }
+
+    public int getResidentCount() {
+        synchronized (resident) {
+            return resident.size();
+        }
+    }
+
+    public long getResidentBytes() { return residentBytes.get(); }
+
+    // fraction of moves that found their board in memory
+    public double getHitRate() {
+        long total = hits.get() + reloads.get();
+        return total == 0 ? 1.0 : (double) hits.get() / total;
+    }
+
+    // returns all the metrics as one line of text
+    public String getMetrics() {
+        long spillCount = spills.get();
+        long reloadCount = reloads.get();
+        long diskBytes;
+        try {
+            diskBytes = segments.getDiskBytes();
+        } catch (IOException e) {
+            diskBytes = -1;
+        }
+        return String.format("sessions=%d resident=%d residentBytes=%d hitRate=%.4f " +
+                        "spills=%d spillAvgUs=%.1f spillMaxUs=%.1f " +
+                        "reloads=%d reloadAvgUs=%.1f reloadMaxUs=%.1f segments=%d diskBytes=%d",
+                getSessionCount(), getResidentCount(), getResidentBytes(), getHitRate(),
+                spillCount, spillCount == 0 ? 0 : spillNanos.get() / 1000.0 / spillCount,
+                maxSpillNanos.get() / 1000.0,
+                reloadCount, reloadCount == 0 ? 0 : reloadNanos.get() / 1000.0 / reloadCount,
+                maxReloadNanos.get() / 1000.0,
+                segments.getSegmentCount(), diskBytes);
+    }
+}
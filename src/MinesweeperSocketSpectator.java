@@ -0,0 +1,90 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.Executor;
+
+/*
+ * A MinesweeperSpectator that sends the frames of a broadcast to a client,
+ * one "FRAME <base64 of the frame>" line each, and "END" when the broadcast
+ * ends.
+ *
+ * Frames are queued by the broadcast's thread and written by a task of the
+ * spectator's own, a MinesweeperLineQueue, so a slow client only holds up
+ * itself. One whose queue fills up is dropped from the broadcast and told
+ * with "ERR spectator too slow"; it can catch up again by watching afresh,
+ * from a keyframe.
+ */
+public class MinesweeperSocketSpectator extends MinesweeperLineQueue<byte[]> implements MinesweeperSpectator {
+    // frames queued for a client before it is dropped
+    public static final int DEFAULT_QUEUE_FRAMES = 1024;
+
+    // runs the writing task
+    private final Executor executor;
+
+    // set once writing has started
+    private boolean started;
+
+    // constructor for MinesweeperSocketSpectator writing to out, which is
+    // shared with whatever else writes to the client; call start() to start writing
+    public MinesweeperSocketSpectator(Writer out, Executor executor) {
+        this(out, executor, DEFAULT_QUEUE_FRAMES);
+    }
+
+    // constructor for MinesweeperSocketSpectator with the given queue length
+    public MinesweeperSocketSpectator(Writer out, Executor executor, int queueFrames) {
+        super(out, queueFrames, "ERR spectator too slow");
+        this.executor = executor;
+    }
+
+    // starts writing frames to the client; frames taken before are kept until then
+    public synchronized void start() {
+        if (!started) {
+            started = true;
+            executor.execute(this);
+        }
+    }
+
+    public boolean frame(byte[] frame) {
+        return offer(frame);
+    }
+
+    public void closed() {
+        finish("END");
+    }
+
+    // writes a frame as a FRAME line
+    protected String line(byte[] frame) {
+        return "FRAME " + Base64.getEncoder().encodeToString(frame);
+    }
+
+    // makes everyone connecting to serverSocket a spectator of the broadcast,
+    // in the background, until the socket is closed
+    public static void acceptSpectators(final ServerSocket serverSocket, final MinesweeperBroadcast broadcast) {
+        final Executor writers = MinesweeperServer.newConnectionExecutor();
+        Thread acceptThread = new Thread(new Runnable() {
+            public void run() {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        Socket socket = serverSocket.accept();
+                        socket.setTcpNoDelay(true);
+                        Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                                StandardCharsets.US_ASCII));
+                        MinesweeperSocketSpectator spectator = new MinesweeperSocketSpectator(out, writers);
+                        spectator.start();
+                        broadcast.addSpectator(spectator);
+                    } catch (IOException e) {
+                        if (!serverSocket.isClosed())
+                            System.err.println("Error accepting spectator: " + e.getMessage());
+                    }
+                }
+            }
+        }, "minesweeper-spectator-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Solves one component of the frontier of a Minesweeper game: a set of hidden
+ * cells and the numbers around them that constrain which of them are bombs.
+ *
+ * Every assignment of bombs to the cells that agrees with all of the numbers
+ * is enumerated by backtracking. The result is counted by number of bombs,
+ * since how likely each count is depends on the rest of the board; see
+ * MinesweeperFrontier for how components are combined.
+ *
+ * Components too large to enumerate are handed to a MinesweeperMonteCarlo
+ * estimator, if the solver has one.
+ */
+public class MinesweeperSolver {
+    // default for the most search steps spent on one component; about a
+    // frame of work, so a slow component never stalls the game
+    public static final int DEFAULT_STEP_LIMIT = 1 << 18;
+
+    // largest component searched; the counts kept grow with the square of its size
+    public static final int MAX_CELLS = 512;
+
+    // search steps allowed before a component is given up on
+    private final int stepLimit;
+
+    // estimates components too large to enumerate; may be null
+    private final MinesweeperMonteCarlo estimator;
+
+    // constructor for MinesweeperSolver
+    public MinesweeperSolver() {
+        this(DEFAULT_STEP_LIMIT, new MinesweeperMonteCarlo());
+    }
+
+    public MinesweeperSolver(int stepLimit, MinesweeperMonteCarlo estimator) {
+        this.stepLimit = stepLimit;
+        this.estimator = estimator;
+    }
+
+    /*
+     * The solutions of a component, counted by number of bombs. Counts are
+     * scaled so the largest weight is 1; only their ratios matter. Only the
+     * counts from minBombs up are kept.
+     *
+     * An estimated solution also keeps the half width of a 95% confidence
+     * interval for each cell's chance of being a bomb.
+     */
+    public static class Solution {
+        // weight of the solutions with minBombs + i bombs, by i
+        private final double[] weights;
+        private final int minBombs;
+
+        // weight of the solutions with minBombs + i bombs in which a cell is
+        // a bomb, by cell and then i
+        private final double[][] bombWeights;
+
+        // half widths of the confidence intervals; null if exact
+        private final double[] halfWidths;
+
+        public Solution(int minBombs, double[] weights, double[][] bombWeights, double[] halfWidths) {
+            this.minBombs = minBombs;
+            this.weights = weights;
+            this.bombWeights = bombWeights;
+            this.halfWidths = halfWidths;
+        }
+
+        // public accessors for the weights; zero outside minBombs to maxBombs
+        public int getMinBombs() { return minBombs; }
+        public int getMaxBombs() { return minBombs + weights.length - 1; }
+
+        public double getWeight(int bombs) {
+            return bombs < minBombs || bombs > getMaxBombs() ? 0 : weights[bombs - minBombs];
+        }
+
+        public double getBombWeight(int cell, int bombs) {
+            return bombs < minBombs || bombs > getMaxBombs() ? 0 : bombWeights[cell][bombs - minBombs];
+        }
+
+        // returns true if the solution was enumerated rather than estimated
+        public boolean isExact() { return halfWidths == null; }
+
+        // public accessor for the half width of a cell's confidence interval; 0 if exact
+        public double getHalfWidth(int cell) { return halfWidths == null ? 0 : halfWidths[cell]; }
+    }
+
+    // solves a component of cells 0 to cells - 1; constraint c covers the
+    // cells constraintCells[constraintStart[c]] to
+    // constraintCells[constraintStart[c + 1] - 1] and has constraintValues[c]
+    // bombs among them; a component with more than MAX_CELLS cells, or
+    // whose search takes more than the step limit, is estimated instead, and
+    // null is returned if there is no estimator or it fails too
+    // cells are tried in order, so the caller should number them so that
+    // neighbors have nearby numbers
+    // density is the chance of a bomb elsewhere on the board; only an
+    // estimate depends on it
+    public Solution solve(int cells, int[] constraintStart, int[] constraintCells, int[] constraintValues,
+                          double density) {
+        Solution solution = null;
+        if (cells <= MAX_CELLS)
+            solution = new Search(cells, constraintStart, constraintCells, constraintValues).run();
+        if (solution == null && estimator != null)
+            solution = estimator.estimate(cells, constraintStart, constraintCells, constraintValues, density);
+        return solution;
+    }
+
+    /*
+     * State of a single backtracking search.
+     */
+    private class Search {
+        private final int cells;
+
+        // the constraints on each cell, as constraint numbers
+        private final int[] cellStart, cellConstraints;
+
+        // bombs still needed and cells still unassigned, by constraint
+        private final int[] needed, unassigned;
+
+        // the current assignment; true for a bomb
+        private final boolean[] bomb;
+
+        // counts of solutions by number of bombs, and by cell as well
+        private final double[] counts;
+        private final double[][] bombCounts;
+
+        private int steps;
+
+        Search(int cells, int[] constraintStart, int[] constraintCells, int[] constraintValues) {
+            this.cells = cells;
+            int constraints = constraintValues.length;
+
+            // invert the constraint lists into per-cell lists
+            cellStart = new int[cells + 1];
+            for (int i = 0; i < constraintStart[constraints]; i++)
+                cellStart[constraintCells[i] + 1]++;
+            for (int cell = 0; cell < cells; cell++)
+                cellStart[cell + 1] += cellStart[cell];
+            cellConstraints = new int[constraintStart[constraints]];
+            int[] fill = new int[cells];
+            for (int c = 0; c < constraints; c++) {
+                for (int i = constraintStart[c]; i < constraintStart[c + 1]; i++) {
+                    int cell = constraintCells[i];
+                    cellConstraints[cellStart[cell] + fill[cell]++] = c;
+                }
+            }
+
+            needed = constraintValues.clone();
+            unassigned = new int[constraints];
+            for (int c = 0; c < constraints; c++)
+                unassigned[c] = constraintStart[c + 1] - constraintStart[c];
+
+            bomb = new boolean[cells];
+            counts = new double[cells + 1];
+            bombCounts = new double[cells][cells + 1];
+        }
+
+        // runs the search and scales the counts
+        Solution run() {
+            if (!search(0, 0))
+                return null;
+
+            // scale so the largest count is 1, and trim the counts to the
+            // fewest and most bombs found
+            int minBombs = -1;
+            int maxBombs = 0;
+            double max = 0;
+            for (int k = 0; k <= cells; k++) {
+                if (counts[k] > 0) {
+                    if (minBombs < 0)
+                        minBombs = k;
+                    maxBombs = k;
+                }
+                max = Math.max(max, counts[k]);
+            }
+            if (max == 0)
+                return null;
+            double[] weights = new double[maxBombs - minBombs + 1];
+            double[][] bombWeights = new double[cells][maxBombs - minBombs + 1];
+            for (int k = minBombs; k <= maxBombs; k++) {
+                weights[k - minBombs] = counts[k] / max;
+                for (int cell = 0; cell < cells; cell++)
+                    bombWeights[cell][k - minBombs] = bombCounts[cell][k] / max;
+            }
+            return new Solution(minBombs, weights, bombWeights, null);
+        }
+
+        // assigns cell and every cell after it; bombs is the number of bombs
+        // assigned so far; returns false once the step limit is reached
+        private boolean search(int cell, int bombs) {
+            if (++steps > stepLimit)
+                return false;
+
+            if (cell == cells) {
+                // every constraint is met: count the solution
+                counts[bombs]++;
+                for (int i = 0; i < cells; i++) {
+                    if (bomb[i])
+                        bombCounts[i][bombs]++;
+                }
+                return true;
+            }
+
+            // try the cell as safe, then as a bomb
+            if (assign(cell, false) && !search(cell + 1, bombs))
+                return false;
+            unassign(cell, false);
+            if (assign(cell, true) && !search(cell + 1, bombs + 1))
+                return false;
+            unassign(cell, true);
+            return true;
+        }
+
+        // assigns a cell and returns true if every constraint on it can
+        // still be met; must be followed by unassign either way
+        private boolean assign(int cell, boolean isBomb) {
+            bomb[cell] = isBomb;
+            boolean possible = true;
+            for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                int c = cellConstraints[i];
+                unassigned[c]--;
+                if (isBomb)
+                    needed[c]--;
+                if (needed[c] < 0 || needed[c] > unassigned[c])
+                    possible = false;
+            }
+            return possible;
+        }
+
+        // undoes assign
+        private void unassign(int cell, boolean isBomb) {
+            bomb[cell] = false;
+            for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                int c = cellConstraints[i];
+                unassigned[c]++;
+                if (isBomb)
+                    needed[c]++;
+            }
+        }
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Remembers the solutions of frontier components so the same pattern of
+ * cells and numbers is only solved once, within a game and across games.
+ *
+ * A component is described by the positions of its cells and numbers
+ * relative to the top left of the component, so the same pattern anywhere
+ * on the board has the same description. It is looked up by a Zobrist hash:
+ * the XOR of a random 64-bit key for every (row, column, what is there) in
+ * the description. The full description is kept too and compared on every
+ * hit, so two patterns with the same hash are never confused.
+ *
+ * Entries are kept in least-recently-used order and the oldest is dropped
+ * once there are more than maxEntries. Safe to share between threads.
+ *
+ * Few components recur: on Expert about 2% of lookups hit, and describing
+ * components by their turned and mirrored forms as well barely raises that,
+ * so nothing uses a cache unless asked to, e.g. MinesweeperSimulator --cache.
+ */
+public class MinesweeperSolverCache {
+    // default number of solutions kept
+    public static final int DEFAULT_MAX_ENTRIES = 20000;
+
+    // what can be at a position in a description: an unrevealed cell, or a number 1 to 8
+    public static final int CELL = 0;
+
+    // most solutions kept
+    private final int maxEntries;
+
+    // solutions by hash, least recently used first; guarded by synchronizing on this
+    private final LinkedHashMap<Long, CachedSolution> entries;
+
+    // metrics: hits found a solution, misses didn't, and collisions found a
+    // different description with the same hash
+    private long hits, misses, collisions, evictions;
+
+    /*
+     * A description and its solution.
+     */
+    private static class CachedSolution {
+        final int[] description;
+        final MinesweeperSolver.Solution solution;
+
+        CachedSolution(int[] description, MinesweeperSolver.Solution solution) {
+            this.description = description;
+            this.solution = solution;
+        }
+    }
+
+    // constructor for MinesweeperSolverCache
+    public MinesweeperSolverCache() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    public MinesweeperSolverCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        entries = new LinkedHashMap<Long, CachedSolution>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Long, CachedSolution> eldest) {
+                if (size() <= MinesweeperSolverCache.this.maxEntries)
+                    return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    // returns the Zobrist key for what is at a position relative to a
+    // component's top left; the keys are as good as a table of random
+    // numbers, but need no table
+    public static long key(int row, int col, int what) {
+        long z = ((long) row << 36) ^ ((long) col << 4) ^ what;
+        // splitmix64 finalizer
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // returns the solution for a description with the given hash, or null
+    public synchronized MinesweeperSolver.Solution get(long hash, int[] description) {
+        CachedSolution entry = entries.get(hash);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (!Arrays.equals(entry.description, description)) {
+            collisions++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.solution;
+    }
+
+    // remembers the solution for a description; replaces any other
+    // description with the same hash
+    public synchronized void put(long hash, int[] description, MinesweeperSolver.Solution solution) {
+        entries.put(hash, new CachedSolution(description, solution));
+    }
+
+    // public accessors for the metrics
+    public synchronized int size() { return entries.size(); }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    // returns all the metrics as one line of text
+    public synchronized String getMetrics() {
+        return String.format("entries=%d hits=%d misses=%d hitRate=%.4f collisions=%d evictions=%d",
+                entries.size(), hits, misses, getHitRate(), collisions, evictions);
+    }
+}
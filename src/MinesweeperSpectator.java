@@ -0,0 +1,15 @@
+/*
+ * Interface for anything watching a game through a MinesweeperBroadcast,
+ * e.g. a MinesweeperSocketSpectator sending the game to a client.
+ */
+public interface MinesweeperSpectator {
+    // called on the broadcast's thread with every frame, in order; the frame
+    // must not be changed, and is shared with every other spectator. Must not
+    // block: returns false to stop receiving frames, e.g. when the spectator
+    // can't keep up
+    boolean frame(byte[] frame);
+
+    // called on the broadcast's thread when the broadcast ends, or on the
+    // caller's thread if it had already ended when the spectator was added
+    void closed();
+}
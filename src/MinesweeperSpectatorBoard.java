@@ -0,0 +1,129 @@
+import java.util.Arrays;
+
+/*
+ * A game as a spectator sees it, rebuilt from the frames of a
+ * MinesweeperBroadcast.
+ *
+ * Frames must be applied in order, starting from a keyframe; apply() refuses
+ * a frame that doesn't follow on from the last one, and the spectator should
+ * then watch afresh. Only the cells a player can see are known: their state
+ * and, once revealed, their number.
+ */
+public class MinesweeperSpectatorBoard {
+    // size and shape of the board; 0 until the first keyframe
+    private int rows, columns, kind;
+
+    // the value of every cell, see MinesweeperBroadcast
+    private byte[] values;
+
+    // the counters sent with the last frame
+    private int status, flagsRemaining, tilesToClear, explodedIndex = -1;
+
+    // sequence number of the last frame applied; -1 before the first
+    private long sequence = -1;
+
+    // where the frame being read is up to
+    private byte[] frame;
+    private int position;
+
+    // public accessors for the dimensions of the board
+    public int getRows() { return rows; }
+    public int getColumns() { return columns; }
+    public int getKind() { return kind; }
+    public int getCellCount() { return values == null ? 0 : values.length; }
+
+    // public accessors for the counters of the game
+    public int getStatus() { return status; }
+    public int getFlagsRemaining() { return flagsRemaining; }
+    public int getTilesToClear() { return tilesToClear; }
+    public int getExplodedIndex() { return explodedIndex; }
+    public long getSequence() { return sequence; }
+
+    // public accessor for the state of the cell at index: HIDDEN, FLAGGED or REVEALED
+    public byte getState(int index) {
+        int value = values[index];
+        if (value >= MinesweeperBroadcast.REVEALED_VALUE)
+            return MinesweeperBoard.REVEALED;
+        return value == MinesweeperBroadcast.FLAGGED_VALUE ? MinesweeperBoard.FLAGGED : MinesweeperBoard.HIDDEN;
+    }
+
+    // public accessor for the number on a revealed cell; -1 for any other cell
+    public int getNumber(int index) {
+        int value = values[index];
+        return value >= MinesweeperBroadcast.REVEALED_VALUE ? value - MinesweeperBroadcast.REVEALED_VALUE : -1;
+    }
+
+    // applies the next frame; returns false, changing nothing, if it is a
+    // delta that doesn't follow on from the last frame applied
+    public boolean apply(byte[] bytes) {
+        frame = bytes;
+        position = 0;
+        int type = readByte();
+        long frameSequence = readVarint();
+        if (type == MinesweeperBroadcast.DELTA && (sequence < 0 || frameSequence != sequence + 1))
+            return false;
+        if (type != MinesweeperBroadcast.KEYFRAME && type != MinesweeperBroadcast.DELTA)
+            throw new IllegalArgumentException("Unknown frame type: " + type);
+        int newStatus = readByte();
+        int newFlags = (int) readVarint();
+        int newTiles = (int) readVarint();
+        int newExploded = (int) readVarint() - 1;
+
+        if (type == MinesweeperBroadcast.KEYFRAME) {
+            int newRows = (int) readVarint();
+            int newColumns = (int) readVarint();
+            int newKind = readByte();
+            byte[] newValues = new byte[newRows * newColumns];
+            int index = 0;
+            while (index < newValues.length) {
+                int length = (int) readVarint();
+                byte value = (byte) readByte();
+                if (length <= 0 || length > newValues.length - index)
+                    throw new IllegalArgumentException("Run outside the board at cell " + index);
+                Arrays.fill(newValues, index, index + length, value);
+                index += length;
+            }
+            rows = newRows;
+            columns = newColumns;
+            kind = newKind;
+            values = newValues;
+        } else {
+            int runs = (int) readVarint();
+            int index = 0;
+            for (int run = 0; run < runs; run++) {
+                index += (int) readVarint();
+                int length = (int) readVarint();
+                byte value = (byte) readByte();
+                if (length <= 0 || length > values.length - index)
+                    throw new IllegalArgumentException("Run outside the board at cell " + index);
+                Arrays.fill(values, index, index + length, value);
+                index += length;
+            }
+        }
+        status = newStatus;
+        flagsRemaining = newFlags;
+        tilesToClear = newTiles;
+        explodedIndex = newExploded;
+        sequence = frameSequence;
+        return true;
+    }
+
+    // reads an unsigned byte of the frame
+    private int readByte() {
+        if (position >= frame.length)
+            throw new IllegalArgumentException("Frame ends early");
+        return frame[position++] & 0xff;
+    }
+
+    // reads an unsigned LEB128 varint of the frame
+    private long readVarint() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            value |= (long) (b & 0x7f) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Class measuring the time spent on a game.
+ *
+ * Time is read from System.nanoTime, so it is monotonic and doesn't depend on
+ * how often anything asks for it; the game window's Swing Timer only decides
+ * how often the label is redrawn.
+ */
+public class MinesweeperStopwatch {
+    // System.nanoTime when the stopwatch was last started
+    private long startTime;
+
+    // time counted before the stopwatch was last started
+    private long elapsedNanos;
+
+    private boolean running;
+
+    // starts or resumes counting; does nothing if already running
+    public void start() {
+        if (!running) {
+            startTime = System.nanoTime();
+            running = true;
+        }
+    }
+
+    // stops counting, keeping the time counted so far
+    public void stop() {
+        if (running) {
+            elapsedNanos += System.nanoTime() - startTime;
+            running = false;
+        }
+    }
+
+    // stops counting and sets the time back to zero
+    public void reset() {
+        running = false;
+        elapsedNanos = 0;
+    }
+
+    // sets the time counted, e.g. for a game recovered from the journal; the
+    // stopwatch carries on counting from there if it is running
+    public void setElapsedMillis(long millis) {
+        elapsedNanos = millis * 1000000;
+        if (running)
+            startTime = System.nanoTime();
+    }
+
+    // public accessor to check if the stopwatch is counting
+    public boolean isRunning() { return running; }
+
+    // returns the time counted in nanoseconds
+    public long getElapsedNanos() {
+        return running ? elapsedNanos + System.nanoTime() - startTime : elapsedNanos;
+    }
+
+    // returns the time counted in milliseconds
+    public long getElapsedMillis() {
+        return getElapsedNanos() / 1000000;
+    }
+}
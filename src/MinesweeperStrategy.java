@@ -0,0 +1,19 @@
+/*
+ * Interface for a bot that plays Minesweeper, e.g. in a MinesweeperTournament.
+ *
+ * A strategy sees the board only through a MinesweeperVisibleBoard, so it
+ * knows no more than a player would. One instance plays one game at a time;
+ * a tournament creates a new instance for every game.
+ */
+public interface MinesweeperStrategy {
+    // returns the name the strategy is reported under
+    String getName();
+
+    // called once before the first move of a game; seed is for any random
+    // choices the strategy makes, so games can be replayed exactly, and says
+    // nothing about where the bombs are
+    void startGame(MinesweeperVisibleBoard board, long seed);
+
+    // returns the next move for the board as it is now
+    MinesweeperMove chooseMove(MinesweeperVisibleBoard board);
+}
@@ -0,0 +1,197 @@
+import java.util.Arrays;
+
+/*
+ * Class describing which cells of a board are neighbors.
+ *
+ * Three shapes are supported: the usual square grid, a torus whose edges
+ * wrap around to the opposite side, and a hexagonal grid in which every odd
+ * row is shifted half a cell to the right. Cells are numbered in row-major
+ * order as everywhere else.
+ *
+ * Neighbors are kept as index offsets, one list per class of cell: corner,
+ * edge, or interior, and on a hexagonal board even or odd row. Each cell's
+ * class is worked out once when the topology is built, so finding the
+ * neighbors of a cell takes no division and no bounds checks:
+ *
+ *     for (int i = topology.neighborStart(index), end = topology.neighborEnd(index); i < end; i++) {
+ *         int neighbor = index + topology.neighborOffset(i);
+ *         ...
+ *     }
+ *
+ * A topology never changes once it is built, so any number of layouts
+ * (and threads) can share one.
+ */
+public class MinesweeperTopology {
+    // shapes a board can have
+    public static final int SQUARE = 0;
+    public static final int TORUS = 1;
+    public static final int HEX = 2;
+
+    // most neighbors a cell can have in any shape
+    public static final int MAX_NEIGHBORS = 8;
+
+    // a row or column is the first, one in the middle, the last, or the only one
+    private static final int FIRST = 0, MIDDLE = 1, LAST = 2, ONLY = 3;
+
+    // the shape and size of the board
+    private final int kind, rows, columns;
+
+    // the class of each cell, and the offsets to the neighbors of a cell of
+    // class k in offsets[classStart[k]] to offsets[classStart[k + 1] - 1]
+    private final byte[] cellClass;
+    private final int[] classStart;
+    private final int[] offsets;
+
+    // most neighbors any cell of this board has
+    private final int maxNeighbors;
+
+    // constructor for MinesweeperTopology
+    public MinesweeperTopology(int kind, int rows, int columns) {
+        if (kind != SQUARE && kind != TORUS && kind != HEX)
+            throw new IllegalArgumentException("Unknown topology: " + kind);
+        if (rows < 1 || columns < 1)
+            throw new IllegalArgumentException("Board must have at least one row and column");
+        if ((long) rows * columns > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Board is too large: " + rows + "x" + columns);
+        this.kind = kind;
+        this.rows = rows;
+        this.columns = columns;
+
+        // work out the offsets for one cell of every class that occurs
+        int classes = 4 * 4 * 2;
+        classStart = new int[classes + 1];
+        int[] allOffsets = new int[classes * MAX_NEIGHBORS];
+        int count = 0;
+        int most = 0;
+        for (int k = 0; k < classes; k++) {
+            int row = exampleRow(k / 8, k & 1);
+            int col = exampleColumn((k / 2) % 4);
+            if (row >= 0 && col >= 0) {
+                int first = count;
+                count = addNeighbors(row, col, allOffsets, count);
+                most = Math.max(most, count - first);
+            }
+            classStart[k + 1] = count;
+        }
+        offsets = Arrays.copyOf(allOffsets, count);
+        maxNeighbors = most;
+
+        cellClass = new byte[rows * columns];
+        for (int row = 0; row < rows; row++) {
+            int rowPart = position(row, rows) * 8 + (kind == HEX ? row & 1 : 0);
+            for (int col = 0; col < columns; col++)
+                cellClass[row * columns + col] = (byte) (rowPart + position(col, columns) * 2);
+        }
+    }
+
+    // public accessors for the shape and size
+    public int getKind() { return kind; }
+    public int getRows() { return rows; }
+    public int getColumns() { return columns; }
+    public int getCellCount() { return cellClass.length; }
+    public int getMaxNeighbors() { return maxNeighbors; }
+
+    // returns true if the edges wrap around to the opposite side
+    public boolean wraps() { return kind == TORUS; }
+
+    // the neighbors of the cell at index are index + neighborOffset(i) for
+    // i from neighborStart(index) to neighborEnd(index) - 1
+    public int neighborStart(int index) { return classStart[cellClass[index]]; }
+    public int neighborEnd(int index) { return classStart[cellClass[index] + 1]; }
+    public int neighborOffset(int i) { return offsets[i]; }
+
+    // returns the number of neighbors of the cell at index
+    public int neighborCount(int index) {
+        int k = cellClass[index];
+        return classStart[k + 1] - classStart[k];
+    }
+
+    // returns a number that is the same for two patterns of cells at the same
+    // places relative to their top rows exactly when their cells have the
+    // same neighbors: on a hexagonal board it depends on whether the top row
+    // is odd
+    public int getPatternClass(int topRow) {
+        return kind == HEX ? HEX + (topRow & 1) : kind;
+    }
+
+    // returns the name of a shape: "square", "torus", or "hex"
+    public static String kindName(int kind) {
+        return kind == TORUS ? "torus" : kind == HEX ? "hex" : "square";
+    }
+
+    // returns the shape with the given name; see kindName
+    public static int parseKind(String name) {
+        for (int kind = SQUARE; kind <= HEX; kind++) {
+            if (kindName(kind).equalsIgnoreCase(name))
+                return kind;
+        }
+        throw new IllegalArgumentException("Unknown topology: " + name);
+    }
+
+    // returns whether a row or column is FIRST, MIDDLE, LAST, or the ONLY one
+    private static int position(int i, int count) {
+        if (count == 1)
+            return ONLY;
+        return i == 0 ? FIRST : i == count - 1 ? LAST : MIDDLE;
+    }
+
+    // returns a row in the given position with the given parity, or -1 if
+    // there is none; parity only matters on a hexagonal board
+    private int exampleRow(int position, int parity) {
+        if (kind != HEX && parity == 1)
+            return -1;
+        int row;
+        switch (position) {
+            case FIRST: row = rows > 1 ? 0 : -1; break;
+            case MIDDLE: row = rows > 2 ? 1 : -1; break;
+            case LAST: row = rows > 1 ? rows - 1 : -1; break;
+            default: row = rows == 1 ? 0 : -1; break;
+        }
+        if (row < 0 || kind != HEX || (row & 1) == parity)
+            return row;
+        // a middle row of the other parity, if there is one
+        return position == MIDDLE && rows > 3 ? 2 : -1;
+    }
+
+    // returns a column in the given position, or -1 if there is none
+    private int exampleColumn(int position) {
+        switch (position) {
+            case FIRST: return columns > 1 ? 0 : -1;
+            case MIDDLE: return columns > 2 ? 1 : -1;
+            case LAST: return columns > 1 ? columns - 1 : -1;
+            default: return columns == 1 ? 0 : -1;
+        }
+    }
+
+    // adds the offsets to the neighbors of the cell at row and col, each
+    // once and not the cell itself; returns the new count
+    private int addNeighbors(int row, int col, int[] list, int count) {
+        int index = row * columns + col;
+        int first = count;
+        for (int dr = -1; dr <= 1; dr++) {
+            for (int dc = -1; dc <= 1; dc++) {
+                if (dr == 0 && dc == 0)
+                    continue;
+                // in odd-shifted rows, the rows above and below touch the
+                // cell and the one to its right on odd rows, or its left on even rows
+                if (kind == HEX && dr != 0 && dc == ((row & 1) == 0 ? 1 : -1))
+                    continue;
+                int r = row + dr;
+                int c = col + dc;
+                if (kind == TORUS) {
+                    r = (r + rows) % rows;
+                    c = (c + columns) % columns;
+                } else if (r < 0 || r >= rows || c < 0 || c >= columns) {
+                    continue;
+                }
+                int offset = r * columns + c - index;
+                boolean seen = offset == 0;
+                for (int i = first; i < count && !seen; i++)
+                    seen = list[i] == offset;
+                if (!seen)
+                    list[count++] = offset;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,309 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/*
+ * Plays MinesweeperStrategy bots against each other.
+ *
+ * Every strategy plays the same boards: the board seeds, and the seeds the
+ * strategies get for their own random choices, all come from the
+ * tournament's seed, so a tournament can be replayed exactly. Games are
+ * scheduled board by board, every strategy in turn, so all strategies
+ * play under the same load on the threads.
+ *
+ * Moves are made on a MinesweeperBoard, through the same rules as the game
+ * window. Each move is chosen on a pool of two threads per game thread and
+ * must arrive within the time limit; a strategy that runs out of time,
+ * throws, or makes more than MAX_MOVES_PER_CELL moves per cell forfeits the
+ * game. A move that runs out of time is interrupted, but keeps its thread
+ * until the strategy notices (MinesweeperFrontier.update checks between
+ * components), and meanwhile slows down the moves of other games. So results
+ * are only reproducible when no move times out, and main warns when any do.
+ *
+ *     java MinesweeperTournament [rows] [columns] [bombs] [games] [threads] [seed] [moveMillis] [--torus|--hex]
+ */
+public class MinesweeperTournament {
+    // default time a strategy has for one move
+    public static final long DEFAULT_MOVE_MILLIS = 1000;
+
+    // moves allowed per cell before a game is forfeited, e.g. by a strategy
+    // that keeps making moves that change nothing
+    public static final int MAX_MOVES_PER_CELL = 2;
+
+    // ways a game can end besides being won or lost
+    public static final int FINISHED = 0;
+    public static final int TIMED_OUT = 1;
+    public static final int FAILED = 2;
+    public static final int STALLED = 3;
+
+    // the shape of the boards and the number of bombs on them
+    private final MinesweeperTopology topology;
+    private final int bombs;
+
+    // the seed of each board, and of each game's strategy
+    private final long[] boardSeeds, strategySeeds;
+
+    // time allowed for one move, in nanoseconds
+    private final long moveLimitNanos;
+
+    // runs the strategies' moves while run() is running, so a slow one can
+    // be abandoned; its threads don't keep the program running
+    private ExecutorService moveExecutor;
+
+    /*
+     * How one strategy did over the whole tournament.
+     */
+    public static class Standing {
+        private final String name;
+        private int games, wins, timeouts, failures, stalls;
+        private long moves, wastedMoves, moveNanos, gameNanos;
+
+        Standing(String name) {
+            this.name = name;
+        }
+
+        // public accessors for the counts
+        public String getName() { return name; }
+        public int getGames() { return games; }
+        public int getWins() { return wins; }
+        public int getTimeouts() { return timeouts; }
+        public int getFailures() { return failures; }
+        public int getStalls() { return stalls; }
+        public long getMoves() { return moves; }
+        public long getWastedMoves() { return wastedMoves; }
+
+        public double getWinRate() {
+            return games == 0 ? 0 : (double) wins / games;
+        }
+
+        // returns the half width of the 95% confidence interval of the win
+        // rate, by the normal approximation
+        public double getWinRateMargin() {
+            if (games == 0)
+                return 0;
+            double rate = getWinRate();
+            return 1.96 * Math.sqrt(rate * (1 - rate) / games);
+        }
+
+        // returns the mean time the strategy took to choose a move, in milliseconds
+        public double getMillisPerMove() {
+            return moves == 0 ? 0 : moveNanos / 1e6 / moves;
+        }
+
+        // returns the games played per second of one thread's time
+        public double getGamesPerSecond() {
+            return gameNanos == 0 ? 0 : games / (gameNanos / 1e9);
+        }
+
+        // returns the standing as one line of text
+        public String toString() {
+            return String.format("%-10s %6d games  %5.1f%% won (+-%.1f)  %8.3f ms/move  %9.1f games/s"
+                            + "  %d timeouts  %d failures  %d stalls  %d wasted moves",
+                    name, games, 100 * getWinRate(), 100 * getWinRateMargin(), getMillisPerMove(),
+                    getGamesPerSecond(), timeouts, failures, stalls, wastedMoves);
+        }
+
+        // adds the result of one game
+        private synchronized void add(Game game) {
+            games++;
+            if (game.won)
+                wins++;
+            if (game.ending == TIMED_OUT)
+                timeouts++;
+            else if (game.ending == FAILED)
+                failures++;
+            else if (game.ending == STALLED)
+                stalls++;
+            moves += game.moves;
+            wastedMoves += game.wastedMoves;
+            moveNanos += game.moveNanos;
+            gameNanos += game.gameNanos;
+        }
+    }
+
+    /*
+     * How one game went.
+     */
+    private static class Game {
+        boolean won;
+        int ending = FINISHED;
+        int moves, wastedMoves;
+        long moveNanos, gameNanos;
+    }
+
+    // constructor for MinesweeperTournament
+    public MinesweeperTournament(MinesweeperTopology topology, int bombs, int games, long seed,
+                                 long moveLimitMillis) {
+        MinesweeperLayout.checkDimensions(topology.getRows(), topology.getColumns(), bombs);
+        this.topology = topology;
+        this.bombs = bombs;
+        this.moveLimitNanos = moveLimitMillis * 1000000L;
+
+        Random random = new Random(seed);
+        boardSeeds = new long[games];
+        strategySeeds = new long[games];
+        for (int i = 0; i < games; i++) {
+            boardSeeds[i] = random.nextLong();
+            strategySeeds[i] = random.nextLong();
+        }
+    }
+
+    // plays every game with a new strategy from each of the suppliers, on
+    // the given number of threads; returns a standing for each supplier, in order
+    public List<Standing> run(List<Supplier<MinesweeperStrategy>> entrants, int threads)
+            throws InterruptedException {
+        final List<Standing> standings = new ArrayList<>();
+        for (Supplier<MinesweeperStrategy> entrant : entrants)
+            standings.add(new Standing(entrant.get().getName()));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        moveExecutor = Executors.newFixedThreadPool(2 * threads, new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "minesweeper-strategy");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int game = 0; game < boardSeeds.length; game++) {
+                for (int i = 0; i < entrants.size(); i++) {
+                    final int gameNumber = game;
+                    final Supplier<MinesweeperStrategy> entrant = entrants.get(i);
+                    final Standing standing = standings.get(i);
+                    futures.add(executor.submit(new Runnable() {
+                        public void run() {
+                            standing.add(play(entrant, gameNumber));
+                        }
+                    }));
+                }
+            }
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Tournament game failed", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdown();
+            // interrupts any move still running after it timed out
+            moveExecutor.shutdownNow();
+        }
+        return standings;
+    }
+
+    // plays one game with a new strategy
+    private Game play(Supplier<MinesweeperStrategy> entrant, int gameNumber) {
+        long start = System.nanoTime();
+        Game game = new Game();
+        MinesweeperBoard board = new MinesweeperBoard(new MinesweeperLayout(topology, bombs, boardSeeds[gameNumber]));
+        final MinesweeperVisibleBoard view = board.getVisibleBoard();
+        final MinesweeperStrategy strategy = entrant.get();
+        final long strategySeed = strategySeeds[gameNumber];
+        int maxMoves = MAX_MOVES_PER_CELL * board.getCellCount();
+
+        try {
+            // starting the game counts against the first move's time
+            boolean first = true;
+            while (board.getStatus() == MinesweeperBoard.PLAYING) {
+                if (game.moves == maxMoves) {
+                    game.ending = STALLED;
+                    break;
+                }
+                final boolean startGame = first;
+                first = false;
+                long moveStart = System.nanoTime();
+                Future<MinesweeperMove> future = moveExecutor.submit(new Callable<MinesweeperMove>() {
+                    public MinesweeperMove call() {
+                        if (startGame)
+                            strategy.startGame(view, strategySeed);
+                        return strategy.chooseMove(view);
+                    }
+                });
+                MinesweeperMove move;
+                try {
+                    move = moveLimitNanos > 0 ? future.get(moveLimitNanos, TimeUnit.NANOSECONDS) : future.get();
+                } catch (TimeoutException e) {
+                    future.cancel(true);
+                    game.ending = TIMED_OUT;
+                    break;
+                }
+                game.moveNanos += System.nanoTime() - moveStart;
+                game.moves++;
+                if (move == null || !move.applyTo(board))
+                    game.wastedMoves++;
+            }
+        } catch (ExecutionException e) {
+            game.ending = FAILED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            game.ending = FAILED;
+        }
+
+        game.won = board.getStatus() == MinesweeperBoard.WON;
+        game.gameNanos = System.nanoTime() - start;
+        return game;
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<String> values = new ArrayList<>();
+        int kind = MinesweeperTopology.SQUARE;
+        for (String arg : args) {
+            if (arg.startsWith("--"))
+                kind = MinesweeperTopology.parseKind(arg.substring(2));
+            else
+                values.add(arg);
+        }
+        int rows = values.size() > 0 ? Integer.parseInt(values.get(0)) : 16;
+        int columns = values.size() > 1 ? Integer.parseInt(values.get(1)) : 30;
+        int bombs = values.size() > 2 ? Integer.parseInt(values.get(2)) : 99;
+        int games = values.size() > 3 ? Integer.parseInt(values.get(3)) : 500;
+        int threads = values.size() > 4 ? Integer.parseInt(values.get(4)) : Runtime.getRuntime().availableProcessors();
+        long seed = values.size() > 5 ? Long.parseLong(values.get(5)) : 1;
+        long moveMillis = values.size() > 6 ? Long.parseLong(values.get(6)) : DEFAULT_MOVE_MILLIS;
+        MinesweeperLayout.checkDimensions(rows, columns, bombs);
+
+        // the safest cell strategy shares one solver; without a Monte Carlo
+        // estimator it plays the same way every time
+        final MinesweeperSolver solver = new MinesweeperSolver(MinesweeperSolver.DEFAULT_STEP_LIMIT, null);
+        List<Supplier<MinesweeperStrategy>> entrants = new ArrayList<>();
+        entrants.add(new Supplier<MinesweeperStrategy>() {
+            public MinesweeperStrategy get() {
+                return new MinesweeperSafestCellStrategy(solver, null);
+            }
+        });
+        entrants.add(new Supplier<MinesweeperStrategy>() {
+            public MinesweeperStrategy get() {
+                return new MinesweeperRandomStrategy();
+            }
+        });
+
+        MinesweeperTournament tournament = new MinesweeperTournament(
+                new MinesweeperTopology(kind, rows, columns), bombs, games, seed, moveMillis);
+        long start = System.nanoTime();
+        List<Standing> standings = tournament.run(entrants, threads);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%dx%d %s, %d bombs: %d games per strategy, %d threads, %d ms per move%n", rows, columns,
+                MinesweeperTopology.kindName(kind), bombs, games, threads, moveMillis);
+        int timeouts = 0;
+        for (Standing standing : standings) {
+            System.out.println(standing);
+            timeouts += standing.getTimeouts();
+        }
+        System.out.printf("%.1f s, %.1f games/s in all%n", seconds, games * standings.size() / seconds);
+        if (timeouts > 0)
+            System.out.println("warning: " + timeouts + " games timed out, so these results may not be"
+                    + " reproducible; try a longer move time");
+    }
+}
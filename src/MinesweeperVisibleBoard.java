@@ -0,0 +1,50 @@
+/*
+ * A read-only view of a MinesweeperBoard showing only what a player can see:
+ * the state of every cell, the numbers on revealed cells, and the counters
+ * above the grid. Where the hidden bombs are can't be found out through it,
+ * so it can be handed to a MinesweeperStrategy, or anything else that must
+ * play fair, without trusting it with the board.
+ *
+ * The view follows the board as it changes. Get one from
+ * MinesweeperBoard.getVisibleBoard().
+ */
+public final class MinesweeperVisibleBoard {
+    // the board being viewed, and its layout; the layout is only read for
+    // revealed cells
+    private final MinesweeperBoard board;
+    private final MinesweeperLayout layout;
+
+    // constructor for MinesweeperVisibleBoard; see MinesweeperBoard.getVisibleBoard
+    MinesweeperVisibleBoard(MinesweeperBoard board) {
+        this.board = board;
+        layout = board.getLayout();
+    }
+
+    // public accessors for the size and shape of the board
+    public int getRows() { return board.getRows(); }
+    public int getColumns() { return board.getColumns(); }
+    public int getCellCount() { return board.getCellCount(); }
+    public int getBombs() { return layout.getBombs(); }
+    public MinesweeperTopology getTopology() { return layout.getTopology(); }
+
+    // public accessors for the game state
+    public int getStatus() { return board.getStatus(); }
+    public int getTilesToClear() { return board.getTilesToClear(); }
+    public int getFlagsRemaining() { return board.getFlagsRemaining(); }
+    public int getMoveCount() { return board.getMoveCount(); }
+
+    // public accessor for the state of a single cell: MinesweeperBoard.HIDDEN,
+    // FLAGGED, or REVEALED
+    public byte getState(int index) { return board.getState(index); }
+
+    // returns the number shown on a revealed cell, or -1 if the cell isn't revealed
+    public int getNumber(int index) {
+        return board.getState(index) == MinesweeperBoard.REVEALED ? layout.getNumAdjacentBombs(index) : -1;
+    }
+
+    // adds a listener that is told about every change to the board; a
+    // listener only learns which cells changed, which the player sees too
+    public void addListener(MinesweeperBoardListener listener) {
+        board.addListener(listener);
+    }
+}
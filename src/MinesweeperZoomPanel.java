@@ -0,0 +1,301 @@
+import javax.swing.*;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/*
+ * A zoomable, scrollable view of a MinesweeperBoard of any size.
+ *
+ * Zoomed in, cells are a whole number of pixels across and are drawn by a
+ * MinesweeperBoardRenderer, which keeps the board in offscreen images and
+ * only redraws the cells a move changes; a move only repaints the part of
+ * the panel it changed. Zoomed out far
+ * enough that a cell would be smaller than a few pixels, the panel draws the
+ * blocks of a MinesweeperMipmap instead: each block becomes one pixel whose
+ * color shows how much of it is revealed and flagged, and the pixels are
+ * scaled up to the block size. Either way the cost of a frame depends on the
+ * size of the window, not the size of the board.
+ *
+ * Mouse: wheel to zoom, drag to scroll, left click to reveal, right click to flag.
+ */
+public class MinesweeperZoomPanel extends JComponent {
+    // smallest cell size, in pixels, that is drawn cell by cell
+    private static final double MIN_CELL_SIZE = 4;
+
+    // cell size at which the chance of a bomb is written as a percentage
+    private static final double PERCENT_CELL_SIZE = 32;
+
+    // limits for zooming, in pixels per cell
+    private static final double MAX_CELL_SIZE = 64;
+    private static final double MIN_ZOOM_CELL_SIZE = 1.0 / 1024;
+
+    // "0%" to "100%" for the probability overlay
+    private static final String[] PERCENT_TEXT = new String[101];
+    static {
+        for (int i = 0; i < PERCENT_TEXT.length; i++)
+            PERCENT_TEXT[i] = i + "%";
+    }
+
+    // the board, its summaries for zoomed out drawing, and what draws its cells
+    private final MinesweeperBoard board;
+    private final MinesweeperMipmap mipmap;
+    private final MinesweeperBoardRenderer renderer;
+
+    // computes the chance of a bomb shown over unrevealed cells; null when not shown
+    private MinesweeperFrontier frontier;
+
+    // size of a cell in pixels, and the cell coordinates of the top left corner
+    private double cellSize;
+    private double viewX, viewY;
+
+    // how far odd rows are shifted right, in cells: half a cell on a hexagonal board
+    private final double oddRowShift;
+
+    // image holding one pixel per block when zoomed out; reused between frames
+    private BufferedImage blockImage;
+
+    // objects told when the visible part of the board changes, e.g. a minimap
+    private final java.util.List<ChangeListener> viewListeners = new java.util.ArrayList<>();
+
+    // constructor for MinesweeperZoomPanel
+    public MinesweeperZoomPanel(MinesweeperBoard board, MinesweeperMipmap mipmap) {
+        this.board = board;
+        this.mipmap = mipmap;
+        renderer = new MinesweeperBoardRenderer(board);
+        cellSize = 24;
+        oddRowShift = board.getLayout().getTopology().getKind() == MinesweeperTopology.HEX ? 0.5 : 0;
+
+        setPreferredSize(new Dimension(800, 600));
+        setOpaque(true);
+
+        MouseHandler handler = new MouseHandler();
+        addMouseListener(handler);
+        addMouseMotionListener(handler);
+        addMouseWheelListener(handler);
+    }
+
+    // public accessors for the visible part of the board, in cells
+    public double getViewX() { return viewX; }
+    public double getViewY() { return viewY; }
+    public double getViewWidth() { return getWidth() / cellSize; }
+    public double getViewHeight() { return getHeight() / cellSize; }
+    public double getCellSize() { return cellSize; }
+
+    // adds a listener told when the visible part of the board changes
+    public void addViewListener(ChangeListener listener) {
+        viewListeners.add(listener);
+    }
+
+    // scrolls so the given cell coordinates are in the center of the panel
+    public void centerOn(double x, double y) {
+        setView(x - getViewWidth() / 2, y - getViewHeight() / 2, cellSize);
+    }
+
+    // shows the chance of a bomb over every unrevealed cell, or stops
+    // showing it if frontier is null
+    public void setFrontier(MinesweeperFrontier frontier) {
+        this.frontier = frontier;
+        repaint();
+    }
+
+    // zooms so the whole board fits in the panel
+    public void zoomToFit() {
+        double size = Math.min(getWidth() / (double) board.getColumns(), getHeight() / (double) board.getRows());
+        setView(0, 0, size >= MIN_CELL_SIZE ? Math.floor(size) : size);
+    }
+
+    // draws the visible part of the board
+    protected void paintComponent(Graphics g) {
+        g.setColor(getBackground() != null ? getBackground() : Color.WHITE);
+        g.fillRect(0, 0, getWidth(), getHeight());
+
+        if (cellSize >= MIN_CELL_SIZE)
+            paintCells(g);
+        else
+            paintBlocks(g);
+    }
+
+    // copies the visible cells from the renderer, then draws the chance of a
+    // bomb over the unrevealed ones if it is shown
+    private void paintCells(Graphics g) {
+        renderer.setCellSize((int) cellSize);
+        renderer.paint(g, -originX(), -originY());
+
+        // the overlay is brought up to date with the board once per frame, and
+        // drawn again when the estimates of large components arrive
+        if (frontier == null || board.getStatus() != MinesweeperBoard.PLAYING)
+            return;
+        frontier.update();
+        MinesweeperBackgroundEstimates.estimate(frontier, new Runnable() {
+            public void run() {
+                repaint();
+            }
+        });
+        boolean drawPercents = cellSize >= PERCENT_CELL_SIZE;
+        if (drawPercents)
+            g.setFont(g.getFont().deriveFont(Font.PLAIN, (float) (cellSize * 0.3)));
+
+        // cells line up with the renderer's pixels
+        int size = (int) cellSize;
+        int firstRow = Math.max((int) Math.floor(viewY), 0);
+        int lastRow = Math.min((int) Math.ceil(viewY + getViewHeight()), board.getRows() - 1);
+        for (int row = firstRow; row <= lastRow; row++) {
+            int y = row * size - originY();
+            double left = viewX - ((row & 1) == 1 ? oddRowShift : 0);
+            int shift = (row & 1) == 1 ? (int) (oddRowShift * size) : 0;
+            int firstCol = Math.max((int) Math.floor(left), 0);
+            int lastCol = Math.min((int) Math.ceil(left + getViewWidth()), board.getColumns() - 1);
+            for (int col = firstCol; col <= lastCol; col++) {
+                int index = row * board.getColumns() + col;
+                if (board.getState(index) == MinesweeperBoard.REVEALED)
+                    continue;
+                int x = col * size + shift - originX();
+                float probability = frontier.getProbability(index);
+                g.setColor(MinesweeperBoardRenderer.probabilityColor(probability));
+                g.fillRect(x, y, size, size);
+                if (drawPercents) {
+                    g.setColor(Color.BLACK);
+                    g.drawString(PERCENT_TEXT[Math.round(probability * 100)], x + 2,
+                            y + size - g.getFontMetrics().getDescent() - 1);
+                }
+            }
+        }
+    }
+
+    // returns where the panel's top left corner is on the renderer's image of the board
+    private int originX() { return (int) Math.round(viewX * cellSize); }
+    private int originY() { return (int) Math.round(viewY * cellSize); }
+
+    // draws the visible blocks of the coarsest mipmap level whose blocks
+    // are still at least MIN_CELL_SIZE pixels across
+    private void paintBlocks(Graphics g) {
+        int level = 0;
+        while (level < mipmap.getLevelCount() - 1 && (cellSize * (1 << mipmap.getShift(level))) < MIN_CELL_SIZE)
+            level++;
+        int shift = mipmap.getShift(level);
+        double blockSize = cellSize * (1 << shift);
+
+        // the visible blocks
+        int firstCol = Math.max((int) Math.floor(viewX / (1 << shift)), 0);
+        int firstRow = Math.max((int) Math.floor(viewY / (1 << shift)), 0);
+        int lastCol = Math.min((int) Math.floor((viewX + getViewWidth()) / (1 << shift)), mipmap.getBlockColumns(level) - 1);
+        int lastRow = Math.min((int) Math.floor((viewY + getViewHeight()) / (1 << shift)), mipmap.getBlockRows(level) - 1);
+        if (lastCol < firstCol || lastRow < firstRow)
+            return;
+        int width = lastCol - firstCol + 1;
+        int height = lastRow - firstRow + 1;
+
+        // one pixel per block
+        if (blockImage == null || blockImage.getWidth() < width || blockImage.getHeight() < height)
+            blockImage = new BufferedImage(Math.max(width, 64), Math.max(height, 64), BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) blockImage.getRaster().getDataBuffer()).getData();
+        int stride = blockImage.getWidth();
+        for (int blockRow = firstRow; blockRow <= lastRow; blockRow++) {
+            int offset = (blockRow - firstRow) * stride;
+            for (int blockCol = firstCol; blockCol <= lastCol; blockCol++) {
+                pixels[offset + blockCol - firstCol] = blockColor(mipmap.getCellCount(level, blockRow, blockCol),
+                        mipmap.getRevealed(level, blockRow, blockCol), mipmap.getFlagged(level, blockRow, blockCol));
+            }
+        }
+
+        // scale the pixels up to the size of the blocks
+        int x = (int) Math.round((firstCol * (1 << shift) - viewX) * cellSize);
+        int y = (int) Math.round((firstRow * (1 << shift) - viewY) * cellSize);
+        g.drawImage(blockImage, x, y, x + (int) Math.round(width * blockSize), y + (int) Math.round(height * blockSize),
+                0, 0, width, height, null);
+    }
+
+    // mixes the hidden, revealed, and flag colors by how much of a block each covers
+    static int blockColor(int cells, int revealed, int flagged) {
+        int hidden = cells - revealed - flagged;
+        Color hiddenColor = MinesweeperBoardRenderer.HIDDEN_COLOR;
+        Color revealedColor = MinesweeperBoardRenderer.REVEALED_COLOR;
+        Color flagColor = MinesweeperBoardRenderer.FLAG_COLOR;
+        int r = (hiddenColor.getRed() * hidden + revealedColor.getRed() * revealed + flagColor.getRed() * flagged) / cells;
+        int g = (hiddenColor.getGreen() * hidden + revealedColor.getGreen() * revealed + flagColor.getGreen() * flagged) / cells;
+        int b = (hiddenColor.getBlue() * hidden + revealedColor.getBlue() * revealed + flagColor.getBlue() * flagged) / cells;
+        return (r << 16) | (g << 8) | b;
+    }
+
+    // changes the visible part of the board, keeping the board at least partly
+    // in view; cells drawn one by one are a whole number of pixels across
+    private void setView(double x, double y, double size) {
+        cellSize = Math.max(Math.min(size, MAX_CELL_SIZE), MIN_ZOOM_CELL_SIZE);
+        if (cellSize >= MIN_CELL_SIZE)
+            cellSize = Math.round(cellSize);
+        viewX = Math.max(Math.min(x, board.getColumns() - getViewWidth() / 2), -getViewWidth() / 2);
+        viewY = Math.max(Math.min(y, board.getRows() - getViewHeight() / 2), -getViewHeight() / 2);
+        repaint();
+
+        ChangeEvent event = new ChangeEvent(this);
+        for (ChangeListener listener : viewListeners)
+            listener.stateChanged(event);
+    }
+
+    /*
+     * Handles zooming, scrolling, and clicks on the panel.
+     */
+    private class MouseHandler extends MouseAdapter {
+        // where the mouse was pressed, and whether it has moved far enough to be a drag
+        private int pressX, pressY, lastX, lastY;
+        private boolean dragging;
+
+        public void mousePressed(MouseEvent e) {
+            pressX = lastX = e.getX();
+            pressY = lastY = e.getY();
+            dragging = false;
+        }
+
+        public void mouseDragged(MouseEvent e) {
+            if (Math.abs(e.getX() - pressX) + Math.abs(e.getY() - pressY) > 4)
+                dragging = true;
+            if (dragging) {
+                setView(viewX - (e.getX() - lastX) / cellSize, viewY - (e.getY() - lastY) / cellSize, cellSize);
+                lastX = e.getX();
+                lastY = e.getY();
+            }
+        }
+
+        public void mouseReleased(MouseEvent e) {
+            if (dragging)
+                return;
+
+            // a click: reveal or flag the cell under the mouse
+            int row = (int) Math.floor(viewY + e.getY() / cellSize);
+            int col = (int) Math.floor(viewX + e.getX() / cellSize - ((row & 1) == 1 ? oddRowShift : 0));
+            if (row < 0 || col < 0 || row >= board.getRows() || col >= board.getColumns())
+                return;
+            if (SwingUtilities.isRightMouseButton(e))
+                board.toggleFlag(row, col);
+            else
+                board.reveal(row, col);
+
+            // only the cells the move changed need painting, unless the
+            // overlay, which can change anywhere, or the blocks are showing
+            Rectangle changed = renderer.getDirtyBounds();
+            if (frontier != null || cellSize < MIN_CELL_SIZE) {
+                repaint();
+            } else if (!changed.isEmpty()) {
+                changed.translate(-originX(), -originY());
+                repaint(changed);
+            }
+            ChangeEvent event = new ChangeEvent(MinesweeperZoomPanel.this);
+            for (ChangeListener listener : viewListeners)
+                listener.stateChanged(event);
+        }
+
+        public void mouseWheelMoved(MouseWheelEvent e) {
+            // zoom around the point under the mouse
+            double factor = Math.pow(1.25, -e.getPreciseWheelRotation());
+            double newSize = Math.max(Math.min(cellSize * factor, MAX_CELL_SIZE), MIN_ZOOM_CELL_SIZE);
+            if (newSize >= MIN_CELL_SIZE)
+                newSize = Math.round(newSize);
+            double x = viewX + e.getX() / cellSize;
+            double y = viewY + e.getY() / cellSize;
+            setView(x - e.getX() / newSize, y - e.getY() / newSize, newSize);
+        }
+    }
+}